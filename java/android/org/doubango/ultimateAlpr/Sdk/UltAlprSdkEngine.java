@@ -8,71 +8,168 @@
 
 package org.doubango.ultimateAlpr.Sdk;
 
-public class UltAlprSdkEngine {
+/**
+ * The engine is a process-wide singleton owned by the native library: all the functions are static and there is
+ * one configuration (charset, models, thread budget, parallel callback...) per process. Calling init() again replaces the configuration.
+ * To run different configurations side by side (e.g. latin and korean charsets), use one process per configuration.
+ */
+public class UltAlprSdkEngine implements AutoCloseable {
   private long swigCPtr;
   protected boolean swigCMemOwn;
+  private UltAlprSdkCleaner.State swigCleanerState;
+
+  private static final UltAlprSdkCleaner.Deleter swigDeleter = new UltAlprSdkCleaner.Deleter() {
+    @Override
+    public void delete(long cPtr) {
+      ultimateAlprSdkJNI.delete_UltAlprSdkEngine(cPtr);
+    }
+  };
 
   protected UltAlprSdkEngine(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    if (cMemoryOwn && cPtr != 0) {
+      swigCleanerState = UltAlprSdkCleaner.register(this, cPtr, swigDeleter, false);
+    }
   }
 
   protected static long getCPtr(UltAlprSdkEngine obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
-    delete();
-  }
-
   public synchronized void delete() {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        ultimateAlprSdkJNI.delete_UltAlprSdkEngine(swigCPtr);
+        swigCleanerState.clean();
       }
       swigCPtr = 0;
     }
   }
 
+  @Override
+  public void close() {
+    delete();
+  }
+
+  private static volatile String activeConfig;
+
+  // Configuration passed to the init() running on this thread: recorded before the native call by the jsonConfig typemap,
+  // consumed by onInit() once the call returns
+  private static final ThreadLocal<String> initConfigs = new ThreadLocal<String>();
+
+  private static String rememberConfig(String jsonConfig) {
+    initConfigs.set(jsonConfig);
+    return jsonConfig;
+  }
+
+  private static UltAlprSdkResult onInit(UltAlprSdkResult result) {
+    final String jsonConfig = initConfigs.get();
+    initConfigs.remove();
+    if (result.isOK()) {
+      activeConfig = (jsonConfig == null) ? "" : jsonConfig;
+    }
+    return result;
+  }
+
+  private static UltAlprSdkResult onDeInit(UltAlprSdkResult result) {
+    if (result.isOK()) {
+      activeConfig = null;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the JSON configuration passed to the last successful init().
+   * @return The configuration, an empty string for the default one, null if the engine isn't initialized.
+   */
+  public static String getActiveConfig() {
+    return activeConfig;
+  }
+
+  private static volatile UltAlprSdkLatencyMonitor latencyMonitor;
+
+  /**
+   * Installs the latency instrumentation: every call to process() is then recorded in the monitor.
+   * @param monitor The monitor, null to disable the instrumentation (default).
+   */
+  public static void setLatencyMonitor(UltAlprSdkLatencyMonitor monitor) {
+    latencyMonitor = monitor;
+  }
+
+  public static UltAlprSdkLatencyMonitor getLatencyMonitor() {
+    return latencyMonitor;
+  }
+
+  private static UltAlprSdkResult recordLatency(UltAlprSdkLatencyMonitor monitor, ULTALPR_SDK_IMAGE_TYPE imageType, long widthInSamples, long heightInSamples, long startNanos, UltAlprSdkResult result) {
+    if (monitor != null) {
+      monitor.record(imageType, widthInSamples, heightInSamples, startNanos, result);
+    }
+    return result;
+  }
+
   public static UltAlprSdkResult init(Object assetManager, String jsonConfig, UltAlprSdkParallelDeliveryCallback parallelDeliveryCallback) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_0(assetManager, jsonConfig, UltAlprSdkParallelDeliveryCallback.getCPtr(parallelDeliveryCallback), parallelDeliveryCallback), true);
+    return onInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_0(assetManager, rememberConfig(jsonConfig), UltAlprSdkParallelDeliveryCallback.getCPtr(parallelDeliveryCallback), parallelDeliveryCallback), true));
   }
 
   public static UltAlprSdkResult init(Object assetManager, String jsonConfig) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_1(assetManager, jsonConfig), true);
+    return onInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_1(assetManager, rememberConfig(jsonConfig)), true));
   }
 
   public static UltAlprSdkResult init(Object assetManager) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_2(assetManager), true);
+    return onInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_2(assetManager), true));
   }
 
   public static UltAlprSdkResult deInit() {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_deInit(), true);
+    return onDeInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_deInit(), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples, int imageExifOrientation) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_0(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, imageExifOrientation), true);
+    final long swigLatencyWidth = imageWidthInSamples;
+    final long swigLatencyHeight = imageHeightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_0(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, imageExifOrientation), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_1(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples), true);
+    final long swigLatencyWidth = imageWidthInSamples;
+    final long swigLatencyHeight = imageHeightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_1(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_2(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples), true);
+    final long swigLatencyWidth = imageWidthInSamples;
+    final long swigLatencyHeight = imageHeightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_2(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer yPtr, java.nio.ByteBuffer uPtr, java.nio.ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes, long uvPixelStrideInBytes, int exifOrientation) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_3(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes, exifOrientation), true);
+    final long swigLatencyWidth = widthInSamples;
+    final long swigLatencyHeight = heightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_3(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes, exifOrientation), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer yPtr, java.nio.ByteBuffer uPtr, java.nio.ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes, long uvPixelStrideInBytes) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_4(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes), true);
+    final long swigLatencyWidth = widthInSamples;
+    final long swigLatencyHeight = heightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_4(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer yPtr, java.nio.ByteBuffer uPtr, java.nio.ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_5(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes), true);
+    final long swigLatencyWidth = widthInSamples;
+    final long swigLatencyHeight = heightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_5(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes), true));
   }
 
   public static int exifOrientation(java.nio.ByteBuffer jpegMetaDataPtr, long jpegMetaDataSize) {
@@ -0,0 +1,49 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+/**
+ * Immutable per-frame context to attach to a frame using {@link UltAlprSdkFrameTracker} and get back with its result.
+ * None of the fields is used by the SDK.
+ */
+public final class UltAlprSdkFrameContext {
+  private final long captureTimestamp;
+  private final String cameraId;
+  private final long width;
+  private final long height;
+  private final int orientation;
+  private final Object userData;
+
+  /**
+   * @param captureTimestamp When the frame was captured, in the application's time base (e.g. Image.getTimestamp() nanoseconds on Android).
+   * @param cameraId The source of the frame. May be null.
+   * @param width The image width, as displayed by the application.
+   * @param height The image height, as displayed by the application.
+   * @param orientation The image orientation, e.g. in degrees or as EXIF orientation.
+   * @param userData Any application data. May be null.
+   */
+  public UltAlprSdkFrameContext(long captureTimestamp, String cameraId, long width, long height, int orientation, Object userData) {
+    this.captureTimestamp = captureTimestamp;
+    this.cameraId = cameraId;
+    this.width = width;
+    this.height = height;
+    this.orientation = orientation;
+    this.userData = userData;
+  }
+
+  public long getCaptureTimestamp() { return captureTimestamp; }
+  public String getCameraId() { return cameraId; }
+  public long getWidth() { return width; }
+  public long getHeight() { return height; }
+  public int getOrientation() { return orientation; }
+  public Object getUserData() { return userData; }
+
+  @Override
+  public String toString() {
+    return "captureTimestamp: " + captureTimestamp + ", cameraId: " + cameraId + ", size: " + width + "x" + height + ", orientation: " + orientation;
+  }
+}
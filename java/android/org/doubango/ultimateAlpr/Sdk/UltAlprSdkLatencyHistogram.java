@@ -0,0 +1,176 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with nanosecond resolution (HDR-style log-linear buckets).
+ * Values below 256ns are recorded exactly, above that each power of two is split in 128 linear sub-buckets:
+ * the relative error of the reported percentiles is below 0.8%, up to 2^44ns (~4.9 hours). Larger values are clamped.
+ * <p>
+ * Recording is wait-free (one atomic increment per bucket, plus min/max updates) and never allocates:
+ * it could be called from any thread, including the parallel delivery callback.
+ * </p>
+ */
+public final class UltAlprSdkLatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 8;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 256
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1; // 128
+  private static final int MAX_VALUE_BITS = 44;
+  private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(0);
+
+  /**
+   * Records a latency.
+   * @param nanos The latency in nanoseconds. Negative values are recorded as 0.
+   */
+  public void record(long nanos) {
+    final long value = (nanos < 0) ? 0 : Math.min(nanos, MAX_VALUE);
+    counts.incrementAndGet(bucketIndex(value));
+    long current;
+    while (value < (current = min.get()) && !min.compareAndSet(current, value)) { }
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) { }
+  }
+
+  /**
+   * Copies the recorded values. The histogram is left unchanged.
+   */
+  public Snapshot snapshot() {
+    final long[] copy = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      copy[i] = counts.get(i);
+    }
+    return new Snapshot(copy, min.get(), max.get());
+  }
+
+  /**
+   * Moves the recorded values into a snapshot and restarts from zero, e.g. to report the latency per time interval.
+   * A value recorded concurrently ends up either in the returned snapshot or in the next one, never lost.
+   */
+  public Snapshot snapshotAndReset() {
+    final long minValue = min.getAndSet(Long.MAX_VALUE);
+    final long maxValue = max.getAndSet(0);
+    final long[] copy = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      if (counts.get(i) != 0) {
+        copy[i] = counts.getAndSet(i, 0);
+      }
+    }
+    return new Snapshot(copy, minValue, maxValue);
+  }
+
+  /**
+   * Clears all the recorded values.
+   */
+  public void reset() {
+    snapshotAndReset();
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1); // (value >> shift) in [128, 256)
+    return SUB_BUCKET_COUNT + ((shift - 1) << (SUB_BUCKET_BITS - 1)) + (int) ((value >> shift) - SUB_BUCKET_HALF_COUNT);
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    final int offset = index - SUB_BUCKET_COUNT;
+    final int shift = (offset >> (SUB_BUCKET_BITS - 1)) + 1;
+    final long subBucket = (offset & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Immutable copy of a histogram. All values are in nanoseconds.
+   */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long totalCount;
+    private final long min;
+    private final long max;
+    private final double mean;
+
+    private Snapshot(long[] counts, long min, long max) {
+      this.counts = counts;
+      long total = 0;
+      double sum = 0;
+      for (int i = 0; i < counts.length; ++i) {
+        if (counts[i] != 0) {
+          total += counts[i];
+          sum += (double) counts[i] * Math.min(highestEquivalentValue(i), max);
+        }
+      }
+      this.totalCount = total;
+      this.min = (total == 0) ? 0 : min;
+      this.max = (total == 0) ? 0 : max;
+      this.mean = (total == 0) ? 0 : sum / total;
+    }
+
+    public long getCount() { return totalCount; }
+    public long getMin() { return min; }
+    public long getMax() { return max; }
+    public double getMean() { return mean; }
+
+    /**
+     * Gets the value below which the given percentage of the recorded values fall.
+     * @param percentile In [0, 100], e.g. 99.9.
+     * @return The value in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+      if (totalCount == 0) {
+        return 0;
+      }
+      final double clamped = Math.max(0.0, Math.min(percentile, 100.0));
+      final long rank = Math.max(1, (long) Math.ceil((clamped / 100.0) * totalCount));
+      long accumulated = 0;
+      for (int i = 0; i < counts.length; ++i) {
+        accumulated += counts[i];
+        if (accumulated >= rank) {
+          return Math.max(min, Math.min(highestEquivalentValue(i), max));
+        }
+      }
+      return max;
+    }
+
+    public long getP50() { return getValueAtPercentile(50.0); }
+    public long getP99() { return getValueAtPercentile(99.0); }
+    public long getP999() { return getValueAtPercentile(99.9); }
+
+    /**
+     * Adds the values of another snapshot, e.g. to aggregate the latency of all image types.
+     */
+    public Snapshot merge(Snapshot other) {
+      final long[] sum = new long[counts.length];
+      for (int i = 0; i < counts.length; ++i) {
+        sum[i] = counts[i] + other.counts[i];
+      }
+      if (totalCount == 0) {
+        return new Snapshot(sum, other.min, other.max);
+      }
+      if (other.totalCount == 0) {
+        return new Snapshot(sum, min, max);
+      }
+      return new Snapshot(sum, Math.min(min, other.min), Math.max(max, other.max));
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count: %d, min: %.3fms, mean: %.3fms, p50: %.3fms, p99: %.3fms, p999: %.3fms, max: %.3fms",
+        totalCount, min / 1e6, mean / 1e6, getP50() / 1e6, getP99() / 1e6, getP999() / 1e6, max / 1e6);
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in latency instrumentation of {@link UltAlprSdkEngine#process}.
+ * Once installed using {@link UltAlprSdkEngine#setLatencyMonitor(UltAlprSdkLatencyMonitor)}, every call to process()
+ * (any overload, from any thread) is timed using System.nanoTime() and recorded in a {@link UltAlprSdkLatencyHistogram}
+ * per image type and resolution. Optionally (see {@link #UltAlprSdkLatencyMonitor(boolean)}) the results are also counted
+ * as failed, with plates and without plates.
+ * When no monitor is installed the cost is a single volatile read per call. Otherwise, two System.nanoTime() calls and
+ * no JNI call unless the results are counted.
+ * <p>
+ * In parallel mode process() only measures the detection (the recognition is delivered later to the callback)
+ * and the immediate results never contain plates.
+ * </p>
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkLatencyMonitor monitor = new UltAlprSdkLatencyMonitor();
+ * UltAlprSdkEngine.setLatencyMonitor(monitor);
+ * ...
+ * final UltAlprSdkLatencyMonitor.Snapshot snapshot = monitor.snapshotAndReset(); // e.g. every minute
+ * if (snapshot.getTotal().getP99() &gt; 50000000L) { ... } // 50ms
+ * </pre>
+ */
+public final class UltAlprSdkLatencyMonitor {
+  /** One series per (image type, width, height), copy-on-write so that the lookup is lock-free. */
+  private volatile Series[] series = new Series[0];
+  private final Object seriesLock = new Object();
+  private final boolean countResults;
+
+  /**
+   * Creates a monitor recording the latency only.
+   */
+  public UltAlprSdkLatencyMonitor() {
+    this(false);
+  }
+
+  /**
+   * @param countResults Whether to also count the results as failed, with plates and without plates. The counts are read
+   *   using {@link UltAlprSdkResult#snapshot()}, after the end of the measured interval: the snapshot is cached, the caller gets it
+   *   without crossing JNI again. When false the counts stay at zero and the result isn't read.
+   */
+  public UltAlprSdkLatencyMonitor(boolean countResults) {
+    this.countResults = countResults;
+  }
+
+  /**
+   * Records a process() call. Called by {@link UltAlprSdkEngine}.
+   */
+  void record(ULTALPR_SDK_IMAGE_TYPE imageType, long widthInSamples, long heightInSamples, long startNanos, UltAlprSdkResult result) {
+    final long elapsedNanos = System.nanoTime() - startNanos;
+    final Series target = series(imageType, widthInSamples, heightInSamples);
+    target.histogram.record(elapsedNanos);
+    if (!countResults) {
+      return;
+    }
+    final UltAlprSdkResultSnapshot snapshot = result.snapshot();
+    if (!snapshot.isOK()) {
+      target.failures.incrementAndGet();
+    }
+    else if (snapshot.numPlates() != 0) {
+      target.withPlates.incrementAndGet();
+    }
+    else {
+      target.withoutPlates.incrementAndGet();
+    }
+  }
+
+  /**
+   * Copies the recorded values. The monitor is left unchanged.
+   */
+  public Snapshot snapshot() {
+    return snapshot(false);
+  }
+
+  /**
+   * Moves the recorded values into a snapshot and restarts from zero.
+   */
+  public Snapshot snapshotAndReset() {
+    return snapshot(true);
+  }
+
+  /**
+   * Clears all the recorded values.
+   */
+  public void reset() {
+    snapshot(true);
+  }
+
+  private Snapshot snapshot(boolean reset) {
+    final Series[] current = series;
+    final List<SeriesSnapshot> snapshots = new ArrayList<SeriesSnapshot>(current.length);
+    for (Series s : current) {
+      snapshots.add(new SeriesSnapshot(s.imageType, s.width, s.height,
+        reset ? s.histogram.snapshotAndReset() : s.histogram.snapshot(),
+        reset ? s.withPlates.getAndSet(0) : s.withPlates.get(),
+        reset ? s.withoutPlates.getAndSet(0) : s.withoutPlates.get(),
+        reset ? s.failures.getAndSet(0) : s.failures.get()));
+    }
+    return new Snapshot(snapshots);
+  }
+
+  private Series series(ULTALPR_SDK_IMAGE_TYPE imageType, long width, long height) {
+    Series found = find(series, imageType, width, height);
+    if (found == null) {
+      synchronized (seriesLock) {
+        final Series[] current = series;
+        found = find(current, imageType, width, height);
+        if (found == null) {
+          final Series[] grown = new Series[current.length + 1];
+          System.arraycopy(current, 0, grown, 0, current.length);
+          grown[current.length] = found = new Series(imageType, width, height);
+          series = grown;
+        }
+      }
+    }
+    return found;
+  }
+
+  private static Series find(Series[] series, ULTALPR_SDK_IMAGE_TYPE imageType, long width, long height) {
+    for (Series s : series) {
+      if (s.imageType == imageType && s.width == width && s.height == height) {
+        return s;
+      }
+    }
+    return null;
+  }
+
+  private static final class Series {
+    final ULTALPR_SDK_IMAGE_TYPE imageType;
+    final long width;
+    final long height;
+    final UltAlprSdkLatencyHistogram histogram = new UltAlprSdkLatencyHistogram();
+    final AtomicLong withPlates = new AtomicLong(0);
+    final AtomicLong withoutPlates = new AtomicLong(0);
+    final AtomicLong failures = new AtomicLong(0);
+
+    Series(ULTALPR_SDK_IMAGE_TYPE imageType, long width, long height) {
+      this.imageType = imageType;
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  /**
+   * Latency and result counts for one image type and resolution.
+   */
+  public static final class SeriesSnapshot {
+    private final ULTALPR_SDK_IMAGE_TYPE imageType;
+    private final long width;
+    private final long height;
+    private final UltAlprSdkLatencyHistogram.Snapshot latency;
+    private final long withPlates;
+    private final long withoutPlates;
+    private final long failures;
+
+    SeriesSnapshot(ULTALPR_SDK_IMAGE_TYPE imageType, long width, long height, UltAlprSdkLatencyHistogram.Snapshot latency, long withPlates, long withoutPlates, long failures) {
+      this.imageType = imageType;
+      this.width = width;
+      this.height = height;
+      this.latency = latency;
+      this.withPlates = withPlates;
+      this.withoutPlates = withoutPlates;
+      this.failures = failures;
+    }
+
+    public ULTALPR_SDK_IMAGE_TYPE getImageType() { return imageType; }
+    public long getWidth() { return width; }
+    public long getHeight() { return height; }
+    public UltAlprSdkLatencyHistogram.Snapshot getLatency() { return latency; }
+    /** Number of successful results with at least one plate. Zero unless the results are counted. */
+    public long getWithPlatesCount() { return withPlates; }
+    /** Number of successful results without plates. Zero unless the results are counted. */
+    public long getWithoutPlatesCount() { return withoutPlates; }
+    /** Number of failed calls. Zero unless the results are counted. */
+    public long getFailureCount() { return failures; }
+
+    @Override
+    public String toString() {
+      return imageType + " " + width + "x" + height + ": " + latency
+        + ", withPlates: " + withPlates + ", withoutPlates: " + withoutPlates + ", failures: " + failures;
+    }
+  }
+
+  /**
+   * Immutable copy of a monitor.
+   */
+  public static final class Snapshot {
+    private final List<SeriesSnapshot> series;
+    private final UltAlprSdkLatencyHistogram.Snapshot total;
+
+    Snapshot(List<SeriesSnapshot> series) {
+      this.series = Collections.unmodifiableList(series);
+      UltAlprSdkLatencyHistogram.Snapshot merged = new UltAlprSdkLatencyHistogram().snapshot();
+      for (SeriesSnapshot s : series) {
+        merged = merged.merge(s.latency);
+      }
+      this.total = merged;
+    }
+
+    /** The latency and counts per image type and resolution, in first-seen order. */
+    public List<SeriesSnapshot> getSeries() { return series; }
+    /** The latency of all calls. */
+    public UltAlprSdkLatencyHistogram.Snapshot getTotal() { return total; }
+
+    public long getWithPlatesCount() {
+      long count = 0;
+      for (SeriesSnapshot s : series) {
+        count += s.withPlates;
+      }
+      return count;
+    }
+
+    public long getWithoutPlatesCount() {
+      long count = 0;
+      for (SeriesSnapshot s : series) {
+        count += s.withoutPlates;
+      }
+      return count;
+    }
+
+    public long getFailureCount() {
+      long count = 0;
+      for (SeriesSnapshot s : series) {
+        count += s.failures;
+      }
+      return count;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder builder = new StringBuilder("total: ").append(total);
+      for (SeriesSnapshot s : series) {
+        builder.append('\n').append(s);
+      }
+      return builder.toString();
+    }
+  }
+}
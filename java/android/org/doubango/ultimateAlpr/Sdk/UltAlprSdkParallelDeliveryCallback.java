@@ -8,48 +8,72 @@
 
 package org.doubango.ultimateAlpr.Sdk;
 
-public class UltAlprSdkParallelDeliveryCallback {
+public class UltAlprSdkParallelDeliveryCallback implements AutoCloseable {
   private long swigCPtr;
   protected boolean swigCMemOwn;
+  private UltAlprSdkCleaner.State swigCleanerState;
+
+  private static final UltAlprSdkCleaner.Deleter swigDeleter = new UltAlprSdkCleaner.Deleter() {
+    @Override
+    public void delete(long cPtr) {
+      ultimateAlprSdkJNI.delete_UltAlprSdkParallelDeliveryCallback(cPtr);
+    }
+  };
 
   protected UltAlprSdkParallelDeliveryCallback(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    if (cMemoryOwn && cPtr != 0) {
+      swigCleanerState = UltAlprSdkCleaner.register(this, cPtr, swigDeleter, false);
+    }
   }
 
   protected static long getCPtr(UltAlprSdkParallelDeliveryCallback obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
-    delete();
-  }
-
   public synchronized void delete() {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        ultimateAlprSdkJNI.delete_UltAlprSdkParallelDeliveryCallback(swigCPtr);
+        swigCleanerState.clean();
       }
       swigCPtr = 0;
     }
   }
 
   protected void swigDirectorDisconnect() {
+    // The native object is being destroyed by its owner: the cleaner must not free it again
     swigCMemOwn = false;
+    if (swigCleanerState != null) {
+      swigCleanerState.setMemOwn(false);
+    }
     delete();
   }
 
   public void swigReleaseOwnership() {
     swigCMemOwn = false;
+    if (swigCleanerState != null) {
+      swigCleanerState.setMemOwn(false);
+    }
     ultimateAlprSdkJNI.UltAlprSdkParallelDeliveryCallback_change_ownership(this, swigCPtr, false);
   }
 
   public void swigTakeOwnership() {
     swigCMemOwn = true;
+    if (swigCleanerState != null) {
+      swigCleanerState.setMemOwn(true);
+    } else if (swigCPtr != 0) {
+      swigCleanerState = UltAlprSdkCleaner.register(this, swigCPtr, swigDeleter, false);
+    }
     ultimateAlprSdkJNI.UltAlprSdkParallelDeliveryCallback_change_ownership(this, swigCPtr, true);
   }
 
+  @Override
+  public void close() {
+    delete();
+  }
+
   protected UltAlprSdkParallelDeliveryCallback() {
     this(ultimateAlprSdkJNI.new_UltAlprSdkParallelDeliveryCallback(), true);
     ultimateAlprSdkJNI.UltAlprSdkParallelDeliveryCallback_director_connect(this, swigCPtr, swigCMemOwn, true);
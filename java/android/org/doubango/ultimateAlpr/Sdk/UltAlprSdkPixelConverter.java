@@ -0,0 +1,227 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+/**
+ * Pixel format conversions from layouts the engine doesn't accept (int-packed ARGB, planar RGB, 16-bit gray, chroma with
+ * any pixel stride) to the {@link ULTALPR_SDK_IMAGE_TYPE} layouts it does accept (Y, NV12, NV21, YUV420P, BGR24, RGBA32),
+ * plus strided crop and 2x downscale.
+ * <p>
+ * The kernels work on Java arrays, row by row, with offsets and strides (in array elements) for both the source and the destination:
+ * a crop is just an offset and a smaller size. The inner loops are plain counted loops over arrays: no per-pixel call nor
+ * per-pixel ByteBuffer access. To send the result to the engine copy it into a direct buffer with a single bulk put
+ * (e.g. a {@link UltAlprSdkBufferPool} buffer).
+ * </p>
+ * <p>
+ * Same kernels as the desktop SDK (Java 7, no Vector API: it doesn't exist on Android).
+ * </p>
+ * YUV values use BT.601 studio range (Y in [16, 235]), like the camera frames.
+ */
+public final class UltAlprSdkPixelConverter {
+  // BT.601 studio range, 8-bit fixed point
+  private static final int YR = 66, YG = 129, YB = 25;
+  private static final int UR = -38, UG = -74, UB = 112;
+  private static final int VR = 112, VG = -94, VB = -18;
+
+  private UltAlprSdkPixelConverter() {
+  }
+
+  /**
+   * Int-packed 0xAARRGGBB pixels (e.g. Bitmap.getPixels) to Y.
+   */
+  public static void argbToY(int[] src, int srcOffset, int srcStride, int width, int height, byte[] dst, int dstOffset, int dstStride) {
+    for (int j = 0; j < height; ++j) {
+      final int s = srcOffset + j * srcStride;
+      final int d = dstOffset + j * dstStride;
+      for (int i = 0; i < width; ++i) {
+        final int p = src[s + i];
+        dst[d + i] = (byte) (((YR * ((p >> 16) & 0xFF) + YG * ((p >> 8) & 0xFF) + YB * (p & 0xFF) + 128) >> 8) + 16);
+      }
+    }
+  }
+
+  /**
+   * Int-packed 0xAARRGGBB pixels to BGR24.
+   * @param dstStride The destination stride, in bytes.
+   */
+  public static void argbToBgr24(int[] src, int srcOffset, int srcStride, int width, int height, byte[] dst, int dstOffset, int dstStride) {
+    for (int j = 0; j < height; ++j) {
+      final int s = srcOffset + j * srcStride;
+      final int d = dstOffset + j * dstStride;
+      for (int i = 0; i < width; ++i) {
+        final int p = src[s + i];
+        dst[d + 3 * i] = (byte) p;
+        dst[d + 3 * i + 1] = (byte) (p >> 8);
+        dst[d + 3 * i + 2] = (byte) (p >> 16);
+      }
+    }
+  }
+
+  /**
+   * Int-packed 0xAARRGGBB pixels to RGBA32.
+   * @param dstStride The destination stride, in bytes.
+   */
+  public static void argbToRgba32(int[] src, int srcOffset, int srcStride, int width, int height, byte[] dst, int dstOffset, int dstStride) {
+    for (int j = 0; j < height; ++j) {
+      final int s = srcOffset + j * srcStride;
+      final int d = dstOffset + j * dstStride;
+      for (int i = 0; i < width; ++i) {
+        final int p = src[s + i];
+        dst[d + 4 * i] = (byte) (p >> 16);
+        dst[d + 4 * i + 1] = (byte) (p >> 8);
+        dst[d + 4 * i + 2] = (byte) p;
+        dst[d + 4 * i + 3] = (byte) (p >>> 24);
+      }
+    }
+  }
+
+  /**
+   * Int-packed 0xAARRGGBB pixels to 4:2:0 YUV: YUV420P (separate U and V planes, uvPixelStride 1), NV12 (uDst == vDst,
+   * vOffset = uOffset + 1, uvPixelStride 2) or NV21 (uDst == vDst, uOffset = vOffset + 1, uvPixelStride 2).
+   * The chroma is the average of each 2x2 block.
+   * @param uvStride The chroma stride, in bytes.
+   * @param uvPixelStride Distance between two chroma samples of the same plane, in bytes.
+   */
+  public static void argbToYuv420(int[] src, int srcOffset, int srcStride, int width, int height,
+      byte[] yDst, int yOffset, int yStride, byte[] uDst, int uOffset, byte[] vDst, int vOffset, int uvStride, int uvPixelStride) {
+    argbToY(src, srcOffset, srcStride, width, height, yDst, yOffset, yStride);
+    final int chromaWidth = (width + 1) >> 1, chromaHeight = (height + 1) >> 1;
+    for (int j = 0; j < chromaHeight; ++j) {
+      final int s0 = srcOffset + (j << 1) * srcStride;
+      final int s1 = ((j << 1) + 1 < height) ? (s0 + srcStride) : s0; // Odd height: repeat the last row
+      final int du = uOffset + j * uvStride, dv = vOffset + j * uvStride;
+      for (int i = 0; i < chromaWidth; ++i) {
+        final int x0 = i << 1, x1 = (x0 + 1 < width) ? (x0 + 1) : x0; // Odd width: repeat the last column
+        final int p00 = src[s0 + x0], p01 = src[s0 + x1], p10 = src[s1 + x0], p11 = src[s1 + x1];
+        final int r = (((p00 >> 16) & 0xFF) + ((p01 >> 16) & 0xFF) + ((p10 >> 16) & 0xFF) + ((p11 >> 16) & 0xFF) + 2) >> 2;
+        final int g = (((p00 >> 8) & 0xFF) + ((p01 >> 8) & 0xFF) + ((p10 >> 8) & 0xFF) + ((p11 >> 8) & 0xFF) + 2) >> 2;
+        final int b = ((p00 & 0xFF) + (p01 & 0xFF) + (p10 & 0xFF) + (p11 & 0xFF) + 2) >> 2;
+        uDst[du + i * uvPixelStride] = (byte) (((UR * r + UG * g + UB * b + 128) >> 8) + 128);
+        vDst[dv + i * uvPixelStride] = (byte) (((VR * r + VG * g + VB * b + 128) >> 8) + 128);
+      }
+    }
+  }
+
+  /**
+   * Planar RGB (one plane per channel, same offset and stride) to BGR24.
+   * @param dstStride The destination stride, in bytes.
+   */
+  public static void planarRgbToBgr24(byte[] r, byte[] g, byte[] b, int srcOffset, int srcStride, int width, int height, byte[] dst, int dstOffset, int dstStride) {
+    for (int j = 0; j < height; ++j) {
+      final int s = srcOffset + j * srcStride;
+      final int d = dstOffset + j * dstStride;
+      for (int i = 0; i < width; ++i) {
+        dst[d + 3 * i] = b[s + i];
+        dst[d + 3 * i + 1] = g[s + i];
+        dst[d + 3 * i + 2] = r[s + i];
+      }
+    }
+  }
+
+  /**
+   * Planar RGB (one plane per channel, same offset and stride) to Y.
+   */
+  public static void planarRgbToY(byte[] r, byte[] g, byte[] b, int srcOffset, int srcStride, int width, int height, byte[] dst, int dstOffset, int dstStride) {
+    for (int j = 0; j < height; ++j) {
+      final int s = srcOffset + j * srcStride;
+      final int d = dstOffset + j * dstStride;
+      for (int i = 0; i < width; ++i) {
+        dst[d + i] = (byte) (((YR * (r[s + i] & 0xFF) + YG * (g[s + i] & 0xFF) + YB * (b[s + i] & 0xFF) + 128) >> 8) + 16);
+      }
+    }
+  }
+
+  /**
+   * 16-bit gray (e.g. ImageFormat.Y16 depth or thermal cameras) to Y, keeping the most significant bits.
+   * The samples are used as is: full range gray, no studio range scaling. Samples above the significant bits' range
+   * (e.g. more than 1023 with 10 bits) are clamped to 255.
+   * @param significantBits Number of bits used by the samples, e.g. 10, 12 or 16.
+   */
+  public static void gray16ToY(short[] src, int srcOffset, int srcStride, int width, int height, int significantBits, byte[] dst, int dstOffset, int dstStride) {
+    if (significantBits < 8 || significantBits > 16) {
+      throw new IllegalArgumentException("Invalid number of significant bits: " + significantBits);
+    }
+    final int shift = significantBits - 8;
+    final int max = (1 << significantBits) - 1;
+    for (int j = 0; j < height; ++j) {
+      final int s = srcOffset + j * srcStride;
+      final int d = dstOffset + j * dstStride;
+      for (int i = 0; i < width; ++i) {
+        dst[d + i] = (byte) (Math.min(src[s + i] & 0xFFFF, max) >>> shift);
+      }
+    }
+  }
+
+  /**
+   * Copies U and V chroma samples between layouts: YUV420P (pixel stride 1, separate planes), NV12/NV21 (pixel stride 2,
+   * interleaved), e.g. Android YUV_420_888 planes (pixel stride 2) to YUV420P, or NV21 to NV12.
+   * @param srcStride The source chroma stride, in bytes.
+   * @param srcPixelStride Distance between two samples of the same source plane, in bytes.
+   * @param chromaWidth Number of chroma samples per row.
+   * @param chromaHeight Number of chroma rows.
+   * @param dstStride The destination chroma stride, in bytes.
+   * @param dstPixelStride Distance between two samples of the same destination plane, in bytes.
+   */
+  public static void copyChroma(byte[] srcU, int srcUOffset, byte[] srcV, int srcVOffset, int srcStride, int srcPixelStride, int chromaWidth, int chromaHeight,
+      byte[] dstU, int dstUOffset, byte[] dstV, int dstVOffset, int dstStride, int dstPixelStride) {
+    if (srcPixelStride == 1 && dstPixelStride == 1) {
+      copyPlane(srcU, srcUOffset, srcStride, chromaWidth, chromaHeight, dstU, dstUOffset, dstStride);
+      copyPlane(srcV, srcVOffset, srcStride, chromaWidth, chromaHeight, dstV, dstVOffset, dstStride);
+      return;
+    }
+    for (int j = 0; j < chromaHeight; ++j) {
+      final int su = srcUOffset + j * srcStride, sv = srcVOffset + j * srcStride;
+      final int du = dstUOffset + j * dstStride, dv = dstVOffset + j * dstStride;
+      for (int i = 0; i < chromaWidth; ++i) {
+        dstU[du + i * dstPixelStride] = srcU[su + i * srcPixelStride];
+        dstV[dv + i * dstPixelStride] = srcV[sv + i * srcPixelStride];
+      }
+    }
+  }
+
+  /**
+   * Copies a rectangle of a plane or packed image, e.g. to crop: the source offset is then (top * srcStride + left * bytesPerPixel).
+   * @param widthInBytes Number of bytes per row to copy (width * bytes per pixel).
+   */
+  public static void copyPlane(byte[] src, int srcOffset, int srcStride, int widthInBytes, int height, byte[] dst, int dstOffset, int dstStride) {
+    if (srcStride == widthInBytes && dstStride == widthInBytes) {
+      System.arraycopy(src, srcOffset, dst, dstOffset, widthInBytes * height); // Contiguous
+      return;
+    }
+    for (int j = 0; j < height; ++j) {
+      System.arraycopy(src, srcOffset + j * srcStride, dst, dstOffset + j * dstStride, widthInBytes);
+    }
+  }
+
+  /**
+   * Halves the width and the height of a plane (Y, U, V) or a packed image (BGR24, RGBA32...), averaging each 2x2 block.
+   * The destination is (width / 2) x (height / 2): an odd last column or row is dropped.
+   * @param width The source width, in pixels.
+   * @param bytesPerPixel 1 for a plane, 3 or 4 for packed images.
+   */
+  public static void downscale2x(byte[] src, int srcOffset, int srcStride, int width, int height, int bytesPerPixel, byte[] dst, int dstOffset, int dstStride) {
+    final int dstWidth = width >> 1;
+    final int dstHeight = height >> 1;
+    for (int j = 0; j < dstHeight; ++j) {
+      final int s0 = srcOffset + (j << 1) * srcStride, s1 = s0 + srcStride;
+      int d = dstOffset + j * dstStride;
+      int k = 0; // Source byte of the current channel in the left pixel of the pair
+      for (int x = 0; x < dstWidth; ++x, k += bytesPerPixel) { // Skips the right pixel of the pair
+        for (int c = 0; c < bytesPerPixel; ++c, ++k, ++d) {
+          dst[d] = (byte) (((src[s0 + k] & 0xFF) + (src[s0 + k + bytesPerPixel] & 0xFF) + (src[s1 + k] & 0xFF) + (src[s1 + k + bytesPerPixel] & 0xFF) + 2) >> 2);
+        }
+      }
+    }
+  }
+
+  /**
+   * Size of a 4:2:0 frame (Y plus both chroma planes) without padding, in bytes.
+   */
+  public static int yuv420Size(int width, int height) {
+    return width * height + ((((width + 1) >> 1) * ((height + 1) >> 1)) << 1);
+  }
+}
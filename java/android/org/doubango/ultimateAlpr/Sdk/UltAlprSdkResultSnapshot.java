@@ -0,0 +1,160 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable copy of the fields of a {@link UltAlprSdkResult}.
+ * Each field is fetched from the native side at most once (see {@link UltAlprSdkResult#snapshot()}) instead of
+ * crossing JNI every time {@link UltAlprSdkResult#code()}, {@link UltAlprSdkResult#json()}... is called.
+ * The code and the counts are always fetched. The JSON content is only fetched for the results with plates or cars
+ * and for the failures, the phrase only for the failures: a successful result without plates, the common case
+ * on a video stream, costs three JNI calls and no string.
+ * The snapshot doesn't hold native memory and could be used after the result is closed, e.g. to keep
+ * the result delivered to {@link UltAlprSdkParallelDeliveryCallback#onNewResult(UltAlprSdkResult)} after returning.
+ */
+public final class UltAlprSdkResultSnapshot {
+  private final int code;
+  private final String phrase;
+  private final String json;
+  private final long numPlates;
+  private final long numCars;
+
+  private static final String PHRASE_OK = "OK";
+
+  public UltAlprSdkResultSnapshot(int code, String phrase, String json, long numPlates, long numCars) {
+    this.code = code;
+    this.phrase = phrase;
+    this.json = json;
+    this.numPlates = numPlates;
+    this.numCars = numCars;
+  }
+
+  static UltAlprSdkResultSnapshot of(UltAlprSdkResult result) {
+    final int code = result.code();
+    final long numPlates = result.numPlates();
+    final long numCars = result.numCars();
+    if (code == 0) {
+      return new UltAlprSdkResultSnapshot(code, PHRASE_OK, (numPlates != 0 || numCars != 0) ? result.json() : null, numPlates, numCars);
+    }
+    return new UltAlprSdkResultSnapshot(code, result.phrase(), result.json(), numPlates, numCars);
+  }
+
+  public int code() {
+    return code;
+  }
+
+  /**
+   * The phrase describing the code. "OK" for the successful results taken using {@link UltAlprSdkResult#snapshot()}.
+   */
+  public String phrase() {
+    return phrase;
+  }
+
+  /**
+   * The JSON content. May be null.
+   * Null for the successful results without plates nor cars taken using {@link UltAlprSdkResult#snapshot()}:
+   * use {@link UltAlprSdkResult#json()} to get the full content (e.g. "frame_id") of such results.
+   */
+  public String json() {
+    return json;
+  }
+
+  public long numPlates() {
+    return numPlates;
+  }
+
+  public long numCars() {
+    return numCars;
+  }
+
+  public boolean isOK() {
+    return code == 0;
+  }
+
+  /**
+   * Whether the result is success and contains at least one plate or car.
+   */
+  public boolean hasPlatesOrCars() {
+    return code == 0 && (numPlates != 0 || numCars != 0);
+  }
+
+  /**
+   * Writes the snapshot into a caller-supplied buffer, starting at its current position.
+   * Layout: code (int32), numPlates (int64), numCars (int64), phrase length (int32, -1 if null), phrase (UTF-8),
+   * json length (int32, -1 if null), json (UTF-8). The buffer's byte order is used.
+   * @param buffer The destination buffer.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException if the buffer is too small. The position is left unchanged in this case.
+   */
+  public int writeTo(ByteBuffer buffer) {
+    final int start = buffer.position();
+    try {
+      buffer.putInt(code);
+      buffer.putLong(numPlates);
+      buffer.putLong(numCars);
+      putString(buffer, phrase);
+      putString(buffer, json);
+    }
+    catch (BufferOverflowException e) {
+      buffer.position(start);
+      throw e;
+    }
+    return buffer.position() - start;
+  }
+
+  /**
+   * Reads a snapshot previously written using {@link #writeTo(ByteBuffer)}, starting at the buffer's current position.
+   */
+  public static UltAlprSdkResultSnapshot readFrom(ByteBuffer buffer) {
+    final int code = buffer.getInt();
+    final long numPlates = buffer.getLong();
+    final long numCars = buffer.getLong();
+    final String phrase = getString(buffer);
+    final String json = getString(buffer);
+    return new UltAlprSdkResultSnapshot(code, phrase, json, numPlates, numCars);
+  }
+
+  private static void putString(ByteBuffer buffer, String value) {
+    if (value == null) {
+      buffer.putInt(-1);
+    } else {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (buffer.remaining() < 4 + bytes.length) {
+        throw new BufferOverflowException();
+      }
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    final int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    final String value;
+    if (buffer.hasArray()) {
+      value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    } else {
+      final byte[] bytes = new byte[length];
+      buffer.duplicate().get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    // Empty JSON when not fetched (successful result without plates nor cars), as printed from the result itself
+    return "code: " + code + ", phrase: " + phrase + ", numPlates: " + numPlates + ", json: " + ((json != null) ? json : "");
+  }
+}
@@ -0,0 +1,277 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompletableFuture-based facade on top of the parallel mode.
+ * The processor is the parallel delivery callback: pass it to {@link UltAlprSdkEngine#init(String, UltAlprSdkParallelDeliveryCallback)}
+ * then use {@link #processAsync(UltAlprSdkFrame)} instead of {@link UltAlprSdkEngine#process}.
+ * <p>
+ * Frames are queued and submitted to the engine by a dedicated thread. The "frame_id" returned by the engine at
+ * submission is used to complete the right future when the result is delivered.
+ * Cancelling a future (or letting it time out) before its frame is submitted removes the frame from the queue.
+ * Once submitted the frame can't be recalled: its result is released when delivered.
+ * A frame whose submission throws (e.g. invalid buffer) completes its future exceptionally, the next frames are still submitted.
+ * </p>
+ * <p>
+ * The futures complete with a copy of the delivered result (the original one is only valid during the callback):
+ * the caller must close it. A frame rejected by the engine completes the future with the failure result.
+ * </p>
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkAsyncProcessor processor = new UltAlprSdkAsyncProcessor(64);
+ * UltAlprSdkEngine.init(jsonConfig, processor);
+ * processor.processAsync(frame, 1, TimeUnit.SECONDS).thenAccept(result -&gt; { try (result) { ... } });
+ * ...
+ * UltAlprSdkEngine.deInit();
+ * processor.close();
+ * </pre>
+ */
+public class UltAlprSdkAsyncProcessor extends UltAlprSdkParallelDeliveryCallback {
+
+  /** Maximum number of delivered results waiting for their frame to be registered. */
+  private static final int MAX_EARLY_RESULTS = 256;
+  /** Maximum number of frames remembered after being given up (cancelled or timed out in flight). */
+  private static final int MAX_RETIRED_FRAMES = 256;
+
+  private final BlockingQueue<Pending> queue;
+  private final Object lock = new Object();
+  /** Submitted frames waiting for their result, in submission order. */
+  private final LinkedHashMap<Long, Pending> inFlight = new LinkedHashMap<Long, Pending>();
+  /** Results delivered before the submitter registered their frame (the callback could be faster than process() returning). */
+  private final LinkedHashMap<Long, UltAlprSdkResult> earlyResults = new LinkedHashMap<Long, UltAlprSdkResult>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, UltAlprSdkResult> eldest) {
+      if (size() > MAX_EARLY_RESULTS) {
+        eldest.getValue().close(); // Not submitted by this processor
+        return true;
+      }
+      return false;
+    }
+  };
+  /** Frame ids of the submitted frames given up before their result was delivered: their result is released on arrival, not kept. */
+  private final LinkedHashMap<Long, Boolean> retiredFrameIds = new LinkedHashMap<Long, Boolean>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+      return size() > MAX_RETIRED_FRAMES;
+    }
+  };
+  private long nextAnonymousId = -2; // Keys for frames submitted without "frame_id" in the immediate result
+  private final Thread submitter;
+  private volatile boolean closed = false;
+
+  /**
+   * @param queueCapacity Maximum number of frames waiting to be submitted. Above this value processAsync() fails with {@link RejectedExecutionException}.
+   */
+  public UltAlprSdkAsyncProcessor(int queueCapacity) {
+    super();
+    queue = new LinkedBlockingQueue<Pending>(queueCapacity);
+    submitter = new Thread(this::runSubmitter, "UltAlprSdkAsyncProcessor");
+    submitter.setDaemon(true);
+    submitter.start();
+  }
+
+  /**
+   * Queues a frame.
+   * @return The future completed with the delivered result.
+   */
+  public CompletableFuture<UltAlprSdkResult> processAsync(UltAlprSdkFrame frame) {
+    final Pending pending = new Pending(frame);
+    pending.future.whenComplete((result, error) -> {
+      if (error != null) {
+        forget(pending); // Cancelled, timed out or closed
+      }
+    });
+    if (closed) {
+      pending.future.completeExceptionally(new RejectedExecutionException("Processor closed"));
+    }
+    else if (!queue.offer(pending)) {
+      pending.future.completeExceptionally(new RejectedExecutionException("Queue full: " + queue.size() + " frames waiting"));
+    }
+    return pending.future;
+  }
+
+  /**
+   * Queues a frame. The future completes with a {@link java.util.concurrent.TimeoutException} if the result isn't delivered in time.
+   */
+  public CompletableFuture<UltAlprSdkResult> processAsync(UltAlprSdkFrame frame, long timeout, TimeUnit unit) {
+    return processAsync(frame).orTimeout(timeout, unit);
+  }
+
+  /**
+   * Number of frames waiting to be submitted.
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * Number of frames submitted and waiting for their result.
+   */
+  public int getInFlightCount() {
+    synchronized (lock) {
+      return inFlight.size();
+    }
+  }
+
+  @Override
+  public void onNewResult(UltAlprSdkResult newResult) {
+    final long frameId = newResult.frameId();
+    final Pending pending;
+    synchronized (lock) {
+      if (frameId >= 0) {
+        pending = inFlight.remove(frameId);
+        if (pending == null) {
+          if (retiredFrameIds.remove(frameId) == null) {
+            earlyResults.put(frameId, new UltAlprSdkResult(newResult)); // Frame not registered yet
+          }
+          return; // Otherwise late: nobody is waiting for it anymore
+        }
+      }
+      else {
+        // No identifier: FIFO matching with the frames submitted without one
+        pending = removeOldestAnonymous();
+        if (pending == null) {
+          return; // Nothing to correlate with
+        }
+      }
+    }
+    // The delivered result is owned by the engine and only valid during the callback
+    complete(pending, new UltAlprSdkResult(newResult));
+  }
+
+  /**
+   * Stops the submitter and fails the pending futures. The engine must be deInitialized before closing the processor.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    submitter.interrupt();
+    try {
+      submitter.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    final List<Pending> pendings = new ArrayList<Pending>();
+    queue.drainTo(pendings);
+    synchronized (lock) {
+      pendings.addAll(inFlight.values());
+      inFlight.clear();
+      for (UltAlprSdkResult result : earlyResults.values()) {
+        result.close();
+      }
+      earlyResults.clear();
+      retiredFrameIds.clear();
+    }
+    for (Pending pending : pendings) {
+      pending.future.completeExceptionally(new CancellationException("Processor closed"));
+    }
+    super.close();
+  }
+
+  private void runSubmitter() {
+    while (!closed) {
+      final Pending pending;
+      try {
+        pending = queue.take();
+      }
+      catch (InterruptedException e) {
+        return;
+      }
+      if (pending.future.isDone()) {
+        continue; // Cancelled or timed out while queued
+      }
+      final long frameId;
+      try {
+        final UltAlprSdkResult immediate = pending.frame.process();
+        if (!immediate.isOK()) {
+          complete(pending, immediate);
+          continue;
+        }
+        try {
+          frameId = immediate.frameId();
+        }
+        finally {
+          immediate.close();
+        }
+      }
+      catch (Throwable t) {
+        // Keep submitting the other frames: the submitter thread must not die (e.g. invalid buffer, UnsatisfiedLinkError)
+        pending.future.completeExceptionally(t);
+        continue;
+      }
+      UltAlprSdkResult early = null;
+      synchronized (lock) {
+        if (frameId >= 0) {
+          early = earlyResults.remove(frameId);
+        }
+        if (early == null) {
+          pending.key = (frameId >= 0) ? frameId : nextAnonymousId--;
+          inFlight.put(pending.key, pending);
+        }
+      }
+      if (early != null) {
+        complete(pending, early);
+      }
+      else if (pending.future.isDone()) {
+        forget(pending); // Timed out while being submitted
+      }
+    }
+  }
+
+  private Pending removeOldestAnonymous() {
+    final Iterator<Map.Entry<Long, Pending>> it = inFlight.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<Long, Pending> entry = it.next();
+      if (entry.getKey() < 0) {
+        it.remove();
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  private void complete(Pending pending, UltAlprSdkResult result) {
+    if (!pending.future.complete(result)) {
+      result.close(); // Nobody is waiting for it anymore
+    }
+  }
+
+  private void forget(Pending pending) {
+    if (!queue.remove(pending)) {
+      synchronized (lock) {
+        if (pending.key != null && inFlight.remove(pending.key) != null && pending.key >= 0) {
+          retiredFrameIds.put(pending.key, Boolean.TRUE);
+        }
+      }
+    }
+  }
+
+  private static final class Pending {
+    final UltAlprSdkFrame frame;
+    final CompletableFuture<UltAlprSdkResult> future = new CompletableFuture<UltAlprSdkResult>();
+    Long key; // Guarded by lock
+
+    Pending(UltAlprSdkFrame frame) {
+      this.frame = frame;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable direct buffers to hold the frames sent to {@link UltAlprSdkEngine#process}.
+ * Allocating direct memory is slow, could trigger System.gc() when -XX:MaxDirectMemorySize is reached and fragments the native heap:
+ * with a pool, decoding and processing frames of similar sizes reaches a steady state with zero direct allocation.
+ * <p>
+ * Buffers are grouped by size class (powers of two). A buffer is reference counted: {@link #acquire(int)} returns it
+ * with one reference, {@link Buffer#takeRef()} adds one (e.g. before handing it to another thread) and
+ * {@link Buffer#releaseRef()} returns it to the pool when the last reference is released.
+ * </p>
+ * The pool is thread-safe.
+ */
+public final class UltAlprSdkBufferPool {
+  private static final int MIN_CLASS_SHIFT = 12; // 4KB
+  private static final int MAX_CLASS_SHIFT = 30; // 1GB
+
+  private final ConcurrentLinkedQueue<Buffer>[] freeLists;
+  private final AtomicInteger[] freeCounts;
+  private final int maxBuffersPerClass;
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private final AtomicLong drops = new AtomicLong(0);
+  private final AtomicLong allocatedBytes = new AtomicLong(0);
+
+  /**
+   * @param maxBuffersPerClass Maximum number of free buffers kept per size class. Extra buffers are dropped (left to the GC).
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public UltAlprSdkBufferPool(int maxBuffersPerClass) {
+    if (maxBuffersPerClass < 0) {
+      throw new IllegalArgumentException("Invalid maxBuffersPerClass: " + maxBuffersPerClass);
+    }
+    this.maxBuffersPerClass = maxBuffersPerClass;
+    final int numClasses = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+    freeLists = new ConcurrentLinkedQueue[numClasses];
+    freeCounts = new AtomicInteger[numClasses];
+    for (int i = 0; i < numClasses; ++i) {
+      freeLists[i] = new ConcurrentLinkedQueue<Buffer>();
+      freeCounts[i] = new AtomicInteger(0);
+    }
+  }
+
+  /**
+   * Gets a buffer with at least the requested size, holding one reference.
+   * The returned ByteBuffer has position 0 and limit = size. Its content is undefined.
+   * @param size Size in bytes. Must be in ]0, 1GB].
+   */
+  public Buffer acquire(int size) {
+    final int sizeClass = sizeClass(size);
+    Buffer buffer = freeLists[sizeClass].poll();
+    if (buffer != null) {
+      freeCounts[sizeClass].decrementAndGet();
+      hits.incrementAndGet();
+    }
+    else {
+      misses.incrementAndGet();
+      final int capacity = 1 << (sizeClass + MIN_CLASS_SHIFT);
+      allocatedBytes.addAndGet(capacity);
+      buffer = new Buffer(this, sizeClass, ByteBuffer.allocateDirect(capacity));
+    }
+    buffer.refCount.set(1);
+    buffer.data.clear();
+    buffer.data.limit(size);
+    return buffer;
+  }
+
+  /** Number of acquisitions served by a free buffer. */
+  public long getHitCount() { return hits.get(); }
+  /** Number of acquisitions that required a direct allocation. */
+  public long getMissCount() { return misses.get(); }
+  /** Number of released buffers not kept because their size class was full. */
+  public long getDropCount() { return drops.get(); }
+  /** Total direct memory allocated by the pool, including the dropped buffers. */
+  public long getAllocatedBytes() { return allocatedBytes.get(); }
+
+  /** Number of free buffers currently held by the pool. */
+  public int getFreeCount() {
+    int count = 0;
+    for (AtomicInteger freeCount : freeCounts) {
+      count += freeCount.get();
+    }
+    return count;
+  }
+
+  /**
+   * Drops all the free buffers.
+   */
+  public void trim() {
+    for (int i = 0; i < freeLists.length; ++i) {
+      while (freeLists[i].poll() != null) {
+        freeCounts[i].decrementAndGet();
+      }
+    }
+  }
+
+  private void recycle(Buffer buffer) {
+    final int sizeClass = buffer.sizeClass;
+    if (freeCounts[sizeClass].incrementAndGet() <= maxBuffersPerClass) {
+      freeLists[sizeClass].offer(buffer);
+    }
+    else {
+      freeCounts[sizeClass].decrementAndGet();
+      drops.incrementAndGet();
+    }
+  }
+
+  private static int sizeClass(int size) {
+    if (size <= 0 || size > (1 << MAX_CLASS_SHIFT)) {
+      throw new IllegalArgumentException("Invalid size: " + size);
+    }
+    final int shift = 32 - Integer.numberOfLeadingZeros(size - 1); // ceil(log2(size))
+    return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+  }
+
+  /**
+   * Reference counted direct buffer owned by the pool.
+   */
+  public static final class Buffer {
+    private final UltAlprSdkBufferPool pool;
+    private final int sizeClass;
+    private final ByteBuffer data;
+    private final AtomicInteger refCount = new AtomicInteger(0);
+
+    private Buffer(UltAlprSdkBufferPool pool, int sizeClass, ByteBuffer data) {
+      this.pool = pool;
+      this.sizeClass = sizeClass;
+      this.data = data;
+    }
+
+    /**
+     * The direct buffer. Must not be used after the last reference is released.
+     */
+    public ByteBuffer getData() {
+      assert refCount.get() > 0;
+      return data;
+    }
+
+    public Buffer takeRef() {
+      for (;;) {
+        final int count = refCount.get();
+        if (count <= 0) {
+          throw new IllegalStateException("Buffer already released");
+        }
+        if (refCount.compareAndSet(count, count + 1)) {
+          return this;
+        }
+      }
+    }
+
+    public void releaseRef() {
+      final int count = refCount.decrementAndGet();
+      if (count == 0) {
+        pool.recycle(this);
+      }
+      else if (count < 0) {
+        refCount.incrementAndGet();
+        throw new IllegalStateException("Buffer already released");
+      }
+    }
+  }
+}
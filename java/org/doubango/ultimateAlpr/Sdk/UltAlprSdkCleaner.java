@@ -0,0 +1,147 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Releases the native memory held by the SWIG proxies ({@link UltAlprSdkResult}, {@link UltAlprSdkEngine}
+ * and {@link UltAlprSdkParallelDeliveryCallback}).
+ * The proxies are {@link AutoCloseable} and should be closed as soon as possible (e.g. try-with-resources).
+ * The {@link Cleaner} registered here is only a backstop for the objects the application forgot to close.
+ * <p>
+ * Leak detection is controlled using {@link #setLeakDetection(LeakDetection)} or the
+ * "org.doubango.ultimateAlpr.Sdk.leakDetection" system property ("disabled" | "log" | "strict").
+ * </p>
+ */
+public final class UltAlprSdkCleaner {
+
+  /**
+   * What to do when a {@link UltAlprSdkResult} is reclaimed by the garbage collector without being closed.
+   */
+  public enum LeakDetection {
+    /** Silently release the native memory. This is the default value. */
+    DISABLED,
+    /** Release the native memory and print the allocation stack trace on stderr. */
+    LOG,
+    /** Same as {@link #LOG} and the next result allocation will throw an {@link IllegalStateException}. */
+    STRICT
+  }
+
+  /**
+   * JNI function freeing a native pointer, e.g. ultimateAlprSdkJNI.delete_UltAlprSdkResult.
+   */
+  interface Deleter {
+    void delete(long cPtr);
+  }
+
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private static volatile LeakDetection leakDetection = parseLeakDetection(System.getProperty("org.doubango.ultimateAlpr.Sdk.leakDetection"));
+  private static final AtomicLong numLeaks = new AtomicLong(0);
+  private static final AtomicReference<Throwable> pendingLeak = new AtomicReference<Throwable>();
+
+  private UltAlprSdkCleaner() {
+  }
+
+  public static void setLeakDetection(LeakDetection mode) {
+    leakDetection = (mode == null) ? LeakDetection.DISABLED : mode;
+  }
+
+  public static LeakDetection getLeakDetection() {
+    return leakDetection;
+  }
+
+  /**
+   * Number of results reclaimed by the garbage collector instead of being closed by the application.
+   * Only counted when leak detection is enabled.
+   */
+  public static long getLeakCount() {
+    return numLeaks.get();
+  }
+
+  /**
+   * Registers a native pointer owned by the proxy.
+   * @param owner The proxy. Must not be referenced by the deleter.
+   * @param cPtr The native pointer.
+   * @param deleter The JNI function to use to free the native pointer.
+   * @param trackLeaks Whether the proxy must be reported when reclaimed without being closed.
+   * @return The state to use to release the pointer or change the ownership.
+   */
+  static State register(Object owner, long cPtr, Deleter deleter, boolean trackLeaks) {
+    final LeakDetection mode = leakDetection;
+    final boolean tracked = trackLeaks && mode != LeakDetection.DISABLED;
+    if (tracked && mode == LeakDetection.STRICT) {
+      final Throwable leak = pendingLeak.getAndSet(null);
+      if (leak != null) {
+        deleter.delete(cPtr);
+        throw new IllegalStateException(leak.getMessage(), leak);
+      }
+    }
+    final State state = new State(cPtr, deleter, tracked ? new Throwable(owner.getClass().getSimpleName() + " leaked: native memory released by the garbage collector instead of close()") : null);
+    state.cleanable = CLEANER.register(owner, state);
+    return state;
+  }
+
+  private static LeakDetection parseLeakDetection(String value) {
+    if (value != null) {
+      for (LeakDetection mode : LeakDetection.values()) {
+        if (mode.name().equalsIgnoreCase(value.trim())) {
+          return mode;
+        }
+      }
+    }
+    return LeakDetection.DISABLED;
+  }
+
+  /**
+   * Cleaning action. Must never hold a reference to the proxy otherwise it will never become phantom reachable.
+   */
+  static final class State implements Runnable {
+    private final long cPtr;
+    private final Deleter deleter;
+    private final Throwable allocationSite;
+    private volatile boolean memOwn = true;
+    private volatile boolean closed = false;
+    private Cleaner.Cleanable cleanable;
+
+    private State(long cPtr, Deleter deleter, Throwable allocationSite) {
+      this.cPtr = cPtr;
+      this.deleter = deleter;
+      this.allocationSite = allocationSite;
+    }
+
+    void setMemOwn(boolean memOwn) {
+      this.memOwn = memOwn;
+    }
+
+    /**
+     * Explicit release requested by the application. Idempotent.
+     */
+    void clean() {
+      closed = true;
+      cleanable.clean();
+    }
+
+    @Override
+    public void run() {
+      if (!closed && allocationSite != null) {
+        numLeaks.incrementAndGet();
+        allocationSite.printStackTrace();
+        if (leakDetection == LeakDetection.STRICT) {
+          pendingLeak.compareAndSet(null, allocationSite);
+        }
+      }
+      if (memOwn) {
+        memOwn = false;
+        deleter.delete(cPtr);
+      }
+    }
+  }
+}
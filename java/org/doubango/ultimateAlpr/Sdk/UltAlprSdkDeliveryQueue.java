@@ -0,0 +1,307 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Parallel delivery callback handing the results off to the application threads through a bounded ring buffer.
+ * {@link #onNewResult(UltAlprSdkResult)} runs on the engine's thread: anything slow done there (locks, logs, disk writes, UI...)
+ * stalls the pipeline. This callback only takes the result's {@link UltAlprSdkResult#snapshot() snapshot} (no JSON string
+ * for the results without plates nor cars), stores it into a preallocated slot and returns,
+ * the application drains the results on its own threads using {@link #poll()}, {@link #take()} or {@link #drainTo(Collection, int)}.
+ * <p>
+ * The ring is lock-free (bounded MPMC queue with a sequence number per slot): any number of consumers could drain it.
+ * Locking is only used to park consumers waiting on an empty queue (and the producer with {@link OverflowPolicy#BLOCK}).
+ * When the ring is full the {@link OverflowPolicy} decides which result is dropped, or whether to wait.
+ * </p>
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkDeliveryQueue queue = new UltAlprSdkDeliveryQueue(64, UltAlprSdkDeliveryQueue.OverflowPolicy.DROP_OLDEST);
+ * UltAlprSdkEngine.init(jsonConfig, queue);
+ * // On the consumer thread
+ * UltAlprSdkResultSnapshot result;
+ * while ((result = queue.take()) != null) { ... }
+ * </pre>
+ */
+public class UltAlprSdkDeliveryQueue extends UltAlprSdkParallelDeliveryCallback {
+
+  /**
+   * What to do with a new result when the ring is full.
+   */
+  public enum OverflowPolicy {
+    /** Drop the oldest queued result to make room for the new one. Consumers always get the most recent results. */
+    DROP_OLDEST,
+    /** Drop the new result. */
+    DROP_NEWEST,
+    /** Wait for a consumer to make room. This stalls the engine's pipeline: no result is lost but frames could be dropped upstream. */
+    BLOCK
+  }
+
+  private final OverflowPolicy policy;
+  private final int mask;
+  private final AtomicLongArray sequences;
+  // Slots, written by the producer before publishing the sequence and read by the consumer before releasing it
+  private final UltAlprSdkResultSnapshot[] slots;
+
+  private final AtomicLong enqueuePos = new AtomicLong(0);
+  private final AtomicLong dequeuePos = new AtomicLong(0);
+
+  private final AtomicLong deliveredCount = new AtomicLong(0);
+  private final AtomicLong dropCount = new AtomicLong(0);
+  private final AtomicInteger maxDepth = new AtomicInteger(0);
+
+  private final ReentrantLock waitLock = new ReentrantLock();
+  private final Condition notEmpty = waitLock.newCondition();
+  private final Condition notFull = waitLock.newCondition();
+  private final AtomicInteger waitingConsumers = new AtomicInteger(0);
+  private final AtomicInteger waitingProducers = new AtomicInteger(0);
+  private volatile boolean closed = false;
+
+  /**
+   * @param capacity Number of slots, rounded up to the next power of two.
+   * @param policy What to do when the ring is full.
+   */
+  public UltAlprSdkDeliveryQueue(int capacity, OverflowPolicy policy) {
+    super();
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    if (policy == null) {
+      throw new IllegalArgumentException("Overflow policy is required");
+    }
+    final int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.policy = policy;
+    this.mask = size - 1;
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; ++i) {
+      sequences.set(i, i);
+    }
+    this.slots = new UltAlprSdkResultSnapshot[size];
+  }
+
+  /**
+   * Copies the result into the ring. Called by the engine.
+   */
+  @Override
+  public void onNewResult(UltAlprSdkResult newResult) {
+    if (closed) {
+      dropCount.incrementAndGet();
+      return;
+    }
+    // The delivered result is owned by the engine and only valid during the callback: snapshot it now
+    final UltAlprSdkResultSnapshot snapshot = newResult.snapshot();
+    deliveredCount.incrementAndGet();
+    while (!offer(snapshot)) {
+      switch (policy) {
+        case DROP_NEWEST:
+          dropCount.incrementAndGet();
+          return;
+        case DROP_OLDEST:
+          if (dequeue() != null) {
+            dropCount.incrementAndGet();
+          }
+          break;
+        default: // BLOCK
+          if (!awaitNotFull()) {
+            dropCount.incrementAndGet(); // Closed or interrupted while waiting
+            return;
+          }
+          break;
+      }
+    }
+    final int depth = getQueueDepth();
+    int max;
+    while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) { }
+    if (waitingConsumers.get() > 0) {
+      signal(notEmpty);
+    }
+  }
+
+  /**
+   * Gets and removes the oldest result.
+   * @return The result, null if the queue is empty.
+   */
+  public UltAlprSdkResultSnapshot poll() {
+    final UltAlprSdkResultSnapshot result = dequeue();
+    if (result != null && waitingProducers.get() > 0) {
+      signal(notFull);
+    }
+    return result;
+  }
+
+  /**
+   * Gets and removes the oldest result, waiting for one if the queue is empty.
+   * @return The result, null if the queue was closed while empty.
+   */
+  public UltAlprSdkResultSnapshot take() throws InterruptedException {
+    return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Gets and removes the oldest result, waiting up to the specified time if the queue is empty.
+   * @return The result, null if the timeout expired or the queue was closed while empty.
+   */
+  public UltAlprSdkResultSnapshot poll(long timeout, TimeUnit unit) throws InterruptedException {
+    UltAlprSdkResultSnapshot result = poll();
+    if (result != null) {
+      return result;
+    }
+    long nanos = unit.toNanos(timeout);
+    waitingConsumers.incrementAndGet();
+    waitLock.lockInterruptibly();
+    try {
+      while ((result = poll()) == null && !closed && nanos > 0) {
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+    }
+    finally {
+      waitLock.unlock();
+      waitingConsumers.decrementAndGet();
+    }
+    return result;
+  }
+
+  /**
+   * Removes up to maxElements results and adds them to the collection, without waiting.
+   * @return The number of results transferred.
+   */
+  public int drainTo(Collection<? super UltAlprSdkResultSnapshot> collection, int maxElements) {
+    int count = 0;
+    UltAlprSdkResultSnapshot result;
+    while (count < maxElements && (result = dequeue()) != null) {
+      collection.add(result);
+      ++count;
+    }
+    if (count > 0 && waitingProducers.get() > 0) {
+      signal(notFull);
+    }
+    return count;
+  }
+
+  /**
+   * Number of queued results.
+   */
+  public int getQueueDepth() {
+    final long depth = enqueuePos.get() - dequeuePos.get();
+    return (int) Math.max(0, Math.min(depth, mask + 1));
+  }
+
+  /**
+   * Highest number of queued results seen so far.
+   */
+  public int getMaxQueueDepth() {
+    return maxDepth.get();
+  }
+
+  /**
+   * Number of slots.
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Number of results delivered by the engine, including the dropped ones.
+   */
+  public long getDeliveredCount() {
+    return deliveredCount.get();
+  }
+
+  /**
+   * Number of results dropped because the queue was full (or closed).
+   */
+  public long getDropCount() {
+    return dropCount.get();
+  }
+
+  /**
+   * Wakes up the waiting threads: consumers get the remaining results then null, new results are dropped.
+   * The engine must be deInitialized before closing the queue.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    signal(notEmpty);
+    signal(notFull);
+    super.close();
+  }
+
+  private boolean offer(UltAlprSdkResultSnapshot snapshot) {
+    for (;;) {
+      final long pos = enqueuePos.get();
+      final int index = (int) pos & mask;
+      final long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (enqueuePos.compareAndSet(pos, pos + 1)) {
+          slots[index] = snapshot;
+          sequences.set(index, pos + 1); // Publish
+          return true;
+        }
+      }
+      else if (diff < 0) {
+        return false; // Full
+      }
+      // Otherwise another producer took the slot: retry
+    }
+  }
+
+  private UltAlprSdkResultSnapshot dequeue() {
+    for (;;) {
+      final long pos = dequeuePos.get();
+      final int index = (int) pos & mask;
+      final long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (dequeuePos.compareAndSet(pos, pos + 1)) {
+          final UltAlprSdkResultSnapshot result = slots[index];
+          slots[index] = null;
+          sequences.set(index, pos + mask + 1); // Release the slot for the next lap
+          return result;
+        }
+      }
+      else if (diff < 0) {
+        return null; // Empty
+      }
+      // Otherwise another consumer took the slot: retry
+    }
+  }
+
+  private boolean awaitNotFull() {
+    waitingProducers.incrementAndGet();
+    waitLock.lock();
+    try {
+      while (!closed && getQueueDepth() > mask) {
+        notFull.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10));
+      }
+      return !closed;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    finally {
+      waitLock.unlock();
+      waitingProducers.decrementAndGet();
+    }
+  }
+
+  private void signal(Condition condition) {
+    waitLock.lock();
+    try {
+      condition.signalAll();
+    }
+    finally {
+      waitLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe entry point for many producers (e.g. one thread per camera, platform or virtual threads) sharing the engine.
+ * The engine already spreads each frame over its own thread budget: calling process() from many threads at once doesn't add
+ * throughput, the callers just contend with unpredictable latency. The dispatcher queues the frames per source and feeds
+ * the engine from a single thread, picking the sources in round-robin order so that a busy camera can't starve the others.
+ * <p>
+ * Each source has a bounded queue, the {@link UltAlprSdkDeliveryQueue.OverflowPolicy} decides what happens when it's full
+ * ({@link UltAlprSdkDeliveryQueue.OverflowPolicy#DROP_OLDEST} keeps the most recent frames of a live camera).
+ * The time spent in the queue and the time spent in process() are measured separately, per source and overall:
+ * a queueing delay growing while the inference time is stable means the engine is saturated.
+ * </p>
+ * <p>
+ * Meant for the sequential mode (init() without callback), where process() returns the plates. In parallel mode use
+ * {@link UltAlprSdkAsyncProcessor}. The frame's buffers must stay valid until its future completes.
+ * The futures complete on the dispatcher thread: use the *Async stages for anything slow.
+ * Waiting producers use {@link ReentrantLock} (no monitor), which doesn't pin virtual threads.
+ * </p>
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkDispatcher dispatcher = new UltAlprSdkDispatcher(4, UltAlprSdkDeliveryQueue.OverflowPolicy.DROP_OLDEST);
+ * // On each camera thread
+ * dispatcher.submit(cameraId, frame).thenAccept(result -&gt; ...);
+ * ...
+ * for (UltAlprSdkDispatcher.SourceStats stats : dispatcher.getStats()) { ... }
+ * dispatcher.close();
+ * </pre>
+ */
+public class UltAlprSdkDispatcher implements AutoCloseable {
+
+  /**
+   * Per-source metrics. The latencies are in nanoseconds.
+   */
+  public static final class SourceStats {
+    private final String sourceId;
+    private final int queued;
+    private final long submitted;
+    private final long processed;
+    private final long dropped;
+    private final UltAlprSdkLatencyHistogram.Snapshot queueDelay;
+    private final UltAlprSdkLatencyHistogram.Snapshot inferenceTime;
+
+    SourceStats(String sourceId, int queued, long submitted, long processed, long dropped, UltAlprSdkLatencyHistogram.Snapshot queueDelay, UltAlprSdkLatencyHistogram.Snapshot inferenceTime) {
+      this.sourceId = sourceId;
+      this.queued = queued;
+      this.submitted = submitted;
+      this.processed = processed;
+      this.dropped = dropped;
+      this.queueDelay = queueDelay;
+      this.inferenceTime = inferenceTime;
+    }
+
+    public String getSourceId() { return sourceId; }
+    /** Number of frames waiting in the source's queue. */
+    public int getQueuedCount() { return queued; }
+    public long getSubmittedCount() { return submitted; }
+    public long getProcessedCount() { return processed; }
+    /** Number of frames dropped or rejected because the source's queue was full. */
+    public long getDroppedCount() { return dropped; }
+    /** Time between submit() and the start of process(). */
+    public UltAlprSdkLatencyHistogram.Snapshot getQueueDelay() { return queueDelay; }
+    /** Duration of process(). */
+    public UltAlprSdkLatencyHistogram.Snapshot getInferenceTime() { return inferenceTime; }
+
+    @Override
+    public String toString() {
+      return sourceId + ": queued: " + queued + ", submitted: " + submitted + ", processed: " + processed + ", dropped: " + dropped
+        + ", queueDelay: {" + queueDelay + "}, inference: {" + inferenceTime + "}";
+    }
+  }
+
+  private final int maxQueuedPerSource;
+  private final UltAlprSdkDeliveryQueue.OverflowPolicy policy;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final LinkedHashMap<String, Source> sources = new LinkedHashMap<String, Source>(); // Guarded by lock
+  /** Sources with queued frames, in round-robin order. Guarded by lock. */
+  private final ArrayDeque<Source> ready = new ArrayDeque<Source>();
+  private final UltAlprSdkLatencyHistogram queueDelay = new UltAlprSdkLatencyHistogram();
+  private final UltAlprSdkLatencyHistogram inferenceTime = new UltAlprSdkLatencyHistogram();
+  private final Thread dispatcher;
+  private volatile boolean closed = false;
+
+  /**
+   * @param maxQueuedPerSource Maximum number of frames waiting in each source's queue.
+   * @param policy What to do when a source's queue is full.
+   */
+  public UltAlprSdkDispatcher(int maxQueuedPerSource, UltAlprSdkDeliveryQueue.OverflowPolicy policy) {
+    if (maxQueuedPerSource <= 0) {
+      throw new IllegalArgumentException("Invalid queue size: " + maxQueuedPerSource);
+    }
+    this.maxQueuedPerSource = maxQueuedPerSource;
+    this.policy = policy;
+    dispatcher = new Thread(this::runDispatcher, "UltAlprSdkDispatcher"); // Platform thread: it runs the native code
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Queues a frame. Safe to call from any thread.
+   * @param sourceId The frame's source, e.g. the camera id. Sources are served in round-robin order.
+   * @return The future completed with the result. Fails with {@link RejectedExecutionException} when the source's queue is full
+   * ({@link UltAlprSdkDeliveryQueue.OverflowPolicy#DROP_NEWEST}) and with {@link CancellationException} when the frame is dropped
+   * ({@link UltAlprSdkDeliveryQueue.OverflowPolicy#DROP_OLDEST}), the producer is interrupted while waiting for room
+   * ({@link UltAlprSdkDeliveryQueue.OverflowPolicy#BLOCK}) or the dispatcher is closed.
+   */
+  public CompletableFuture<UltAlprSdkResultSnapshot> submit(String sourceId, UltAlprSdkFrame frame) {
+    final Task task = new Task(frame);
+    Task dropped = null;
+    lock.lock();
+    try {
+      Source source = sources.get(sourceId);
+      if (source == null) {
+        source = new Source(sourceId);
+        sources.put(sourceId, source);
+      }
+      ++source.submitted;
+      if (source.queue.size() >= maxQueuedPerSource && !closed) {
+        switch (policy) {
+          case DROP_OLDEST:
+            dropped = source.queue.pollFirst();
+            ++source.dropped;
+            break;
+          case DROP_NEWEST:
+            ++source.dropped;
+            task.future.completeExceptionally(new RejectedExecutionException("Queue full for source " + sourceId));
+            return task.future;
+          case BLOCK:
+            try {
+              while (source.queue.size() >= maxQueuedPerSource && !closed) {
+                notFull.await();
+              }
+            }
+            catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              ++source.dropped;
+              task.future.completeExceptionally(new CancellationException("Interrupted while waiting for room"));
+              return task.future;
+            }
+            break;
+        }
+      }
+      if (closed) {
+        task.future.completeExceptionally(new CancellationException("Dispatcher closed"));
+        return task.future;
+      }
+      task.enqueueNanos = System.nanoTime();
+      source.queue.addLast(task);
+      if (!source.inReady) { // The queue may already be non-empty, e.g. DROP_OLDEST with one slot
+        source.inReady = true;
+        ready.addLast(source);
+        notEmpty.signal();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+    if (dropped != null) {
+      dropped.future.completeExceptionally(new CancellationException("Dropped for a more recent frame"));
+    }
+    return task.future;
+  }
+
+  /**
+   * Queues a frame and waits for its result. Meant for producers running on virtual threads.
+   * @throws CancellationException If the frame is dropped or the dispatcher closed.
+   * @throws java.util.concurrent.CompletionException If the frame is rejected or process() throws.
+   */
+  public UltAlprSdkResultSnapshot process(String sourceId, UltAlprSdkFrame frame) {
+    return submit(sourceId, frame).join();
+  }
+
+  /**
+   * Gets the metrics of each source, in order of first submission.
+   */
+  public List<SourceStats> getStats() {
+    lock.lock();
+    try {
+      final List<SourceStats> stats = new ArrayList<SourceStats>(sources.size());
+      for (Source source : sources.values()) {
+        stats.add(new SourceStats(source.id, source.queue.size(), source.submitted, source.processed, source.dropped,
+          source.queueDelay.snapshot(), source.inferenceTime.snapshot()));
+      }
+      return stats;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** Time between submit() and the start of process(), all sources. */
+  public UltAlprSdkLatencyHistogram.Snapshot getQueueDelay() {
+    return queueDelay.snapshot();
+  }
+
+  /** Duration of process(), all sources. */
+  public UltAlprSdkLatencyHistogram.Snapshot getInferenceTime() {
+    return inferenceTime.snapshot();
+  }
+
+  /**
+   * Stops the dispatcher once the frame being processed (if any) is done and fails the queued frames.
+   */
+  @Override
+  public void close() {
+    final List<Task> queued = new ArrayList<Task>();
+    lock.lock();
+    try {
+      closed = true;
+      for (Source source : ready) {
+        queued.addAll(source.queue);
+        source.queue.clear();
+        source.inReady = false;
+      }
+      ready.clear();
+      notEmpty.signalAll();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+    for (Task task : queued) {
+      task.future.completeExceptionally(new CancellationException("Dispatcher closed"));
+    }
+    try {
+      dispatcher.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runDispatcher() {
+    for (;;) {
+      final Source source;
+      final Task task;
+      lock.lock();
+      try {
+        while (ready.isEmpty() && !closed) {
+          notEmpty.awaitUninterruptibly();
+        }
+        if (closed) {
+          return;
+        }
+        source = ready.pollFirst();
+        task = source.queue.pollFirst();
+        if (!source.queue.isEmpty()) {
+          ready.addLast(source); // Back of the line
+        }
+        else {
+          source.inReady = false;
+        }
+        notFull.signalAll();
+      }
+      finally {
+        lock.unlock();
+      }
+      if (task == null || task.future.isDone()) {
+        continue; // Cancelled by the producer while queued
+      }
+      final long startNanos = System.nanoTime();
+      final UltAlprSdkResultSnapshot result;
+      try (UltAlprSdkResult immediate = task.frame.process()) {
+        result = immediate.snapshot();
+      }
+      catch (Throwable t) {
+        // Keep serving the other frames: the dispatcher thread must not die (e.g. UnsatisfiedLinkError, OutOfMemoryError)
+        task.future.completeExceptionally(t);
+        continue;
+      }
+      final long endNanos = System.nanoTime();
+      queueDelay.record(startNanos - task.enqueueNanos);
+      inferenceTime.record(endNanos - startNanos);
+      source.queueDelay.record(startNanos - task.enqueueNanos);
+      source.inferenceTime.record(endNanos - startNanos);
+      lock.lock();
+      try {
+        ++source.processed;
+      }
+      finally {
+        lock.unlock();
+      }
+      task.future.complete(result);
+    }
+  }
+
+  private static final class Source {
+    final String id;
+    final ArrayDeque<Task> queue = new ArrayDeque<Task>();
+    final UltAlprSdkLatencyHistogram queueDelay = new UltAlprSdkLatencyHistogram();
+    final UltAlprSdkLatencyHistogram inferenceTime = new UltAlprSdkLatencyHistogram();
+    // Guarded by the dispatcher's lock
+    boolean inReady; // Whether the source is in the ready list
+    long submitted;
+    long processed;
+    long dropped;
+
+    Source(String id) {
+      this.id = id;
+    }
+  }
+
+  private static final class Task {
+    final UltAlprSdkFrame frame;
+    final CompletableFuture<UltAlprSdkResultSnapshot> future = new CompletableFuture<UltAlprSdkResultSnapshot>();
+    long enqueueNanos;
+
+    Task(UltAlprSdkFrame frame) {
+      this.frame = frame;
+    }
+  }
+}
@@ -8,71 +8,344 @@
 
 package org.doubango.ultimateAlpr.Sdk;
 
-public class UltAlprSdkEngine {
+/**
+ * The engine is a process-wide singleton owned by the native library: all the functions are static and there is
+ * one configuration (charset, models, thread budget, parallel callback...) per process. Calling init() again replaces the configuration.
+ * To run different configurations side by side (e.g. latin and korean charsets), use one process per configuration.
+ * <p>
+ * Each frame is already spread over the engine's own thread budget: calling process() from many threads at once doesn't add
+ * throughput, the callers contend for the same native threads with unpredictable latency.
+ * With many producers (e.g. one thread per camera) feed the engine from a single thread using {@link UltAlprSdkDispatcher}.
+ * </p>
+ */
+public class UltAlprSdkEngine implements AutoCloseable {
   private long swigCPtr;
   protected boolean swigCMemOwn;
+  private UltAlprSdkCleaner.State swigCleanerState;
+
+  private static final UltAlprSdkCleaner.Deleter swigDeleter = new UltAlprSdkCleaner.Deleter() {
+    @Override
+    public void delete(long cPtr) {
+      ultimateAlprSdkJNI.delete_UltAlprSdkEngine(cPtr);
+    }
+  };
 
   protected UltAlprSdkEngine(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    if (cMemoryOwn && cPtr != 0) {
+      swigCleanerState = UltAlprSdkCleaner.register(this, cPtr, swigDeleter, false);
+    }
   }
 
   protected static long getCPtr(UltAlprSdkEngine obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
-    delete();
-  }
-
   public synchronized void delete() {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        ultimateAlprSdkJNI.delete_UltAlprSdkEngine(swigCPtr);
+        swigCleanerState.clean();
       }
       swigCPtr = 0;
     }
   }
 
+  @Override
+  public void close() {
+    delete();
+  }
+
+  private static volatile String activeConfig;
+
+  // Configuration passed to the init() running on this thread: recorded before the native call by the jsonConfig typemap,
+  // consumed by onInit() once the call returns
+  private static final ThreadLocal<String> initConfigs = new ThreadLocal<String>();
+
+  private static String rememberConfig(String jsonConfig) {
+    initConfigs.set(jsonConfig);
+    return jsonConfig;
+  }
+
+  private static UltAlprSdkResult onInit(UltAlprSdkResult result) {
+    final String jsonConfig = initConfigs.get();
+    initConfigs.remove();
+    if (result.isOK()) {
+      activeConfig = (jsonConfig == null) ? "" : jsonConfig;
+    }
+    return result;
+  }
+
+  private static UltAlprSdkResult onDeInit(UltAlprSdkResult result) {
+    if (result.isOK()) {
+      activeConfig = null;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the JSON configuration passed to the last successful init().
+   * @return The configuration, an empty string for the default one, null if the engine isn't initialized.
+   */
+  public static String getActiveConfig() {
+    return activeConfig;
+  }
+
+  private static volatile UltAlprSdkLatencyMonitor latencyMonitor;
+
+  /**
+   * Installs the latency instrumentation: every call to process() is then recorded in the monitor.
+   * @param monitor The monitor, null to disable the instrumentation (default).
+   */
+  public static void setLatencyMonitor(UltAlprSdkLatencyMonitor monitor) {
+    latencyMonitor = monitor;
+  }
+
+  public static UltAlprSdkLatencyMonitor getLatencyMonitor() {
+    return latencyMonitor;
+  }
+
+  private static UltAlprSdkResult recordLatency(UltAlprSdkLatencyMonitor monitor, ULTALPR_SDK_IMAGE_TYPE imageType, long widthInSamples, long heightInSamples, long startNanos, UltAlprSdkResult result) {
+    if (monitor != null) {
+      monitor.record(imageType, widthInSamples, heightInSamples, startNanos, result);
+    }
+    return result;
+  }
+
+  /**
+   * Processes a packed image stored in a Java heap array, e.g. the DataBufferByte of a BufferedImage.
+   * The native API only accepts direct buffers: the samples are copied into a direct staging buffer reused by the calling thread,
+   * instead of allocating a new direct buffer for each image.
+   * For off-heap memory (e.g. a native java.lang.foreign.MemorySegment) use its ByteBuffer view with the ByteBuffer overload: no copy at all.
+   * @param imageData The samples.
+   * @param offset Offset (in bytes) of the first sample.
+   * @param length Number of bytes to use, from offset. At least ((height - 1) * stride + width) * bytes per pixel for the packed
+   * formats, the luma plane followed by the chroma planes for the planar ones (0 stride meaning width).
+   * @param imageStrideInSamples The stride in samples (not bytes).
+   * @throws IllegalArgumentException if the range is outside the array or too short for the image.
+   */
+  public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, byte[] imageData, int offset, int length, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples, int imageExifOrientation) {
+    checkHeapImage(imageData.length, offset, length, 1, requiredLength(imageType, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples));
+    final java.nio.ByteBuffer staging = stagingBuffer(length);
+    staging.put(imageData, offset, length);
+    staging.flip();
+    return process(imageType, staging, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, imageExifOrientation);
+  }
+
+  /**
+   * Processes an int-packed image stored in a Java heap array, e.g. the DataBufferInt of a BufferedImage (TYPE_INT_ARGB or TYPE_INT_RGB).
+   * Each 0xAARRGGBB int is written in little-endian order (B, G, R, A) in a direct staging buffer reused by the calling thread:
+   * use {@link ULTALPR_SDK_IMAGE_TYPE#ULTALPR_SDK_IMAGE_TYPE_BGRA32} for ARGB/RGB ints and {@link ULTALPR_SDK_IMAGE_TYPE#ULTALPR_SDK_IMAGE_TYPE_RGBA32} for ABGR ints.
+   * @param offset Offset (in ints) of the first pixel.
+   * @param length Number of ints to use, from offset. At least (height - 1) * stride + width.
+   * @param imageStrideInSamples The stride in pixels.
+   * @throws IllegalArgumentException if the image type isn't a 32-bit one, the range is outside the array or too short for the image.
+   */
+  public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, int[] imageData, int offset, int length, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples, int imageExifOrientation) {
+    if (imageType != ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_RGBA32 && imageType != ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGRA32) {
+      throw new IllegalArgumentException("32-bit image type expected: " + imageType);
+    }
+    checkHeapImage(imageData.length, offset, length, 4, requiredLength(imageType, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples));
+    final java.nio.ByteBuffer staging = stagingBuffer(length << 2);
+    staging.order(java.nio.ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(imageData, offset, length);
+    staging.limit(length << 2);
+    return process(imageType, staging, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, imageExifOrientation);
+  }
+
+  private static final ThreadLocal<java.nio.ByteBuffer[]> stagingBuffers = new ThreadLocal<java.nio.ByteBuffer[]>() {
+    @Override
+    protected java.nio.ByteBuffer[] initialValue() {
+      return new java.nio.ByteBuffer[1];
+    }
+  };
+
+  /**
+   * Largest staging buffer kept by a thread (1080p BGRA32). Bigger images get a one-shot buffer, released by the
+   * garbage collector, so that a thread which processed a single huge image doesn't pin that much native memory.
+   */
+  private static final int STAGING_BUFFER_MAX_RETAINED = 8 << 20;
+
+  /**
+   * Gets the calling thread's direct staging buffer, cleared, with at least the requested capacity.
+   */
+  private static java.nio.ByteBuffer stagingBuffer(int capacity) {
+    if (capacity > STAGING_BUFFER_MAX_RETAINED) {
+      return java.nio.ByteBuffer.allocateDirect(capacity);
+    }
+    final java.nio.ByteBuffer[] holder = stagingBuffers.get();
+    java.nio.ByteBuffer buffer = holder[0];
+    if (buffer == null || buffer.capacity() < capacity) {
+      holder[0] = buffer = java.nio.ByteBuffer.allocateDirect(capacity);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private static void checkHeapImage(int arrayLength, int offset, int length, int elementSize, long requiredBytes) {
+    if (offset < 0 || length < 0 || offset > arrayLength - length) {
+      throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length + ", array length=" + arrayLength);
+    }
+    if ((long) length * elementSize < requiredBytes) {
+      throw new IllegalArgumentException("Image data too short: " + ((long) length * elementSize) + " bytes, at least " + requiredBytes + " expected");
+    }
+  }
+
+  /**
+   * Minimum number of bytes of a packed image, or of a planar image stored contiguously (chroma planes right after the luma plane).
+   * @param strideInSamples The stride in samples, 0 meaning width.
+   */
+  private static long requiredLength(ULTALPR_SDK_IMAGE_TYPE imageType, long width, long height, long strideInSamples) {
+    if (width <= 0 || height <= 0 || strideInSamples < 0) {
+      throw new IllegalArgumentException("Invalid size: " + width + "x" + height + ", stride=" + strideInSamples);
+    }
+    final long stride = (strideInSamples == 0) ? width : strideInSamples;
+    if (stride < width) {
+      throw new IllegalArgumentException("Stride (" + stride + ") less than width (" + width + ")");
+    }
+    final long lastRow = (height - 1) * stride + width; // Samples up to the end of the last row
+    final long chromaWidth = (width + 1) >> 1, chromaHeight = (height + 1) >> 1, chromaStride = (stride + 1) >> 1;
+    switch (imageType) {
+      case ULTALPR_SDK_IMAGE_TYPE_Y:
+        return lastRow;
+      case ULTALPR_SDK_IMAGE_TYPE_RGB24:
+      case ULTALPR_SDK_IMAGE_TYPE_BGR24:
+        return lastRow * 3;
+      case ULTALPR_SDK_IMAGE_TYPE_RGBA32:
+      case ULTALPR_SDK_IMAGE_TYPE_BGRA32:
+        return lastRow * 4;
+      case ULTALPR_SDK_IMAGE_TYPE_NV12:
+      case ULTALPR_SDK_IMAGE_TYPE_NV21: // Interleaved UV plane, same stride as Y
+        return stride * height + (chromaHeight - 1) * stride + (chromaWidth << 1);
+      case ULTALPR_SDK_IMAGE_TYPE_YUV420P:
+      case ULTALPR_SDK_IMAGE_TYPE_YVU420P:
+        return stride * height + chromaStride * chromaHeight + (chromaHeight - 1) * chromaStride + chromaWidth;
+      case ULTALPR_SDK_IMAGE_TYPE_YUV422P:
+        return stride * height + chromaStride * height + (height - 1) * chromaStride + chromaWidth;
+      case ULTALPR_SDK_IMAGE_TYPE_YUV444P:
+        return stride * height * 2 + lastRow;
+      default:
+        return lastRow;
+    }
+  }
+
+  /**
+   * Processes a frame (packed or multi-plane) using the matching process function.
+   * @param frame The frame to process.
+   * @return The result. The caller must close it.
+   */
+  public static UltAlprSdkResult process(UltAlprSdkFrame frame) {
+    return frame.process();
+  }
+
+  /**
+   * Processes a batch of frames, in order.
+   * This is a convenience loop over {@link #process(UltAlprSdkFrame)}: the native library has no batch entry point,
+   * each frame is still one JNI call.
+   * A failure on one frame doesn't stop the batch: check each result.
+   * In parallel mode the plates are delivered to the callback passed to init() and the returned results are the immediate acknowledgments.
+   * @param frames The frames to process.
+   * @return One result per frame, in the same order. The caller must close them.
+   * If a frame throws (e.g. invalid buffer), the results already produced are closed before the exception is propagated.
+   */
+  public static UltAlprSdkResult[] processBatch(java.util.List<UltAlprSdkFrame> frames) {
+    final UltAlprSdkResult[] results = new UltAlprSdkResult[frames.size()];
+    int index = 0;
+    try {
+      for (UltAlprSdkFrame frame : frames) {
+        results[index] = frame.process();
+        ++index;
+      }
+    }
+    catch (RuntimeException | Error e) {
+      for (int i = 0; i < index; ++i) {
+        results[i].close();
+      }
+      throw e;
+    }
+    return results;
+  }
+
+  /**
+   * Submits a batch of frames in parallel mode, where the plates are delivered to the callback passed to init().
+   * The immediate results are checked and released right away. Convenience loop, one JNI call per frame.
+   * @param frames The frames to submit.
+   * @return The number of frames accepted by the engine.
+   */
+  public static int submitBatch(java.util.List<UltAlprSdkFrame> frames) {
+    int numAccepted = 0;
+    for (UltAlprSdkFrame frame : frames) {
+      try (UltAlprSdkResult result = frame.process()) {
+        if (result.isOK()) {
+          ++numAccepted;
+        }
+      }
+    }
+    return numAccepted;
+  }
+
   public static UltAlprSdkResult init(String jsonConfig, UltAlprSdkParallelDeliveryCallback parallelDeliveryCallback) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_0(jsonConfig, UltAlprSdkParallelDeliveryCallback.getCPtr(parallelDeliveryCallback), parallelDeliveryCallback), true);
+    return onInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_0(rememberConfig(jsonConfig), UltAlprSdkParallelDeliveryCallback.getCPtr(parallelDeliveryCallback), parallelDeliveryCallback), true));
   }
 
   public static UltAlprSdkResult init(String jsonConfig) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_1(jsonConfig), true);
+    return onInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_1(rememberConfig(jsonConfig)), true));
   }
 
   public static UltAlprSdkResult init() {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_2(), true);
+    return onInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_init__SWIG_2(), true));
   }
 
   public static UltAlprSdkResult deInit() {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_deInit(), true);
+    return onDeInit(new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_deInit(), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples, int imageExifOrientation) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_0(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, imageExifOrientation), true);
+    final long swigLatencyWidth = imageWidthInSamples;
+    final long swigLatencyHeight = imageHeightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_0(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, imageExifOrientation), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_1(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples), true);
+    final long swigLatencyWidth = imageWidthInSamples;
+    final long swigLatencyHeight = imageHeightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_1(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_2(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples), true);
+    final long swigLatencyWidth = imageWidthInSamples;
+    final long swigLatencyHeight = imageHeightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_2(imageType.swigValue(), imageData, imageWidthInSamples, imageHeightInSamples), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer yPtr, java.nio.ByteBuffer uPtr, java.nio.ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes, long uvPixelStrideInBytes, int exifOrientation) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_3(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes, exifOrientation), true);
+    final long swigLatencyWidth = widthInSamples;
+    final long swigLatencyHeight = heightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_3(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes, exifOrientation), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer yPtr, java.nio.ByteBuffer uPtr, java.nio.ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes, long uvPixelStrideInBytes) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_4(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes), true);
+    final long swigLatencyWidth = widthInSamples;
+    final long swigLatencyHeight = heightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_4(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes), true));
   }
 
   public static UltAlprSdkResult process(ULTALPR_SDK_IMAGE_TYPE imageType, java.nio.ByteBuffer yPtr, java.nio.ByteBuffer uPtr, java.nio.ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes) {
-    return new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_5(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes), true);
+    final long swigLatencyWidth = widthInSamples;
+    final long swigLatencyHeight = heightInSamples;
+    final UltAlprSdkLatencyMonitor monitor = latencyMonitor;
+    final long startNanos = (monitor == null) ? 0 : System.nanoTime();
+    return recordLatency(monitor, imageType, swigLatencyWidth, swigLatencyHeight, startNanos, new UltAlprSdkResult(ultimateAlprSdkJNI.UltAlprSdkEngine_process__SWIG_5(imageType.swigValue(), yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes), true));
   }
 
   public static int exifOrientation(java.nio.ByteBuffer jpegMetaDataPtr, long jpegMetaDataSize) {
@@ -0,0 +1,184 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Pure Java EXIF orientation reader, an alternative to {@link UltAlprSdkEngine#exifOrientation} that doesn't need the whole file.
+ * It walks the JPEG marker segments until the APP1 "Exif" segment (or the start of the compressed data) then reads the
+ * orientation tag (0x0112) of the first IFD: only the headers are touched, the compressed data is never read.
+ * <p>
+ * With a memory-mapped file only the pages holding the headers are loaded: map the whole file once (mapping is lazy) and
+ * the same buffer can then be used to decode the image, or use {@link #orientation(FileChannel)} which maps a small window.
+ * </p>
+ * The reader is stateless and thread-safe. Malformed or truncated metadata is ignored: the orientation is then 1 (no rotation).
+ */
+public final class UltAlprSdkExif {
+  public static final int ORIENTATION_NORMAL = 1;
+
+  /** Mapped by {@link #orientation(FileChannel)}: APP0 (JFIF) then APP1 (EXIF, at most 64KB) usually fit. */
+  static final int WINDOW_SIZE = 1 << 17;
+
+  private static final int TAG_ORIENTATION = 0x0112;
+  private static final int TYPE_SHORT = 3;
+
+  private UltAlprSdkExif() {
+  }
+
+  /**
+   * Gets the EXIF orientation of a JPEG image.
+   * @param data The file's content, from its position to its limit. Not modified.
+   * @return The orientation [1, 8], 1 if the data isn't a JPEG or has no valid orientation tag.
+   */
+  public static int orientation(ByteBuffer data) {
+    final int start = data.position(), end = data.limit();
+    if (end - start < 4 || u8(data, start) != 0xFF || u8(data, start + 1) != 0xD8) { // SOI
+      return ORIENTATION_NORMAL;
+    }
+    int p = start + 2;
+    while (p + 4 <= end) {
+      if (u8(data, p) != 0xFF) {
+        return ORIENTATION_NORMAL; // Not on a marker: corrupted
+      }
+      final int marker = u8(data, p + 1);
+      if (marker == 0xFF) {
+        ++p; // Fill byte
+        continue;
+      }
+      if (marker == 0xDA || marker == 0xD9) {
+        return ORIENTATION_NORMAL; // SOS or EOI: no EXIF before the compressed data
+      }
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+        p += 2; // TEM, RSTn: no length
+        continue;
+      }
+      final int length = u16(data, p + 2, ByteOrder.BIG_ENDIAN); // Including the length field
+      if (length < 2) {
+        return ORIENTATION_NORMAL;
+      }
+      final int segmentEnd = Math.min(end, p + 2 + length);
+      if (marker == 0xE1 && segmentEnd - (p + 4) >= 6 && isExifHeader(data, p + 4)) {
+        final int orientation = tiffOrientation(data, p + 10, segmentEnd);
+        if (orientation != 0) {
+          return orientation;
+        }
+        // Not found: maybe another APP1 (e.g. XMP) follows, keep walking
+      }
+      p += 2 + length;
+    }
+    return ORIENTATION_NORMAL;
+  }
+
+  /**
+   * Gets the EXIF orientation of a JPEG file, mapping the first {@link #WINDOW_SIZE} bytes only (or more if the EXIF segment ends after).
+   * The channel's position isn't changed.
+   */
+  public static int orientation(FileChannel channel) throws IOException {
+    final long size = channel.size();
+    long mapped = Math.min(size, WINDOW_SIZE);
+    while (true) {
+      final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, mapped);
+      final long required = segmentsEnd(window);
+      if (required <= mapped || mapped == size) {
+        return orientation(window);
+      }
+      mapped = Math.min(size, Math.max(required, mapped << 1)); // Segments before the EXIF are larger than the window
+    }
+  }
+
+  /**
+   * Number of bytes needed to walk the segments up to the end of the EXIF segment (or the start of the compressed data),
+   * possibly more than the buffer's limit.
+   */
+  private static long segmentsEnd(ByteBuffer data) {
+    final int end = data.limit();
+    if (end < 4 || u8(data, 0) != 0xFF || u8(data, 1) != 0xD8) {
+      return 0;
+    }
+    long p = 2;
+    while (p + 4 <= end) {
+      final int index = (int) p;
+      final int marker = u8(data, index + 1);
+      if (u8(data, index) != 0xFF || marker == 0xDA || marker == 0xD9) {
+        return p; // Corrupted, SOS or EOI
+      }
+      if (marker == 0xFF || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+        p += (marker == 0xFF) ? 1 : 2;
+        continue;
+      }
+      final long segmentEnd = p + 2 + u16(data, index + 2, ByteOrder.BIG_ENDIAN);
+      if (marker == 0xE1 && p + 10 <= end && isExifHeader(data, index + 4)) {
+        return segmentEnd;
+      }
+      p = segmentEnd;
+    }
+    return p + 4; // At least the next marker and its length
+  }
+
+  private static boolean isExifHeader(ByteBuffer data, int p) {
+    return u8(data, p) == 'E' && u8(data, p + 1) == 'x' && u8(data, p + 2) == 'i' && u8(data, p + 3) == 'f' && u8(data, p + 4) == 0 && u8(data, p + 5) == 0;
+  }
+
+  /**
+   * Reads the orientation tag from the first IFD of a TIFF structure starting at {@code tiff}.
+   * @return The orientation [1, 8], 0 if not found or invalid.
+   */
+  private static int tiffOrientation(ByteBuffer data, int tiff, int end) {
+    if (end - tiff < 8) {
+      return 0;
+    }
+    final ByteOrder order;
+    if (u8(data, tiff) == 'I' && u8(data, tiff + 1) == 'I') {
+      order = ByteOrder.LITTLE_ENDIAN;
+    }
+    else if (u8(data, tiff) == 'M' && u8(data, tiff + 1) == 'M') {
+      order = ByteOrder.BIG_ENDIAN;
+    }
+    else {
+      return 0;
+    }
+    if (u16(data, tiff + 2, order) != 42) {
+      return 0;
+    }
+    final long ifdOffset = u32(data, tiff + 4, order);
+    if (ifdOffset < 8 || ifdOffset > end - tiff - 2) {
+      return 0;
+    }
+    final int ifd = tiff + (int) ifdOffset;
+    final int count = u16(data, ifd, order);
+    for (int i = 0, entry = ifd + 2; i < count && entry + 12 <= end; ++i, entry += 12) {
+      if (u16(data, entry, order) == TAG_ORIENTATION) {
+        if (u16(data, entry + 2, order) != TYPE_SHORT) {
+          return 0;
+        }
+        final int orientation = u16(data, entry + 8, order); // Inline value: first 2 bytes of the value field
+        return (orientation >= 1 && orientation <= 8) ? orientation : 0;
+      }
+    }
+    return 0;
+  }
+
+  private static int u8(ByteBuffer data, int index) {
+    return data.get(index) & 0xFF;
+  }
+
+  private static int u16(ByteBuffer data, int index, ByteOrder order) {
+    return (order == ByteOrder.BIG_ENDIAN)
+      ? (u8(data, index) << 8) | u8(data, index + 1)
+      : u8(data, index) | (u8(data, index + 1) << 8);
+  }
+
+  private static long u32(ByteBuffer data, int index, ByteOrder order) {
+    return (order == ByteOrder.BIG_ENDIAN)
+      ? ((long) u16(data, index, order) << 16) | u16(data, index + 2, order)
+      : u16(data, index, order) | ((long) u16(data, index + 2, order) << 16);
+  }
+}
@@ -0,0 +1,92 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Describes an image to process: type, buffer(s), size, strides and EXIF orientation.
+ * Packed (RGB-family, Y) images use {@link #packed(ULTALPR_SDK_IMAGE_TYPE, ByteBuffer, long, long, long, int)} and
+ * YUV images use {@link #planar(ULTALPR_SDK_IMAGE_TYPE, ByteBuffer, ByteBuffer, ByteBuffer, long, long, long, long, long, long, int)},
+ * matching the two {@link UltAlprSdkEngine} process functions.
+ * The descriptor doesn't copy the pixels: the buffers must stay valid until the frame is processed.
+ */
+public final class UltAlprSdkFrame {
+  private final ULTALPR_SDK_IMAGE_TYPE imageType;
+  private final ByteBuffer yPtr;
+  private final ByteBuffer uPtr;
+  private final ByteBuffer vPtr;
+  private final long widthInSamples;
+  private final long heightInSamples;
+  private final long yStrideInBytes;
+  private final long uStrideInBytes;
+  private final long vStrideInBytes;
+  private final long uvPixelStrideInBytes;
+  private final int exifOrientation;
+
+  private UltAlprSdkFrame(ULTALPR_SDK_IMAGE_TYPE imageType, ByteBuffer yPtr, ByteBuffer uPtr, ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes, long uvPixelStrideInBytes, int exifOrientation) {
+    if (imageType == null || yPtr == null) {
+      throw new IllegalArgumentException("Image type and data are required");
+    }
+    this.imageType = imageType;
+    this.yPtr = yPtr;
+    this.uPtr = uPtr;
+    this.vPtr = vPtr;
+    this.widthInSamples = widthInSamples;
+    this.heightInSamples = heightInSamples;
+    this.yStrideInBytes = yStrideInBytes;
+    this.uStrideInBytes = uStrideInBytes;
+    this.vStrideInBytes = vStrideInBytes;
+    this.uvPixelStrideInBytes = uvPixelStrideInBytes;
+    this.exifOrientation = exifOrientation;
+  }
+
+  /**
+   * Packed image, e.g. BGR24, RGBA32 or Y.
+   * @param imageStrideInSamples The stride in samples (not bytes). Usually equal to the width.
+   */
+  public static UltAlprSdkFrame packed(ULTALPR_SDK_IMAGE_TYPE imageType, ByteBuffer imageData, long imageWidthInSamples, long imageHeightInSamples, long imageStrideInSamples, int imageExifOrientation) {
+    return new UltAlprSdkFrame(imageType, imageData, null, null, imageWidthInSamples, imageHeightInSamples, imageStrideInSamples, 0, 0, 0, imageExifOrientation);
+  }
+
+  /**
+   * Planar or semi-planar YUV image, e.g. YUV420P or NV12 (uPtr and vPtr sharing the same buffer with a pixel stride of 2).
+   */
+  public static UltAlprSdkFrame planar(ULTALPR_SDK_IMAGE_TYPE imageType, ByteBuffer yPtr, ByteBuffer uPtr, ByteBuffer vPtr, long widthInSamples, long heightInSamples, long yStrideInBytes, long uStrideInBytes, long vStrideInBytes, long uvPixelStrideInBytes, int exifOrientation) {
+    if (uPtr == null || vPtr == null) {
+      throw new IllegalArgumentException("U and V planes are required");
+    }
+    return new UltAlprSdkFrame(imageType, yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes, exifOrientation);
+  }
+
+  /**
+   * Sends the frame to the engine using the matching process function.
+   */
+  UltAlprSdkResult process() {
+    return isPlanar()
+      ? UltAlprSdkEngine.process(imageType, yPtr, uPtr, vPtr, widthInSamples, heightInSamples, yStrideInBytes, uStrideInBytes, vStrideInBytes, uvPixelStrideInBytes, exifOrientation)
+      : UltAlprSdkEngine.process(imageType, yPtr, widthInSamples, heightInSamples, yStrideInBytes, exifOrientation);
+  }
+
+  public boolean isPlanar() {
+    return uPtr != null;
+  }
+
+  public ULTALPR_SDK_IMAGE_TYPE getImageType() { return imageType; }
+  /** The packed data or the Y plane. */
+  public ByteBuffer getData() { return yPtr; }
+  public ByteBuffer getUPlane() { return uPtr; }
+  public ByteBuffer getVPlane() { return vPtr; }
+  public long getWidth() { return widthInSamples; }
+  public long getHeight() { return heightInSamples; }
+  /** The stride in samples for packed images or the Y stride in bytes for planar images. */
+  public long getStride() { return yStrideInBytes; }
+  public long getUStride() { return uStrideInBytes; }
+  public long getVStride() { return vStrideInBytes; }
+  public long getUVPixelStride() { return uvPixelStrideInBytes; }
+  public int getExifOrientation() { return exifOrientation; }
+}
@@ -0,0 +1,174 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the frames sent to the engine, with their capture timestamp and process() duration, to reproduce a production
+ * sequence offline using {@link UltAlprSdkFrameReplayer}.
+ * <p>
+ * The frames are appended to segment files ("frames-000000.seg", "frames-000001.seg"...) in a directory. A segment is
+ * memory-mapped at its maximum size and the planes are copied straight into the mapping, then the file is truncated to
+ * its content when full or closed.
+ * Segment layout: 64-byte header ("ALPRSEG1", version) then the records, each starting at a multiple of 64 bytes.
+ * Record: length (int32, written last: a crash leaves a readable segment up to the previous record), reserved (int32),
+ * capture timestamp (int64, nanoseconds, caller's clock), process() duration (int64, nanoseconds, -1 if unknown),
+ * reserved up to 64 bytes, then the frame in the {@link UltAlprSdkWorker} request layout (type, EXIF orientation, size, strides, planes).
+ * Records are multiples of 64 bytes.
+ * All values are little-endian.
+ * </p>
+ * The recorder is thread-safe. {@link #process(UltAlprSdkFrame, long)} serializes the calls: use it in sequential mode.
+ */
+public final class UltAlprSdkFrameRecorder implements AutoCloseable {
+  public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+  static final String SEGMENT_PREFIX = "frames-";
+  static final String SEGMENT_SUFFIX = ".seg";
+  static final byte[] MAGIC = "ALPRSEG1".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final int SEGMENT_HEADER_SIZE = 64;
+  static final int RECORD_HEADER_SIZE = 64;
+  static final int OFFSET_LENGTH = 0;
+  static final int OFFSET_CAPTURE_NANOS = 8;
+  static final int OFFSET_PROCESS_NANOS = 16;
+
+  private final Path directory;
+  private final long segmentSize;
+  private int segmentIndex;
+  private FileChannel channel;
+  private MappedByteBuffer mapping;
+  private int position;
+  private long recordedFrames;
+  private long recordedBytes;
+  private boolean closed;
+
+  /**
+   * @param directory Where to write the segments. Created if needed, the segments of a previous recording are deleted.
+   * @param segmentSize Maximum size of a segment, in bytes (at most 2GB). A larger frame gets a segment of its own.
+   */
+  public UltAlprSdkFrameRecorder(Path directory, long segmentSize) throws IOException {
+    if (segmentSize <= SEGMENT_HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    Files.createDirectories(directory);
+    for (Path segment : UltAlprSdkFrameReplayer.listSegments(directory)) {
+      Files.delete(segment);
+    }
+  }
+
+  public UltAlprSdkFrameRecorder(Path directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Records the frame then processes it, recording the process() duration.
+   * @param captureNanos The capture timestamp, in nanoseconds (e.g. System.nanoTime() when the frame was grabbed): used to replay at the original pace.
+   */
+  public synchronized UltAlprSdkResult process(UltAlprSdkFrame frame, long captureNanos) throws IOException {
+    final ByteBuffer record = append(frame, captureNanos, -1);
+    final long startNanos = System.nanoTime();
+    final UltAlprSdkResult result = frame.process();
+    record.putLong(OFFSET_PROCESS_NANOS, System.nanoTime() - startNanos);
+    return result;
+  }
+
+  /**
+   * Records a frame processed elsewhere (e.g. by {@link UltAlprSdkDispatcher}).
+   * @param processNanos The process() duration, in nanoseconds, -1 if unknown.
+   */
+  public synchronized void record(UltAlprSdkFrame frame, long captureNanos, long processNanos) throws IOException {
+    append(frame, captureNanos, processNanos);
+  }
+
+  public synchronized long getRecordedFrames() {
+    return recordedFrames;
+  }
+
+  /** Bytes written to the segments, headers included. */
+  public synchronized long getRecordedBytes() {
+    return recordedBytes;
+  }
+
+  /**
+   * @return The record, to set the process() duration once known.
+   */
+  private ByteBuffer append(UltAlprSdkFrame frame, long captureNanos, long processNanos) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Recorder closed");
+    }
+    final long length = RECORD_HEADER_SIZE + (long) UltAlprSdkWorker.requestSize(frame);
+    if (length > Integer.MAX_VALUE - SEGMENT_HEADER_SIZE) {
+      throw new IllegalArgumentException("Frame too large: " + length + " bytes");
+    }
+    if (mapping == null || position + length > mapping.capacity()) {
+      nextSegment((int) length);
+    }
+    final ByteBuffer record = slice(mapping, position, (int) length);
+    record.putLong(OFFSET_CAPTURE_NANOS, captureNanos);
+    record.putLong(OFFSET_PROCESS_NANOS, processNanos);
+    UltAlprSdkWorker.writeRequest(slice(record, RECORD_HEADER_SIZE, (int) length - RECORD_HEADER_SIZE), recordedFrames, frame);
+    record.putInt(OFFSET_LENGTH, (int) length); // Last: the record is complete
+    position += (int) length;
+    ++recordedFrames;
+    recordedBytes += length;
+    return record;
+  }
+
+  private void nextSegment(int recordLength) throws IOException {
+    finishSegment();
+    final Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentIndex++, SEGMENT_SUFFIX));
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, (long) SEGMENT_HEADER_SIZE + recordLength));
+    mapping.order(ByteOrder.LITTLE_ENDIAN);
+    mapping.put(MAGIC).putInt(VERSION);
+    position = SEGMENT_HEADER_SIZE;
+    recordedBytes += SEGMENT_HEADER_SIZE;
+  }
+
+  private void finishSegment() throws IOException {
+    if (channel != null) {
+      try {
+        mapping.force();
+        try {
+          channel.truncate(position); // Drop the unused end of the mapping
+        }
+        catch (IOException e) {
+          // Not allowed while mapped on some platforms (Windows): the end stays zeroed, read as the end of the records
+        }
+      }
+      finally {
+        channel.close();
+        channel = null;
+        mapping = null;
+      }
+    }
+  }
+
+  static ByteBuffer slice(ByteBuffer data, int offset, int size) {
+    final ByteBuffer duplicate = data.duplicate();
+    duplicate.limit(offset + size).position(offset);
+    return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      finishSegment();
+    }
+  }
+}
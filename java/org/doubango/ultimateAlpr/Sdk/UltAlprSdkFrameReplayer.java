@@ -0,0 +1,236 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Replays a recording of {@link UltAlprSdkFrameRecorder}: the frames are read in place from the memory-mapped segments and
+ * sent to the engine at the original pace, N times faster or as fast as possible, in the same order.
+ * The {@link Report} compares the throughput and the process() latency with the ones of the recording.
+ * <p>
+ * The pace follows the recorded capture timestamps: a frame is processed at (capture - first capture) / speed after the
+ * start of the replay, or as soon as possible when the engine is late (the lag is reported).
+ * </p>
+ * The engine must be initialized (sequential mode), with the same configuration as when recording to compare the latencies.
+ * With a {@link UltAlprSdkMotionGate}, the frames the gate rejects are skipped or, in evaluation mode, processed anyway to
+ * measure the frames with plates the gate would have missed.
+ */
+public final class UltAlprSdkFrameReplayer {
+  /** Speed to replay without waiting between the frames. */
+  public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+  private final List<Path> segments;
+  private UltAlprSdkMotionGate motionGate;
+  private boolean evaluateMotionGate;
+
+  private UltAlprSdkFrameReplayer(List<Path> segments) {
+    this.segments = segments;
+  }
+
+  /**
+   * Opens the recording in a directory.
+   */
+  public static UltAlprSdkFrameReplayer open(Path directory) throws IOException {
+    final List<Path> segments = listSegments(directory);
+    if (segments.isEmpty()) {
+      throw new IOException("No segment in " + directory);
+    }
+    return new UltAlprSdkFrameReplayer(segments);
+  }
+
+  /**
+   * The segments of a recording, in order.
+   */
+  static List<Path> listSegments(Path directory) throws IOException {
+    final List<Path> segments = new ArrayList<Path>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, UltAlprSdkFrameRecorder.SEGMENT_PREFIX + "*" + UltAlprSdkFrameRecorder.SEGMENT_SUFFIX)) {
+      for (Path path : stream) {
+        segments.add(path);
+      }
+    }
+    Collections.sort(segments); // Zero-padded indices
+    return segments;
+  }
+
+  /**
+   * Filters the frames using a motion gate. Only the YUV and Y frames are filtered, the RGB frames are always processed.
+   * @param evaluate false to skip the frames rejected by the gate, true to process all the frames and report the outcome to the gate.
+   */
+  public void setMotionGate(UltAlprSdkMotionGate motionGate, boolean evaluate) {
+    this.motionGate = motionGate;
+    this.evaluateMotionGate = evaluate;
+  }
+
+  /**
+   * Replays all the frames.
+   * @param speed 1.0 for the original pace, 2.0 twice faster... or {@link #AS_FAST_AS_POSSIBLE}.
+   * @param listener Called with each result (valid during the call only) and the frame index. Optional.
+   */
+  public Report replay(double speed, ObjLongConsumer<UltAlprSdkResult> listener) throws IOException {
+    if (!(speed > 0)) {
+      throw new IllegalArgumentException("Invalid speed: " + speed);
+    }
+    final UltAlprSdkLatencyHistogram recordedLatency = new UltAlprSdkLatencyHistogram();
+    final UltAlprSdkLatencyHistogram replayLatency = new UltAlprSdkLatencyHistogram();
+    final UltAlprSdkLatencyHistogram lag = new UltAlprSdkLatencyHistogram();
+    long frames = 0, failures = 0;
+    long firstCaptureNanos = 0, lastCaptureNanos = 0;
+    final long startNanos = System.nanoTime();
+    for (Path segment : segments) {
+      final ByteBuffer data = map(segment);
+      for (int position = UltAlprSdkFrameRecorder.SEGMENT_HEADER_SIZE; position + UltAlprSdkFrameRecorder.RECORD_HEADER_SIZE <= data.limit(); ) {
+        final int length = data.getInt(position + UltAlprSdkFrameRecorder.OFFSET_LENGTH);
+        if (length <= UltAlprSdkFrameRecorder.RECORD_HEADER_SIZE || length > data.limit() - position) {
+          break; // End of the records (zeroed or truncated by a crash)
+        }
+        final ByteBuffer record = UltAlprSdkFrameRecorder.slice(data, position, length);
+        position += length;
+        final long captureNanos = record.getLong(UltAlprSdkFrameRecorder.OFFSET_CAPTURE_NANOS);
+        final long recordedProcessNanos = record.getLong(UltAlprSdkFrameRecorder.OFFSET_PROCESS_NANOS);
+        final UltAlprSdkFrame frame = UltAlprSdkWorker.readRequest(UltAlprSdkFrameRecorder.slice(record, UltAlprSdkFrameRecorder.RECORD_HEADER_SIZE, length - UltAlprSdkFrameRecorder.RECORD_HEADER_SIZE));
+        if (frames == 0) {
+          firstCaptureNanos = captureNanos;
+        }
+        lastCaptureNanos = captureNanos;
+        // Wait until the frame's time
+        final long dueNanos = startNanos + ((speed == AS_FAST_AS_POSSIBLE) ? 0 : (long) ((captureNanos - firstCaptureNanos) / speed));
+        long waitNanos;
+        while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+          LockSupport.parkNanos(waitNanos);
+        }
+        final long processStartNanos = System.nanoTime();
+        if (speed != AS_FAST_AS_POSSIBLE) {
+          lag.record(processStartNanos - dueNanos);
+        }
+        final boolean accepted = accept(frame);
+        if (accepted || evaluateMotionGate) {
+          try (UltAlprSdkResult result = frame.process()) {
+            replayLatency.record(System.nanoTime() - processStartNanos);
+            if (!result.isOK()) {
+              ++failures;
+            }
+            if (evaluateMotionGate && motionGate != null) {
+              motionGate.recordOutcome(accepted, result.numPlates() > 0);
+            }
+            if (listener != null) {
+              listener.accept(result, frames);
+            }
+          }
+        }
+        if (recordedProcessNanos >= 0) {
+          recordedLatency.record(recordedProcessNanos);
+        }
+        ++frames;
+      }
+    }
+    return new Report(frames, failures, lastCaptureNanos - firstCaptureNanos, System.nanoTime() - startNanos, speed,
+      recordedLatency.snapshot(), replayLatency.snapshot(), lag.snapshot(), (motionGate != null) ? motionGate.getStats() : null);
+  }
+
+  private boolean accept(UltAlprSdkFrame frame) {
+    if (motionGate == null || (!frame.isPlanar() && frame.getImageType() != ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_Y)) {
+      return true;
+    }
+    return motionGate.shouldProcess(frame.getData(), (int) frame.getWidth(), (int) frame.getHeight(), (int) frame.getStride());
+  }
+
+  private static ByteBuffer map(Path segment) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      final ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      final byte[] magic = new byte[UltAlprSdkFrameRecorder.MAGIC.length];
+      if (data.limit() >= UltAlprSdkFrameRecorder.SEGMENT_HEADER_SIZE) {
+        data.duplicate().get(magic);
+      }
+      if (!Arrays.equals(magic, UltAlprSdkFrameRecorder.MAGIC) || data.getInt(magic.length) != UltAlprSdkFrameRecorder.VERSION) {
+        throw new IOException("Not a frame recording segment: " + segment);
+      }
+      return data;
+    }
+  }
+
+  /**
+   * Replay summary. The latencies are in nanoseconds.
+   */
+  public static final class Report {
+    private final long frames;
+    private final long failures;
+    private final long recordedDurationNanos;
+    private final long replayDurationNanos;
+    private final double speed;
+    private final UltAlprSdkLatencyHistogram.Snapshot recordedLatency;
+    private final UltAlprSdkLatencyHistogram.Snapshot replayLatency;
+    private final UltAlprSdkLatencyHistogram.Snapshot lag;
+    private final UltAlprSdkMotionGate.Stats motionGateStats;
+
+    Report(long frames, long failures, long recordedDurationNanos, long replayDurationNanos, double speed,
+        UltAlprSdkLatencyHistogram.Snapshot recordedLatency, UltAlprSdkLatencyHistogram.Snapshot replayLatency, UltAlprSdkLatencyHistogram.Snapshot lag,
+        UltAlprSdkMotionGate.Stats motionGateStats) {
+      this.frames = frames;
+      this.failures = failures;
+      this.recordedDurationNanos = recordedDurationNanos;
+      this.replayDurationNanos = replayDurationNanos;
+      this.speed = speed;
+      this.recordedLatency = recordedLatency;
+      this.replayLatency = replayLatency;
+      this.lag = lag;
+      this.motionGateStats = motionGateStats;
+    }
+
+    public long getFrames() { return frames; }
+    /** Frames for which process() failed during the replay. */
+    public long getFailures() { return failures; }
+    /** Time between the first and the last capture timestamps. */
+    public long getRecordedDurationNanos() { return recordedDurationNanos; }
+    public long getReplayDurationNanos() { return replayDurationNanos; }
+    /** process() duration when recording (frames recorded without a duration are excluded). */
+    public UltAlprSdkLatencyHistogram.Snapshot getRecordedLatency() { return recordedLatency; }
+    /** process() duration during the replay (processed frames only). */
+    public UltAlprSdkLatencyHistogram.Snapshot getReplayLatency() { return replayLatency; }
+    /** Delay between the time a frame was due and the time it was processed (empty when replaying as fast as possible). */
+    public UltAlprSdkLatencyHistogram.Snapshot getLag() { return lag; }
+    /** The motion gate's counters, null without a gate. */
+    public UltAlprSdkMotionGate.Stats getMotionGateStats() { return motionGateStats; }
+
+    /** Capture rate of the recording, in frames per second. */
+    public double getRecordedThroughput() {
+      return (frames > 1 && recordedDurationNanos > 0) ? (frames - 1) / (recordedDurationNanos / 1e9) : 0.0;
+    }
+
+    /** Frames per second during the replay. */
+    public double getReplayThroughput() {
+      return (replayDurationNanos > 0) ? frames / (replayDurationNanos / 1e9) : 0.0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("frames: %d (failed: %d), speed: %s%n"
+          + "throughput (fps): recorded %.2f, replayed %.2f%n"
+          + "latency (ms): recorded mean %.2f p50 %.2f p99 %.2f max %.2f | replayed mean %.2f p50 %.2f p99 %.2f max %.2f%n"
+          + "lag (ms): p50 %.2f p99 %.2f max %.2f%s",
+        frames, failures, (speed == AS_FAST_AS_POSSIBLE) ? "max" : (speed + "x"),
+        getRecordedThroughput(), getReplayThroughput(),
+        recordedLatency.getMean() / 1e6, recordedLatency.getP50() / 1e6, recordedLatency.getP99() / 1e6, recordedLatency.getMax() / 1e6,
+        replayLatency.getMean() / 1e6, replayLatency.getP50() / 1e6, replayLatency.getP99() / 1e6, replayLatency.getMax() / 1e6,
+        lag.getP50() / 1e6, lag.getP99() / 1e6, lag.getMax() / 1e6,
+        (motionGateStats != null) ? String.format("%nmotion gate: %s", motionGateStats) : "");
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parallel delivery callback correlating each delivered result with the frame it comes from.
+ * In parallel mode the only link between a frame sent to process() and the result delivered later is the "frame_id" in the JSON.
+ * The tracker keeps an opaque per-frame context (e.g. {@link UltAlprSdkFrameContext}: capture timestamp, camera id, image size, orientation)
+ * attached using {@link #track(UltAlprSdkResult, Object)} and gives it back with the result, instead of sharing mutable
+ * fields between the thread calling process() and the callback.
+ * <p>
+ * With the reorder buffer enabled, the results are emitted strictly in submission order: a result arriving before the
+ * results of older frames is held until they arrive. Without the reorder buffer, the results are emitted as soon as delivered.
+ * In both modes the window bounds the number of frames tracked since the oldest frame still waiting for its result:
+ * when it's exceeded, that frame is given up and reported using {@link Listener#onSkipped(Object)}.
+ * </p>
+ * The listener is called with the tracker's lock held, from the engine's thread or from the thread calling track(): it must return quickly.
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkFrameTracker&lt;UltAlprSdkFrameContext&gt; tracker = new UltAlprSdkFrameTracker&lt;UltAlprSdkFrameContext&gt;(listener, 16, true);
+ * UltAlprSdkEngine.init(jsonConfig, tracker);
+ * ...
+ * final UltAlprSdkResult result = UltAlprSdkEngine.process(...);
+ * tracker.track(result, new UltAlprSdkFrameContext(captureNanos, cameraId, width, height, orientation, null));
+ * result.close();
+ * </pre>
+ * @param <T> The type of the per-frame context.
+ */
+public class UltAlprSdkFrameTracker<T> extends UltAlprSdkParallelDeliveryCallback {
+
+  /**
+   * Receives the results with their frame's context.
+   */
+  public interface Listener<T> {
+    /**
+     * A result for a tracked frame. Also called with the immediate result when process() failed.
+     * @param context The frame's context, null if the result doesn't belong to a tracked frame.
+     */
+    void onResult(UltAlprSdkResultSnapshot result, T context);
+
+    /**
+     * A tracked frame whose result wasn't delivered within the window, or a frame recorded using {@link UltAlprSdkFrameTracker#skip(Object)}.
+     */
+    void onSkipped(T context);
+  }
+
+  private final Listener<T> listener;
+  private final int window;
+  private final boolean reorder;
+  private final Object lock = new Object();
+  /**
+   * Frames from the oldest one waiting for its result, in submission order. Without the reorder buffer, the frames
+   * already emitted stay in the queue (flagged) until they reach the head: no O(window) removal per result.
+   */
+  private final ArrayDeque<Entry<T>> pending = new ArrayDeque<Entry<T>>();
+  private int numPendingEmitted = 0;
+  private final HashMap<Long, Entry<T>> byFrameId = new HashMap<Long, Entry<T>>();
+  /** Results delivered before their frame is tracked (the callback could be faster than process() returning). */
+  private final LinkedHashMap<Long, UltAlprSdkResultSnapshot> earlyResults;
+  private long numTracked = 0;
+  private long numSkipped = 0;
+  private long numUnmatched = 0;
+
+  /**
+   * @param listener Receives the results.
+   * @param window Maximum number of frames tracked since the oldest frame waiting for its result.
+   * @param reorder Whether to emit the results in submission order.
+   */
+  public UltAlprSdkFrameTracker(Listener<T> listener, int window, boolean reorder) {
+    super();
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener is required");
+    }
+    if (window <= 0) {
+      throw new IllegalArgumentException("Invalid window: " + window);
+    }
+    this.listener = listener;
+    this.window = window;
+    this.reorder = reorder;
+    final int maxEarlyResults = window;
+    this.earlyResults = new LinkedHashMap<Long, UltAlprSdkResultSnapshot>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, UltAlprSdkResultSnapshot> eldest) {
+        if (size() > maxEarlyResults) {
+          emitUnmatched(eldest.getValue()); // Most likely not submitted through this tracker
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Attaches a context to the frame that produced the immediate result returned by process().
+   * Must be called for each frame, in submission order. The immediate result isn't closed.
+   * @param immediate The result returned by process().
+   * @param context The frame's context, given back with the delivered result.
+   * @return The frame identifier, -1 if the engine didn't return one (the frame is then matched in FIFO order).
+   */
+  public long track(UltAlprSdkResult immediate, T context) {
+    final UltAlprSdkResultSnapshot snapshot = immediate.snapshot();
+    final long frameId = snapshot.isOK() ? immediate.frameId() : -1;
+    synchronized (lock) {
+      ++numTracked;
+      final Entry<T> entry = new Entry<T>(frameId, context);
+      if (!snapshot.isOK()) {
+        entry.result = snapshot; // Nothing will be delivered
+      }
+      else if (frameId >= 0) {
+        entry.result = earlyResults.remove(frameId);
+        if (entry.result == null) {
+          byFrameId.put(frameId, entry);
+        }
+      }
+      if (entry.result != null && !reorder) {
+        emit(entry);
+      }
+      else {
+        pending.addLast(entry);
+        flush();
+      }
+    }
+    return frameId;
+  }
+
+  /**
+   * Records a frame that wasn't sent to process() (e.g. static frame dropped by {@link UltAlprSdkMotionGate}), in submission order.
+   * It's reported using {@link Listener#onSkipped(Object)}: with the reorder buffer once the results of the older frames are emitted,
+   * otherwise immediately.
+   * @param context The frame's context.
+   */
+  public void skip(T context) {
+    synchronized (lock) {
+      final Entry<T> entry = new Entry<T>(-1, context);
+      entry.skipped = true;
+      if (!reorder) {
+        ++numSkipped;
+        listener.onSkipped(context);
+      }
+      else {
+        pending.addLast(entry);
+        flush();
+      }
+    }
+  }
+
+  /** Number of frames tracked so far. */
+  public long getTrackedCount() {
+    synchronized (lock) {
+      return numTracked;
+    }
+  }
+
+  /** Number of frames reported using {@link Listener#onSkipped(Object)}: result not delivered within the window, or {@link #skip(Object)}. */
+  public long getSkippedCount() {
+    synchronized (lock) {
+      return numSkipped;
+    }
+  }
+
+  /** Number of results emitted without context. */
+  public long getUnmatchedCount() {
+    synchronized (lock) {
+      return numUnmatched;
+    }
+  }
+
+  /** Number of frames waiting for their result (or, with the reorder buffer, for the results of older frames). */
+  public int getPendingCount() {
+    synchronized (lock) {
+      return pending.size() - numPendingEmitted;
+    }
+  }
+
+  @Override
+  public void onNewResult(UltAlprSdkResult newResult) {
+    // The delivered result is owned by the engine and only valid during the callback
+    final UltAlprSdkResultSnapshot snapshot = newResult.snapshot();
+    final long frameId = newResult.frameId();
+    synchronized (lock) {
+      final Entry<T> entry;
+      if (frameId >= 0) {
+        entry = byFrameId.remove(frameId);
+        if (entry == null) {
+          earlyResults.put(frameId, snapshot); // Frame not tracked yet
+          return;
+        }
+      }
+      else {
+        // No identifier: FIFO matching with the frames tracked without one
+        entry = oldestWithoutFrameId();
+        if (entry == null) {
+          emitUnmatched(snapshot);
+          return;
+        }
+      }
+      entry.result = snapshot;
+      if (!reorder) {
+        emit(entry);
+        entry.emitted = true;
+        ++numPendingEmitted;
+      }
+      flush();
+    }
+  }
+
+  /**
+   * Gives up the frames still waiting for their result (reported using {@link Listener#onSkipped(Object)})
+   * and emits the held results, e.g. after deInit().
+   */
+  public void drain() {
+    synchronized (lock) {
+      while (!pending.isEmpty()) {
+        popHead();
+      }
+      byFrameId.clear();
+      final List<UltAlprSdkResultSnapshot> early = new ArrayList<UltAlprSdkResultSnapshot>(earlyResults.values());
+      earlyResults.clear();
+      for (UltAlprSdkResultSnapshot result : early) {
+        emitUnmatched(result);
+      }
+    }
+  }
+
+  /**
+   * Emits the completed frames at the head of the queue and enforces the window. Must be called with the lock held.
+   */
+  private void flush() {
+    while (!pending.isEmpty()) {
+      final Entry<T> head = pending.peekFirst();
+      if (head.emitted || head.skipped || head.result != null || pending.size() > window) {
+        popHead();
+      }
+      else {
+        break;
+      }
+    }
+  }
+
+  private void popHead() {
+    final Entry<T> head = pending.pollFirst();
+    if (head.emitted) {
+      --numPendingEmitted;
+    }
+    else if (head.result != null) {
+      emit(head);
+    }
+    else {
+      if (head.frameId >= 0) {
+        byFrameId.remove(head.frameId);
+      }
+      ++numSkipped;
+      listener.onSkipped(head.context);
+    }
+  }
+
+  private Entry<T> oldestWithoutFrameId() {
+    final Iterator<Entry<T>> it = pending.iterator();
+    while (it.hasNext()) {
+      final Entry<T> entry = it.next();
+      if (entry.frameId < 0 && entry.result == null && !entry.skipped) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private void emit(Entry<T> entry) {
+    listener.onResult(entry.result, entry.context);
+  }
+
+  private void emitUnmatched(UltAlprSdkResultSnapshot result) {
+    ++numUnmatched;
+    listener.onResult(result, null);
+  }
+
+  private static final class Entry<T> {
+    final long frameId;
+    final T context;
+    UltAlprSdkResultSnapshot result;
+    boolean emitted;
+    boolean skipped; // Not sent to process(): no result to wait for
+
+    Entry(long frameId, T context) {
+      this.frameId = frameId;
+      this.context = context;
+    }
+  }
+}
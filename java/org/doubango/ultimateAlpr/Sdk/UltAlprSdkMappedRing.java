@@ -0,0 +1,226 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer ring of fixed-size slots in a memory-mapped file, shared by two processes.
+ * Used by {@link UltAlprSdkWorkerPool} to send the frames to the workers and get the results back without serialization:
+ * the producer writes in place into the mapped slot and the consumer reads in place (e.g. passes a slice of the slot to process()).
+ * <p>
+ * File layout: header (magic, slot count, slot size), write sequence (offset 64, owned by the producer),
+ * read sequence (offset 128, owned by the consumer), consumer heartbeat (offset 192), then the slots from offset 256.
+ * Each slot starts with the record length (int32).
+ * The sequences are published with release/acquire semantics: a record is visible to the consumer once the write sequence moves past it.
+ * </p>
+ */
+final class UltAlprSdkMappedRing implements Closeable {
+  private static final int MAGIC = 0x554C5452; // "ULTR"
+  private static final int OFFSET_MAGIC = 0;
+  private static final int OFFSET_SLOT_COUNT = 4;
+  private static final int OFFSET_SLOT_SIZE = 8;
+  private static final int OFFSET_WRITE_SEQ = 64;
+  private static final int OFFSET_READ_SEQ = 128;
+  private static final int OFFSET_HEARTBEAT = 192;
+  private static final int OFFSET_SLOTS = 256;
+  private static final int RECORD_HEADER_SIZE = 4;
+  // idle(): spin, then yield, then short parks for about 1 second, then long parks until the traffic resumes
+  private static final int IDLE_SPINS = 100;
+  private static final int IDLE_YIELDS = 200;
+  private static final int IDLE_SHORT_PARKS = IDLE_YIELDS + 20000;
+  private static final long IDLE_SHORT_PARK_NANOS = 50000L;
+  private static final long IDLE_LONG_PARK_NANOS = 1000000L;
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  private final FileChannel channel;
+  private final MappedByteBuffer mapped;
+  private final int slotCount;
+  private final int slotSize;
+  // Local copies of the sequences owned by this side
+  private long writeSeq;
+  private long readSeq;
+  private long heartbeat;
+
+  private UltAlprSdkMappedRing(FileChannel channel, MappedByteBuffer mapped, int slotCount, int slotSize) {
+    this.channel = channel;
+    this.mapped = mapped;
+    this.slotCount = slotCount;
+    this.slotSize = slotSize;
+    this.writeSeq = (long) LONGS.getAcquire(mapped, OFFSET_WRITE_SEQ);
+    this.readSeq = (long) LONGS.getAcquire(mapped, OFFSET_READ_SEQ);
+    this.heartbeat = (long) LONGS.getAcquire(mapped, OFFSET_HEARTBEAT);
+  }
+
+  /**
+   * Creates (or truncates) the ring file.
+   * @param slotSize Maximum record size, in bytes. Rounded up to a multiple of 64.
+   */
+  static UltAlprSdkMappedRing create(Path path, int slotCount, int slotSize) throws IOException {
+    if (slotCount <= 0 || slotSize <= RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("Invalid ring geometry: " + slotCount + " x " + slotSize);
+    }
+    final int alignedSlotSize = (slotSize + RECORD_HEADER_SIZE + 63) & ~63;
+    final long fileSize = OFFSET_SLOTS + (long) slotCount * alignedSlotSize;
+    if (fileSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Ring too large: " + fileSize + " bytes");
+    }
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+      mapped.order(ByteOrder.nativeOrder());
+      mapped.putInt(OFFSET_SLOT_COUNT, slotCount);
+      mapped.putInt(OFFSET_SLOT_SIZE, alignedSlotSize);
+      LONGS.setRelease(mapped, OFFSET_WRITE_SEQ, 0L);
+      LONGS.setRelease(mapped, OFFSET_READ_SEQ, 0L);
+      LONGS.setRelease(mapped, OFFSET_HEARTBEAT, 0L);
+      mapped.putInt(OFFSET_MAGIC, MAGIC); // Last: the file is ready
+      return new UltAlprSdkMappedRing(channel, mapped, slotCount, alignedSlotSize);
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a ring file created by the other side.
+   */
+  static UltAlprSdkMappedRing open(Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+      mapped.order(ByteOrder.nativeOrder());
+      if (mapped.getInt(OFFSET_MAGIC) != MAGIC) {
+        throw new IOException("Not a ring file: " + path);
+      }
+      final int slotCount = mapped.getInt(OFFSET_SLOT_COUNT);
+      final int slotSize = mapped.getInt(OFFSET_SLOT_SIZE);
+      if (OFFSET_SLOTS + (long) slotCount * slotSize > mapped.capacity()) {
+        throw new IOException("Truncated ring file: " + path);
+      }
+      return new UltAlprSdkMappedRing(channel, mapped, slotCount, slotSize);
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Maximum record size, in bytes. */
+  int getMaxRecordSize() {
+    return slotSize - RECORD_HEADER_SIZE;
+  }
+
+  /** Number of records written and not read yet. */
+  int size() {
+    return (int) ((long) LONGS.getAcquire(mapped, OFFSET_WRITE_SEQ) - (long) LONGS.getAcquire(mapped, OFFSET_READ_SEQ));
+  }
+
+  /**
+   * Producer: gets the next free slot, without waiting.
+   * @return The slot's payload (position 0, limit = max record size, native byte order) or null if the ring is full.
+   */
+  ByteBuffer tryClaim() {
+    if (writeSeq - (long) LONGS.getAcquire(mapped, OFFSET_READ_SEQ) >= slotCount) {
+      return null;
+    }
+    return payload(writeSeq, getMaxRecordSize());
+  }
+
+  /**
+   * Producer: publishes the slot returned by the last {@link #tryClaim()}.
+   * @param length The record length, in bytes.
+   */
+  void commit(int length) {
+    if (length < 0 || length > getMaxRecordSize()) {
+      throw new IllegalArgumentException("Invalid record length: " + length);
+    }
+    mapped.putInt(slotOffset(writeSeq), length);
+    LONGS.setRelease(mapped, OFFSET_WRITE_SEQ, ++writeSeq);
+  }
+
+  /**
+   * Consumer: gets the oldest record, without waiting. The record must be released using {@link #release()} once consumed.
+   * @return The record (position 0, limit = length, native byte order) or null if the ring is empty.
+   */
+  ByteBuffer tryRead() {
+    if (readSeq >= (long) LONGS.getAcquire(mapped, OFFSET_WRITE_SEQ)) {
+      return null;
+    }
+    return payload(readSeq, mapped.getInt(slotOffset(readSeq)));
+  }
+
+  /**
+   * Consumer: gives the slot of the record returned by the last {@link #tryRead()} back to the producer.
+   */
+  void release() {
+    LONGS.setRelease(mapped, OFFSET_READ_SEQ, ++readSeq);
+  }
+
+  /**
+   * Consumer: tells the producer it's still alive, e.g. periodically while waiting for records.
+   */
+  void heartbeat() {
+    LONGS.setRelease(mapped, OFFSET_HEARTBEAT, ++heartbeat);
+  }
+
+  /**
+   * Producer: the consumer's heartbeat counter, 0 until its first {@link #heartbeat()}.
+   */
+  long getHeartbeat() {
+    return (long) LONGS.getAcquire(mapped, OFFSET_HEARTBEAT);
+  }
+
+  private int slotOffset(long seq) {
+    return OFFSET_SLOTS + (int) (seq % slotCount) * slotSize;
+  }
+
+  private ByteBuffer payload(long seq, int length) {
+    final int offset = slotOffset(seq) + RECORD_HEADER_SIZE;
+    final ByteBuffer duplicate = mapped.duplicate();
+    duplicate.limit(offset + length).position(offset);
+    return duplicate.slice().order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Waits a little, spinning first then parking: used by both sides when the ring is empty or full.
+   * After about a second without traffic the parks get longer (1ms): an idle pool doesn't keep a core busy waking up,
+   * at the cost of up to 1ms of latency on the first frame.
+   * @param iteration Number of consecutive idle iterations.
+   */
+  static void idle(int iteration) {
+    if (iteration < IDLE_SPINS) {
+      Thread.onSpinWait();
+    }
+    else if (iteration < IDLE_YIELDS) {
+      Thread.yield();
+    }
+    else if (iteration < IDLE_SHORT_PARKS) {
+      LockSupport.parkNanos(IDLE_SHORT_PARK_NANOS);
+    }
+    else {
+      LockSupport.parkNanos(IDLE_LONG_PARK_NANOS);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close(); // The mapping is released when the buffer is collected
+  }
+}
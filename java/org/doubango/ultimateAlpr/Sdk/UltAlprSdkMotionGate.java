@@ -0,0 +1,320 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap pre-filter deciding whether a camera frame is worth sending to {@link UltAlprSdkEngine#process}: most frames of a
+ * road camera are static, without any plate. The luma (Y plane) inside the detection region ("detect_roi") is compared,
+ * block by block, with a background updated at each frame (exponential decay): a frame is processed when enough blocks
+ * changed, for a few frames after that (a vehicle slowing down or stopping) and periodically (keyframes) to read the
+ * plates of vehicles standing still long enough to become the background.
+ * <p>
+ * Every other pixel of every other row is sampled: a 1280x720 region costs about 230K byte reads and a 16x16 block is
+ * 64 samples. The background is stored with 8 fractional bits, no allocation after the first frame (or a size change).
+ * </p>
+ * To measure what the gate costs in recall, process all the frames anyway and report whether each one had plates using
+ * {@link #recordOutcome(boolean, boolean)}: {@link Stats#getMissRate()} is the share of the frames with plates the gate would have skipped.
+ * Not thread-safe: use one gate per camera.
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkMotionGate gate = new UltAlprSdkMotionGate().setRegion(left, right, top, bottom);
+ * ...
+ * if (gate.shouldProcess(yPlane, width, height, yStride)) {
+ *   result = UltAlprSdkEngine.process(...);
+ * }
+ * </pre>
+ */
+public final class UltAlprSdkMotionGate {
+  public static final int DEFAULT_BLOCK_SIZE = 16;
+  public static final int DEFAULT_THRESHOLD = 10;
+  public static final int DEFAULT_MIN_CHANGED_BLOCKS = 2;
+  public static final int DEFAULT_HOLD_FRAMES = 5;
+  public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+  public static final int DEFAULT_DECAY_SHIFT = 3;
+
+  private static final int SAMPLING_SHIFT = 1; // One sample every 2 pixels, every 2 rows
+  private static final int FRACTION_BITS = 8;
+
+  private int blockSize = DEFAULT_BLOCK_SIZE;
+  private int threshold = DEFAULT_THRESHOLD;
+  private int minChangedBlocks = DEFAULT_MIN_CHANGED_BLOCKS;
+  private int holdFrames = DEFAULT_HOLD_FRAMES;
+  private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+  private int decayShift = DEFAULT_DECAY_SHIFT;
+  private float roiLeft, roiRight, roiTop, roiBottom;
+
+  // Background of the sampled pixels (fixed point), for the current frame size
+  private int[] background;
+  private int[] blockSums;
+  private int frameWidth = -1, frameHeight = -1;
+  private int left, top, sampledWidth, sampledHeight, blocksPerRow, blocksPerColumn;
+  private int framesSinceProcessed;
+  private int framesSinceMotion = Integer.MAX_VALUE;
+  private int lastChangedBlocks;
+  private boolean lastDecision;
+
+  private long frames;
+  private long processedFrames;
+  private long keyframes;
+  private long motionFrames;
+  private long positives;
+  private long missedPositives;
+
+  /**
+   * @param blockSize Side of the compared blocks, in pixels. Default: {@link #DEFAULT_BLOCK_SIZE}.
+   */
+  public UltAlprSdkMotionGate setBlockSize(int blockSize) {
+    if (blockSize < 2 || (blockSize & 1) != 0) {
+      throw new IllegalArgumentException("Block size must be even and >= 2: " + blockSize);
+    }
+    this.blockSize = blockSize;
+    reset();
+    return this;
+  }
+
+  /**
+   * @param threshold Mean absolute luma difference with the background above which a block changed, in [1, 255]. Default: {@link #DEFAULT_THRESHOLD}.
+   */
+  public UltAlprSdkMotionGate setThreshold(int threshold) {
+    this.threshold = Math.max(1, Math.min(threshold, 255));
+    return this;
+  }
+
+  /**
+   * @param minChangedBlocks Number of changed blocks for a frame to have motion. Default: {@link #DEFAULT_MIN_CHANGED_BLOCKS}.
+   */
+  public UltAlprSdkMotionGate setMinChangedBlocks(int minChangedBlocks) {
+    this.minChangedBlocks = Math.max(1, minChangedBlocks);
+    return this;
+  }
+
+  /**
+   * @param holdFrames Number of frames still processed after the last frame with motion. Default: {@link #DEFAULT_HOLD_FRAMES}.
+   */
+  public UltAlprSdkMotionGate setHoldFrames(int holdFrames) {
+    this.holdFrames = Math.max(0, holdFrames);
+    return this;
+  }
+
+  /**
+   * @param keyframeInterval Maximum number of frames between two processed frames, 0 to disable the keyframes. Default: {@link #DEFAULT_KEYFRAME_INTERVAL}.
+   */
+  public UltAlprSdkMotionGate setKeyframeInterval(int keyframeInterval) {
+    this.keyframeInterval = Math.max(0, keyframeInterval);
+    return this;
+  }
+
+  /**
+   * @param decayShift The background moves by 1/2^decayShift of the difference at each frame: larger values adapt slower
+   * (e.g. 3: 1/8, about 17 frames to absorb 90% of a change). Default: {@link #DEFAULT_DECAY_SHIFT}.
+   */
+  public UltAlprSdkMotionGate setDecayShift(int decayShift) {
+    this.decayShift = Math.max(0, Math.min(decayShift, FRACTION_BITS));
+    return this;
+  }
+
+  /**
+   * Region to watch, in pixels, like "detect_roi". All zeros for the whole frame.
+   */
+  public UltAlprSdkMotionGate setRegion(float left, float right, float top, float bottom) {
+    this.roiLeft = left;
+    this.roiRight = right;
+    this.roiTop = top;
+    this.roiBottom = bottom;
+    reset();
+    return this;
+  }
+
+  /**
+   * Forgets the background: the next frame is processed.
+   */
+  public void reset() {
+    background = null;
+    blockSums = null;
+    frameWidth = frameHeight = -1;
+  }
+
+  /**
+   * Compares the frame with the background, updates the background and decides whether the frame must be processed.
+   * @param yPlane The luma plane (pixel stride 1) or the Y image, from its position.
+   * @param yStride The luma stride, in bytes.
+   * @return true to process the frame, false to skip it.
+   */
+  public boolean shouldProcess(ByteBuffer yPlane, int width, int height, int yStride) {
+    ++frames;
+    if (width != frameWidth || height != frameHeight || background == null) {
+      init(width, height);
+      sample(yPlane, yStride, true);
+      return decide(true, false);
+    }
+    final int changedBlocks = sample(yPlane, yStride, false);
+    lastChangedBlocks = changedBlocks;
+    return decide(false, changedBlocks >= minChangedBlocks);
+  }
+
+  /**
+   * Reports whether the last frame given to {@link #shouldProcess(ByteBuffer, int, int, int)} had plates, once processed
+   * anyway, to measure the missed detections.
+   * @param processed The gate's decision for the frame.
+   * @param hasPlates Whether the engine found plates in the frame.
+   */
+  public void recordOutcome(boolean processed, boolean hasPlates) {
+    if (hasPlates) {
+      ++positives;
+      if (!processed) {
+        ++missedPositives;
+      }
+    }
+  }
+
+  /** The last decision. */
+  public boolean getLastDecision() {
+    return lastDecision;
+  }
+
+  /** Number of changed blocks in the last frame. */
+  public int getLastChangedBlocks() {
+    return lastChangedBlocks;
+  }
+
+  public Stats getStats() {
+    return new Stats(frames, processedFrames, keyframes, motionFrames, positives, missedPositives);
+  }
+
+  private boolean decide(boolean first, boolean motion) {
+    if (motion) {
+      ++motionFrames;
+      framesSinceMotion = 0;
+    }
+    else if (framesSinceMotion != Integer.MAX_VALUE) {
+      ++framesSinceMotion;
+    }
+    boolean process = first || motion || framesSinceMotion <= holdFrames;
+    if (!process && keyframeInterval > 0 && framesSinceProcessed + 1 >= keyframeInterval) {
+      process = true;
+      ++keyframes;
+    }
+    if (process) {
+      ++processedFrames;
+      framesSinceProcessed = 0;
+    }
+    else {
+      ++framesSinceProcessed;
+    }
+    lastDecision = process;
+    return process;
+  }
+
+  private void init(int width, int height) {
+    frameWidth = width;
+    frameHeight = height;
+    int l = 0, t = 0, r = width, b = height;
+    if (roiRight > roiLeft && roiBottom > roiTop) {
+      l = Math.max(0, Math.min(width, (int) roiLeft));
+      r = Math.max(l, Math.min(width, (int) Math.ceil(roiRight)));
+      t = Math.max(0, Math.min(height, (int) roiTop));
+      b = Math.max(t, Math.min(height, (int) Math.ceil(roiBottom)));
+    }
+    if (r - l < blockSize || b - t < blockSize) {
+      l = 0; t = 0; r = width; b = height; // Region too small or outside the frame: whole frame
+    }
+    left = l;
+    top = t;
+    // Whole blocks only: the partial blocks on the right and bottom edges are ignored
+    blocksPerRow = Math.max(1, (r - l) / blockSize);
+    blocksPerColumn = Math.max(1, (b - t) / blockSize);
+    sampledWidth = Math.min(r - l, blocksPerRow * blockSize) >> SAMPLING_SHIFT;
+    sampledHeight = Math.min(b - t, blocksPerColumn * blockSize) >> SAMPLING_SHIFT;
+    background = new int[sampledWidth * sampledHeight];
+    blockSums = new int[blocksPerRow];
+    framesSinceProcessed = 0;
+    framesSinceMotion = Integer.MAX_VALUE;
+    lastChangedBlocks = 0;
+  }
+
+  /**
+   * Updates the background with the frame.
+   * @return The number of blocks whose mean absolute difference with the background is above the threshold.
+   */
+  private int sample(ByteBuffer yPlane, int yStride, boolean first) {
+    final int base = yPlane.position();
+    final int samplesPerBlockSide = blockSize >> SAMPLING_SHIFT;
+    final int samplesPerBlock = samplesPerBlockSide * samplesPerBlockSide;
+    final int blockThreshold = threshold * samplesPerBlock;
+    int changedBlocks = 0;
+    for (int sy = 0, index = 0; sy < sampledHeight; ++sy) {
+      final int row = base + (top + (sy << SAMPLING_SHIFT)) * yStride + left;
+      for (int sx = 0; sx < sampledWidth; ++sx, ++index) {
+        final int luma = (yPlane.get(row + (sx << SAMPLING_SHIFT)) & 0xFF) << FRACTION_BITS;
+        if (first) {
+          background[index] = luma;
+          continue;
+        }
+        final int diff = luma - background[index];
+        background[index] += diff >> decayShift;
+        blockSums[sx / samplesPerBlockSide] += ((diff < 0) ? -diff : diff) >> FRACTION_BITS;
+      }
+      if (!first && (sy + 1) % samplesPerBlockSide == 0) { // Last row of a row of blocks
+        for (int bx = 0; bx < blocksPerRow; ++bx) {
+          if (blockSums[bx] > blockThreshold) {
+            ++changedBlocks;
+          }
+          blockSums[bx] = 0;
+        }
+      }
+    }
+    return changedBlocks;
+  }
+
+  /**
+   * Counters since the gate was created.
+   */
+  public static final class Stats {
+    private final long frames;
+    private final long processedFrames;
+    private final long keyframes;
+    private final long motionFrames;
+    private final long positives;
+    private final long missedPositives;
+
+    Stats(long frames, long processedFrames, long keyframes, long motionFrames, long positives, long missedPositives) {
+      this.frames = frames;
+      this.processedFrames = processedFrames;
+      this.keyframes = keyframes;
+      this.motionFrames = motionFrames;
+      this.positives = positives;
+      this.missedPositives = missedPositives;
+    }
+
+    public long getFrames() { return frames; }
+    public long getProcessedFrames() { return processedFrames; }
+    public long getSkippedFrames() { return frames - processedFrames; }
+    /** Frames processed only because of the keyframe interval. */
+    public long getKeyframes() { return keyframes; }
+    public long getMotionFrames() { return motionFrames; }
+    /** Frames with plates, as reported using {@link UltAlprSdkMotionGate#recordOutcome(boolean, boolean)}. */
+    public long getPositives() { return positives; }
+    /** Frames with plates the gate skipped. */
+    public long getMissedPositives() { return missedPositives; }
+
+    public double getSkipRatio() {
+      return (frames > 0) ? getSkippedFrames() / (double) frames : 0.0;
+    }
+
+    public double getMissRate() {
+      return (positives > 0) ? missedPositives / (double) positives : 0.0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("frames: %d, skipped: %d (%.1f%%), motion: %d, keyframes: %d, positives: %d, missed: %d (%.1f%%)",
+        frames, getSkippedFrames(), getSkipRatio() * 100.0, motionFrames, keyframes, positives, missedPositives, getMissRate() * 100.0);
+    }
+  }
+}
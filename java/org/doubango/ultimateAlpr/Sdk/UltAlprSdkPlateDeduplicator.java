@@ -0,0 +1,238 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+/**
+ * Suppresses the plates already reported by the same camera in the last N milliseconds ("same plate, same camera,
+ * within N seconds"), to forward each vehicle once instead of once per frame. Lighter than {@link UltAlprSdkPlateTracker}:
+ * no boxes, only the text, and shared by all the cameras.
+ * <p>
+ * The text is normalized (letters and digits only, upper case: "ab-123 cd" and "AB123CD" are the same plate) and hashed
+ * with the camera identifier into a 64-bit key. The keys and their last-seen timestamps are stored in primitive arrays
+ * (open addressing, linear probing): no object per entry. The table is split into segments locked independently, the
+ * segment being selected by the key's high bits, so that thousands of cameras feeding the cache from many threads
+ * rarely contend.
+ * </p>
+ * <p>
+ * There is no eviction thread nor per-entry timer: an entry older than the TTL is expired by reading its timestamp.
+ * Expired slots are reused by the insertions probing over them and dropped when their segment is rebuilt (grown or shrunk
+ * to a load factor of at most 1/2 of live entries), so a segment stays sized to its live entries.
+ * A plate seen again within the TTL refreshes its timestamp: a vehicle standing in front of the camera is reported once.
+ * </p>
+ * Two different plates could share a key (64-bit hash): the odds are negligible at the sizes of a TTL window.
+ * The cache is thread-safe.
+ */
+public final class UltAlprSdkPlateDeduplicator {
+  private static final int DEFAULT_CONCURRENCY = 64;
+  private static final int MIN_SEGMENT_CAPACITY = 16; // Power of two
+
+  private final long ttlMillis;
+  private final Segment[] segments;
+  private final int segmentShift;
+
+  /**
+   * @param ttlMillis Time to live of an entry: a plate seen again by the same camera within this delay is a duplicate.
+   */
+  public UltAlprSdkPlateDeduplicator(long ttlMillis) {
+    this(ttlMillis, DEFAULT_CONCURRENCY);
+  }
+
+  /**
+   * @param ttlMillis Time to live of an entry.
+   * @param concurrency Number of segments, rounded up to a power of two: about the number of threads feeding the cache.
+   */
+  public UltAlprSdkPlateDeduplicator(long ttlMillis, int concurrency) {
+    if (ttlMillis <= 0) {
+      throw new IllegalArgumentException("Invalid TTL: " + ttlMillis);
+    }
+    if (concurrency < 1 || concurrency > (1 << 16)) {
+      throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+    }
+    final int segmentBits = 32 - Integer.numberOfLeadingZeros(concurrency - 1);
+    this.ttlMillis = ttlMillis;
+    this.segments = new Segment[1 << segmentBits];
+    this.segmentShift = 64 - segmentBits;
+    for (int i = 0; i < segments.length; ++i) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * Checks whether a plate was already seen by a camera within the TTL and records it.
+   * @param cameraId Identifier of the camera (or any other scope).
+   * @param plateText The plate's text, e.g. {@link UltAlprSdkResultParser.Plate#getText()}. An empty text (only
+   *   spaces, dashes...) is never a duplicate and isn't recorded.
+   * @param timestampMillis Time the plate was seen, in milliseconds. Any clock, the same for all the calls.
+   * @return true if the plate is a duplicate (to suppress), false if it's new or its previous sighting expired (to forward).
+   */
+  public boolean isDuplicate(long cameraId, CharSequence plateText, long timestampMillis) {
+    final long key = key(cameraId, plateText);
+    if (key == 0) {
+      return false;
+    }
+    final Segment segment = segments[(segmentShift == 64) ? 0 : (int) (key >>> segmentShift)];
+    synchronized (segment) {
+      return segment.check(key, timestampMillis, ttlMillis);
+    }
+  }
+
+  /**
+   * Same as {@link #isDuplicate(long, CharSequence, long)} using a monotonic clock.
+   */
+  public boolean isDuplicate(long cameraId, CharSequence plateText) {
+    return isDuplicate(cameraId, plateText, System.nanoTime() / 1000000L);
+  }
+
+  /** Number of duplicates suppressed. */
+  public long getHits() {
+    long hits = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        hits += segment.hits;
+      }
+    }
+    return hits;
+  }
+
+  /** Number of plates forwarded (new, or previous sighting expired). */
+  public long getMisses() {
+    long misses = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        misses += segment.misses;
+      }
+    }
+    return misses;
+  }
+
+  /** Number of entries expired so far (reused, dropped or seen again after the TTL). */
+  public long getExpirations() {
+    long expirations = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        expirations += segment.expirations;
+      }
+    }
+    return expirations;
+  }
+
+  /** Number of entries stored, including the expired ones not reclaimed yet. */
+  public int getEntries() {
+    int entries = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        entries += segment.used;
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Hash of the camera identifier and the normalized text, never 0 unless the normalized text is empty.
+   */
+  static long key(long cameraId, CharSequence text) {
+    long hash = 0xcbf29ce484222325L ^ mix(cameraId); // FNV-1a
+    int length = 0;
+    for (int i = 0; i < text.length(); ++i) {
+      final char c = text.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        hash = (hash ^ Character.toUpperCase(c)) * 0x100000001b3L;
+        ++length;
+      }
+    }
+    if (length == 0) {
+      return 0;
+    }
+    hash = mix(hash ^ length);
+    return (hash == 0) ? 1 : hash;
+  }
+
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+
+  private static final class Segment {
+    long[] keys = new long[MIN_SEGMENT_CAPACITY]; // 0: empty slot
+    long[] timestamps = new long[MIN_SEGMENT_CAPACITY];
+    int used; // Non-empty slots, expired or not
+    long hits;
+    long misses;
+    long expirations;
+
+    boolean check(long key, long now, long ttl) {
+      final int mask = keys.length - 1;
+      int index = (int) key & mask;
+      int expiredIndex = -1;
+      long k;
+      while ((k = keys[index]) != 0) {
+        final boolean expired = (now - timestamps[index]) >= ttl;
+        if (k == key) {
+          timestamps[index] = now;
+          if (expired) {
+            ++expirations;
+            ++misses;
+            return false;
+          }
+          ++hits;
+          return true;
+        }
+        if (expired && expiredIndex < 0) {
+          expiredIndex = index;
+        }
+        index = (index + 1) & mask;
+      }
+      ++misses;
+      if (expiredIndex >= 0) {
+        // The key isn't further in the chain: take the first expired slot
+        keys[expiredIndex] = key;
+        timestamps[expiredIndex] = now;
+        ++expirations;
+        return false;
+      }
+      keys[index] = key;
+      timestamps[index] = now;
+      if (++used > (keys.length >> 1) + (keys.length >> 2)) {
+        rebuild(now, ttl);
+      }
+      return false;
+    }
+
+    /**
+     * Reinserts the live entries into a table sized for a load factor of at most 1/2, dropping the expired ones.
+     */
+    private void rebuild(long now, long ttl) {
+      int live = 0;
+      for (int i = 0; i < keys.length; ++i) {
+        if (keys[i] != 0 && (now - timestamps[i]) < ttl) {
+          ++live;
+        }
+      }
+      int capacity = MIN_SEGMENT_CAPACITY;
+      while (capacity < (live << 1)) {
+        capacity <<= 1;
+      }
+      final long[] oldKeys = keys, oldTimestamps = timestamps;
+      keys = new long[capacity];
+      timestamps = new long[capacity];
+      final int mask = capacity - 1;
+      for (int i = 0; i < oldKeys.length; ++i) {
+        if (oldKeys[i] != 0 && (now - oldTimestamps[i]) < ttl) {
+          int index = (int) oldKeys[i] & mask;
+          while (keys[index] != 0) {
+            index = (index + 1) & mask;
+          }
+          keys[index] = oldKeys[i];
+          timestamps[index] = oldTimestamps[i];
+        }
+      }
+      expirations += used - live;
+      used = live;
+    }
+  }
+}
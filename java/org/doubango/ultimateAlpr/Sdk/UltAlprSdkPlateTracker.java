@@ -0,0 +1,409 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.util.ArrayList;
+
+/**
+ * Follows the plates and cars across the frames of a camera and turns the per-frame results into one event stream:
+ * {@link #EVENT_ENTER} once per vehicle, {@link #EVENT_UPDATE} when its best text changes and {@link #EVENT_EXIT} when it's gone.
+ * A vehicle seen on 40 frames produces a handful of events instead of 40 results.
+ * <p>
+ * Each frame's plates are associated with the live tracks using the IoU (intersection over union) of the warped boxes
+ * (plate or car, the highest) and the similarity of the texts (1 - normalized edit distance to the track's best text).
+ * Pairs are matched greedily by decreasing score, a pair is a candidate when the IoU is at least {@link #setMinIou(float)} or
+ * the texts are similar enough ({@link #setMinTextSimilarity(float)}, e.g. a plate occluded then seen again elsewhere).
+ * A new track is confirmed (enter event) once seen on {@link #setMinHits(int)} frames, and dropped (exit event)
+ * after {@link #setMaxMisses(int)} frames without it. An unconfirmed track is dropped at its first miss, without event.
+ * Each track keeps the text with the highest recognition confidence.
+ * </p>
+ * <p>
+ * Ages are counted in updates, not in time: feed every processed result, including the empty ones.
+ * The tracker isn't thread-safe and is meant for one camera: use one instance per camera.
+ * Once warmed up, an update doesn't allocate.
+ * </p>
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkResultSnapshot snapshot = result.snapshot();
+ * if (snapshot.hasPlatesOrCars()) {
+ *   parser.reset(snapshot.json());
+ * }
+ * tracker.update(snapshot.hasPlatesOrCars() ? parser : null); // Listener called with the events
+ * </pre>
+ */
+public final class UltAlprSdkPlateTracker {
+  /** A new vehicle, seen on {@link #setMinHits(int)} frames. */
+  public static final int EVENT_ENTER = 0;
+  /** The best text of a vehicle changed (a reading with a higher confidence and a different text). */
+  public static final int EVENT_UPDATE = 1;
+  /** A vehicle not seen for more than {@link #setMaxMisses(int)} frames. The track is reused after the call. */
+  public static final int EVENT_EXIT = 2;
+
+  public interface Listener {
+    /**
+     * @param event EVENT_*
+     * @param track Owned by the tracker: valid during the call only.
+     */
+    void onTrackEvent(int event, Track track);
+  }
+
+  private final Listener listener;
+  private float minIou = 0.3f;
+  private float minTextSimilarity = 0.75f;
+  private float textWeight = 0.5f;
+  private int minHits = 2;
+  private int maxMisses = 10;
+
+  private final ArrayList<Track> tracks = new ArrayList<Track>();
+  private final ArrayList<Track> free = new ArrayList<Track>();
+  private long nextId = 1;
+  private long frame = 0;
+  private long observations = 0;
+  private long events = 0;
+
+  // Scratch, grown as needed
+  private float[] scores = new float[64];
+  private boolean[] trackMatched = new boolean[8];
+  private boolean[] plateMatched = new boolean[8];
+  private int[] distances = new int[32];
+  private int[] previousDistances = new int[32];
+
+  public UltAlprSdkPlateTracker(Listener listener) {
+    if (listener == null) {
+      throw new NullPointerException("listener");
+    }
+    this.listener = listener;
+  }
+
+  /** Minimum IoU to associate a plate with a track based on the boxes. Default: 0.3. */
+  public UltAlprSdkPlateTracker setMinIou(float minIou) {
+    this.minIou = minIou;
+    return this;
+  }
+
+  /** Minimum text similarity [0, 1] to associate a plate with a track whatever the boxes. Default: 0.75 (e.g. 2 errors on 8 chars). */
+  public UltAlprSdkPlateTracker setMinTextSimilarity(float minTextSimilarity) {
+    this.minTextSimilarity = minTextSimilarity;
+    return this;
+  }
+
+  /** Weight [0, 1] of the text similarity in the association score, the IoU has the remaining. Default: 0.5. */
+  public UltAlprSdkPlateTracker setTextWeight(float textWeight) {
+    if (textWeight < 0.f || textWeight > 1.f) {
+      throw new IllegalArgumentException("Invalid text weight: " + textWeight);
+    }
+    this.textWeight = textWeight;
+    return this;
+  }
+
+  /** Frames a track must be seen on before its enter event, to filter the spurious detections. Default: 2. */
+  public UltAlprSdkPlateTracker setMinHits(int minHits) {
+    if (minHits < 1) {
+      throw new IllegalArgumentException("Invalid min hits: " + minHits);
+    }
+    this.minHits = minHits;
+    return this;
+  }
+
+  /** Consecutive frames a confirmed track may be missing before its exit event. Default: 10. */
+  public UltAlprSdkPlateTracker setMaxMisses(int maxMisses) {
+    if (maxMisses < 0) {
+      throw new IllegalArgumentException("Invalid max misses: " + maxMisses);
+    }
+    this.maxMisses = maxMisses;
+    return this;
+  }
+
+  /**
+   * Associates the plates of a frame with the tracks and emits the events.
+   * @param parser The parser reset with the frame's result, null if the result has no JSON content (no plate). The remaining plates are parsed, the fields
+   *   {@link UltAlprSdkResultParser#FIELD_TEXT}, {@link UltAlprSdkResultParser#FIELD_CONFIDENCES} and
+   *   {@link UltAlprSdkResultParser#FIELD_WARPED_BOX} are required, {@link UltAlprSdkResultParser#FIELD_CAR} is used if present.
+   */
+  public void update(UltAlprSdkResultParser parser) {
+    ++frame;
+    final int numPlates = (parser != null) ? parser.parsePlates() : 0;
+    final int numTracks = tracks.size();
+    observations += numPlates;
+    ensureScratch(numTracks, numPlates);
+
+    // Scores, -1 for the pairs that can't be associated
+    for (int t = 0; t < numTracks; ++t) {
+      final Track track = tracks.get(t);
+      trackMatched[t] = false;
+      for (int p = 0; p < numPlates; ++p) {
+        scores[t * numPlates + p] = score(track, parser.getPlate(p));
+      }
+    }
+    for (int p = 0; p < numPlates; ++p) {
+      plateMatched[p] = false;
+    }
+
+    // Greedy association, best pair first (a few plates per frame: no need for the Hungarian algorithm)
+    for (;;) {
+      int bestTrack = -1, bestPlate = -1;
+      float bestScore = -1.f;
+      for (int t = 0; t < numTracks; ++t) {
+        if (trackMatched[t]) {
+          continue;
+        }
+        for (int p = 0; p < numPlates; ++p) {
+          final float score = scores[t * numPlates + p];
+          if (!plateMatched[p] && score > bestScore) {
+            bestScore = score;
+            bestTrack = t;
+            bestPlate = p;
+          }
+        }
+      }
+      if (bestTrack < 0) {
+        break;
+      }
+      trackMatched[bestTrack] = true;
+      plateMatched[bestPlate] = true;
+      observe(tracks.get(bestTrack), parser.getPlate(bestPlate));
+    }
+
+    // Missing tracks, in reverse order to remove in place
+    for (int t = numTracks - 1; t >= 0; --t) {
+      if (trackMatched[t]) {
+        continue;
+      }
+      final Track track = tracks.get(t);
+      ++track.misses;
+      if (!track.confirmed || track.misses > maxMisses) {
+        tracks.remove(t);
+        if (track.confirmed) {
+          emit(EVENT_EXIT, track);
+        }
+        free.add(track);
+      }
+    }
+
+    // New tracks
+    for (int p = 0; p < numPlates; ++p) {
+      final UltAlprSdkResultParser.Plate plate = parser.getPlate(p);
+      if (!plateMatched[p] && (plate.hasText() || plate.hasCar())) {
+        final Track track = free.isEmpty() ? new Track() : free.remove(free.size() - 1);
+        track.reset(nextId++, frame);
+        tracks.add(track);
+        observe(track, plate);
+      }
+    }
+  }
+
+  /**
+   * Ends all the tracks (exit events for the confirmed ones), e.g. when the camera stops.
+   */
+  public void flush() {
+    for (int t = 0; t < tracks.size(); ++t) {
+      final Track track = tracks.get(t);
+      if (track.confirmed) {
+        emit(EVENT_EXIT, track);
+      }
+      free.add(track);
+    }
+    tracks.clear();
+  }
+
+  /** Number of confirmed tracks currently followed. */
+  public int getActiveTracks() {
+    int count = 0;
+    for (int t = 0; t < tracks.size(); ++t) {
+      if (tracks.get(t).confirmed) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /** Number of plates fed to {@link #update(UltAlprSdkResultParser)}. */
+  public long getObservations() {
+    return observations;
+  }
+
+  /** Number of events emitted. */
+  public long getEvents() {
+    return events;
+  }
+
+  private void observe(Track track, UltAlprSdkResultParser.Plate plate) {
+    ++track.hits;
+    track.misses = 0;
+    track.lastFrame = frame;
+    boolean textChanged = false;
+    if (plate.hasText()) {
+      System.arraycopy(plate.getWarpedBox(), 0, track.warpedBox, 0, 8);
+      track.hasBox = true;
+      if (!track.hasText || plate.getRecognitionConfidence() > track.bestConfidence) {
+        textChanged = !track.text.contentEquals(plate.getText());
+        if (textChanged) {
+          copy(plate.getText(), track.text);
+        }
+        track.hasText = true;
+        track.bestConfidence = plate.getRecognitionConfidence();
+      }
+    }
+    if (plate.hasCar()) {
+      System.arraycopy(plate.getCar().getWarpedBox(), 0, track.carWarpedBox, 0, 8);
+      track.hasCar = true;
+    }
+    if (!track.confirmed) {
+      if (track.hits >= minHits) {
+        track.confirmed = true;
+        emit(EVENT_ENTER, track);
+      }
+    }
+    else if (textChanged) {
+      emit(EVENT_UPDATE, track);
+    }
+  }
+
+  private void emit(int event, Track track) {
+    ++events;
+    listener.onTrackEvent(event, track);
+  }
+
+  private float score(Track track, UltAlprSdkResultParser.Plate plate) {
+    float iou = 0.f;
+    if (track.hasBox && plate.hasText()) {
+      iou = iou(track.warpedBox, plate.getWarpedBox());
+    }
+    if (track.hasCar && plate.hasCar()) {
+      iou = Math.max(iou, iou(track.carWarpedBox, plate.getCar().getWarpedBox()));
+    }
+    final float similarity = (track.hasText && plate.hasText()) ? similarity(track.text, plate.getText()) : 0.f;
+    if (iou < minIou && !(track.hasText && plate.hasText() && similarity >= minTextSimilarity)) {
+      return -1.f;
+    }
+    return (1.f - textWeight) * iou + textWeight * similarity;
+  }
+
+  /**
+   * IoU of the axis-aligned boxes around the warped boxes (4 points: x0, y0 ... x3, y3).
+   */
+  static float iou(float[] a, float[] b) {
+    final float aLeft = Math.min(Math.min(a[0], a[2]), Math.min(a[4], a[6]));
+    final float aRight = Math.max(Math.max(a[0], a[2]), Math.max(a[4], a[6]));
+    final float aTop = Math.min(Math.min(a[1], a[3]), Math.min(a[5], a[7]));
+    final float aBottom = Math.max(Math.max(a[1], a[3]), Math.max(a[5], a[7]));
+    final float bLeft = Math.min(Math.min(b[0], b[2]), Math.min(b[4], b[6]));
+    final float bRight = Math.max(Math.max(b[0], b[2]), Math.max(b[4], b[6]));
+    final float bTop = Math.min(Math.min(b[1], b[3]), Math.min(b[5], b[7]));
+    final float bBottom = Math.max(Math.max(b[1], b[3]), Math.max(b[5], b[7]));
+    final float width = Math.min(aRight, bRight) - Math.max(aLeft, bLeft);
+    final float height = Math.min(aBottom, bBottom) - Math.max(aTop, bTop);
+    if (width <= 0.f || height <= 0.f) {
+      return 0.f;
+    }
+    final float intersection = width * height;
+    return intersection / ((aRight - aLeft) * (aBottom - aTop) + (bRight - bLeft) * (bBottom - bTop) - intersection);
+  }
+
+  /**
+   * 1 - Levenshtein distance / longest length, in [0, 1].
+   */
+  private float similarity(CharSequence a, CharSequence b) {
+    final int aLength = a.length(), bLength = b.length();
+    if (aLength == 0 || bLength == 0) {
+      return (aLength == bLength) ? 1.f : 0.f;
+    }
+    if (distances.length <= bLength) {
+      distances = new int[bLength + 1];
+      previousDistances = new int[bLength + 1];
+    }
+    int[] previous = previousDistances, current = distances;
+    for (int j = 0; j <= bLength; ++j) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= aLength; ++i) {
+      current[0] = i;
+      final char c = a.charAt(i - 1);
+      for (int j = 1; j <= bLength; ++j) {
+        final int substitution = previous[j - 1] + ((c == b.charAt(j - 1)) ? 0 : 1);
+        current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+      }
+      final int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return 1.f - (float) previous[bLength] / Math.max(aLength, bLength);
+  }
+
+  private static void copy(UltAlprSdkResultParser.Text src, UltAlprSdkResultParser.Text dst) {
+    dst.clear();
+    dst.ensureCapacity(src.length());
+    for (int i = 0; i < src.length(); ++i) {
+      dst.append(src.charAt(i));
+    }
+  }
+
+  private void ensureScratch(int numTracks, int numPlates) {
+    if (scores.length < numTracks * numPlates) {
+      scores = new float[Math.max(numTracks * numPlates, scores.length << 1)];
+    }
+    if (trackMatched.length < numTracks) {
+      trackMatched = new boolean[Math.max(numTracks, trackMatched.length << 1)];
+    }
+    if (plateMatched.length < numPlates) {
+      plateMatched = new boolean[Math.max(numPlates, plateMatched.length << 1)];
+    }
+  }
+
+  /**
+   * A vehicle followed across the frames.
+   */
+  public static final class Track {
+    long id;
+    long firstFrame;
+    long lastFrame;
+    int hits;
+    int misses;
+    boolean confirmed;
+    boolean hasBox;
+    final float[] warpedBox = new float[8];
+    boolean hasText;
+    final UltAlprSdkResultParser.Text text = new UltAlprSdkResultParser.Text();
+    float bestConfidence;
+    boolean hasCar;
+    final float[] carWarpedBox = new float[8];
+
+    /** Unique identifier, increasing. */
+    public long getId() { return id; }
+    /** Update count (see {@link UltAlprSdkPlateTracker#update(UltAlprSdkResultParser)}) when the track was created. */
+    public long getFirstFrame() { return firstFrame; }
+    /** Update count when the vehicle was last seen. */
+    public long getLastFrame() { return lastFrame; }
+    /** Number of frames the vehicle was seen on. */
+    public int getHits() { return hits; }
+    /** The text with the highest recognition confidence. Empty if only the car was seen. */
+    public boolean hasText() { return hasText; }
+    public UltAlprSdkResultParser.Text getText() { return text; }
+    public float getRecognitionConfidence() { return bestConfidence; }
+    /** The plate's last warped box. */
+    public float[] getWarpedBox() { return warpedBox; }
+    public boolean hasCar() { return hasCar; }
+    /** The car's last warped box. */
+    public float[] getCarWarpedBox() { return carWarpedBox; }
+
+    void reset(long id, long frame) {
+      this.id = id;
+      firstFrame = frame;
+      lastFrame = frame;
+      hits = 0;
+      misses = 0;
+      confirmed = false;
+      hasBox = false;
+      java.util.Arrays.fill(warpedBox, 0.f);
+      hasText = false;
+      text.clear();
+      bestConfidence = 0.f;
+      hasCar = false;
+      java.util.Arrays.fill(carWarpedBox, 0.f);
+    }
+  }
+}
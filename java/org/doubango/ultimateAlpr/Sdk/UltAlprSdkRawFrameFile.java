@@ -0,0 +1,305 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Capture file of fixed-size raw frames (e.g. NV12 or YUV420P dumps from a recorder), memory-mapped and handed to the engine
+ * without any copy: the planes of each frame are slices of the mapping, passed as is to the multi-plane
+ * {@link UltAlprSdkEngine#process} function. The pages are read by the kernel (read-ahead) when the engine touches them.
+ * <p>
+ * File layout: an optional 64-byte header then the frames, back to back, each {@link Format#getFrameSize()} bytes.
+ * Header (little-endian int32 fields after the magic): "ALPRRAW1", header size, image type ({@link ULTALPR_SDK_IMAGE_TYPE#swigValue()}),
+ * width, height, Y stride, U stride, V stride, UV pixel stride, U offset, V offset (from the frame start), frame size, EXIF orientation.
+ * Header-less dumps are opened with an explicit {@link Format}. A partially written last frame is ignored.
+ * </p>
+ * The file is mapped in chunks of whole frames (at most {@link #MAX_MAPPING_SIZE} bytes): the frame descriptors of a chunk
+ * are built when it's first accessed, reading the frames in order allocates nothing per frame.
+ * Not thread-safe: use one instance per thread.
+ */
+public final class UltAlprSdkRawFrameFile implements AutoCloseable {
+  public static final int HEADER_SIZE = 64;
+  static final long MAX_MAPPING_SIZE = 1L << 30;
+  private static final byte[] MAGIC = "ALPRRAW1".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * Layout of the frames in the file. The strides and offsets are in bytes.
+   */
+  public static final class Format {
+    private final ULTALPR_SDK_IMAGE_TYPE imageType;
+    private final int width;
+    private final int height;
+    private final int yStride;
+    private final int uStride;
+    private final int vStride;
+    private final int uvPixelStride;
+    private final int uOffset;
+    private final int vOffset;
+    private final int frameSize;
+    private final int exifOrientation;
+
+    /**
+     * @param frameSize Size of a frame including its padding, if any.
+     */
+    public Format(ULTALPR_SDK_IMAGE_TYPE imageType, int width, int height, int yStride, int uStride, int vStride, int uvPixelStride, int uOffset, int vOffset, int frameSize, int exifOrientation) {
+      this.imageType = imageType;
+      this.width = width;
+      this.height = height;
+      this.yStride = yStride;
+      this.uStride = uStride;
+      this.vStride = vStride;
+      this.uvPixelStride = uvPixelStride;
+      this.uOffset = uOffset;
+      this.vOffset = vOffset;
+      this.frameSize = frameSize;
+      this.exifOrientation = exifOrientation;
+      validate();
+    }
+
+    /** Tightly packed NV12: Y plane then interleaved UV. */
+    public static Format nv12(int width, int height) {
+      return semiPlanar(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_NV12, width, height, 0);
+    }
+
+    /** Tightly packed NV21: Y plane then interleaved VU. */
+    public static Format nv21(int width, int height) {
+      return semiPlanar(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_NV21, width, height, 1);
+    }
+
+    /** Tightly packed YUV420P (I420): Y, U then V planes. */
+    public static Format yuv420p(int width, int height) {
+      final int chromaWidth = (width + 1) >> 1, chromaSize = chromaWidth * ((height + 1) >> 1);
+      final int ySize = width * height;
+      return new Format(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV420P, width, height, width, chromaWidth, chromaWidth, 1, ySize, ySize + chromaSize, ySize + (chromaSize << 1), 1);
+    }
+
+    /** Grayscale (luma only). */
+    public static Format y(int width, int height) {
+      return new Format(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_Y, width, height, width, 0, 0, 0, 0, 0, width * height, 1);
+    }
+
+    private static Format semiPlanar(ULTALPR_SDK_IMAGE_TYPE imageType, int width, int height, int vFirst) {
+      final int uvStride = ((width + 1) >> 1) << 1;
+      final int ySize = width * height;
+      return new Format(imageType, width, height, width, uvStride, uvStride, 2, ySize + vFirst, ySize + 1 - vFirst, ySize + uvStride * ((height + 1) >> 1), 1);
+    }
+
+    /** Same layout with another EXIF orientation. */
+    public Format withExifOrientation(int exifOrientation) {
+      return new Format(imageType, width, height, yStride, uStride, vStride, uvPixelStride, uOffset, vOffset, frameSize, exifOrientation);
+    }
+
+    public ULTALPR_SDK_IMAGE_TYPE getImageType() { return imageType; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getFrameSize() { return frameSize; }
+    public int getExifOrientation() { return exifOrientation; }
+
+    public boolean isPlanar() {
+      return imageType != ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_Y;
+    }
+
+    /**
+     * The header to write at the start of a capture file.
+     */
+    public ByteBuffer header() {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.put(MAGIC).putInt(HEADER_SIZE).putInt(imageType.swigValue()).putInt(width).putInt(height)
+        .putInt(yStride).putInt(uStride).putInt(vStride).putInt(uvPixelStride).putInt(uOffset).putInt(vOffset)
+        .putInt(frameSize).putInt(exifOrientation);
+      header.clear();
+      return header;
+    }
+
+    static Format readHeader(ByteBuffer data) throws IOException {
+      final ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      if (header.remaining() < HEADER_SIZE) {
+        throw new IOException("Truncated header");
+      }
+      final byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a raw frame file (bad magic)");
+      }
+      if (header.getInt() != HEADER_SIZE) {
+        throw new IOException("Unsupported header size");
+      }
+      try {
+        return new Format(ULTALPR_SDK_IMAGE_TYPE.swigToEnum(header.getInt()), header.getInt(), header.getInt(), header.getInt(), header.getInt(),
+          header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getInt());
+      }
+      catch (IllegalArgumentException e) {
+        throw new IOException("Invalid header: " + e.getMessage(), e);
+      }
+    }
+
+    private int chromaWidth() {
+      return (imageType == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV444P) ? width : ((width + 1) >> 1);
+    }
+
+    private int chromaHeight() {
+      return (imageType == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV422P || imageType == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV444P) ? height : ((height + 1) >> 1);
+    }
+
+    /** Bytes from the first sample of a plane to the end of its last one. */
+    int ySpan() {
+      return yStride * (height - 1) + width;
+    }
+
+    int uSpan() {
+      return uStride * (chromaHeight() - 1) + (chromaWidth() - 1) * uvPixelStride + 1;
+    }
+
+    int vSpan() {
+      return vStride * (chromaHeight() - 1) + (chromaWidth() - 1) * uvPixelStride + 1;
+    }
+
+    private void validate() {
+      if (imageType == null || width <= 0 || height <= 0 || yStride < width || frameSize <= 0) {
+        throw new IllegalArgumentException("Invalid frame format: " + this);
+      }
+      switch (imageType) {
+        case ULTALPR_SDK_IMAGE_TYPE_Y:
+          break;
+        case ULTALPR_SDK_IMAGE_TYPE_NV12:
+        case ULTALPR_SDK_IMAGE_TYPE_NV21:
+        case ULTALPR_SDK_IMAGE_TYPE_YUV420P:
+        case ULTALPR_SDK_IMAGE_TYPE_YVU420P:
+        case ULTALPR_SDK_IMAGE_TYPE_YUV422P:
+        case ULTALPR_SDK_IMAGE_TYPE_YUV444P:
+          if (uvPixelStride <= 0 || uOffset < 0 || vOffset < 0 || (long) uOffset + uSpan() > frameSize || (long) vOffset + vSpan() > frameSize) {
+            throw new IllegalArgumentException("Invalid chroma layout: " + this);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported image type (packed RGB): " + imageType);
+      }
+      if (ySpan() > frameSize) {
+        throw new IllegalArgumentException("Frame size too small: " + this);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %dx%d, strides: %d/%d/%d, uv pixel stride: %d, offsets: %d/%d, frame size: %d, exif: %d",
+        imageType, width, height, yStride, uStride, vStride, uvPixelStride, uOffset, vOffset, frameSize, exifOrientation);
+    }
+  }
+
+  private final FileChannel channel;
+  private final Format format;
+  private final long dataOffset;
+  private final int frameCount;
+  private final int framesPerChunk;
+  private int chunkIndex = -1;
+  private UltAlprSdkFrame[] chunkFrames;
+
+  private UltAlprSdkRawFrameFile(FileChannel channel, Format format, long dataOffset) throws IOException {
+    this.channel = channel;
+    this.format = format;
+    this.dataOffset = dataOffset;
+    final long count = Math.max(0, channel.size() - dataOffset) / format.frameSize;
+    if (count > Integer.MAX_VALUE) {
+      throw new IOException("Too many frames: " + count);
+    }
+    this.frameCount = (int) count;
+    this.framesPerChunk = (int) Math.max(1, MAX_MAPPING_SIZE / format.frameSize);
+  }
+
+  /**
+   * Opens a capture file starting with a header.
+   */
+  public static UltAlprSdkRawFrameFile open(Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Truncated header: " + path);
+      }
+      final Format format = Format.readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE));
+      return new UltAlprSdkRawFrameFile(channel, format, HEADER_SIZE);
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a header-less dump of raw frames.
+   */
+  public static UltAlprSdkRawFrameFile open(Path path, Format format) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new UltAlprSdkRawFrameFile(channel, format, 0);
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Gets a frame, ready for {@link UltAlprSdkEngine#process(UltAlprSdkFrame)}. The planes are views of the mapped file:
+   * the frame stays valid after this object is closed (until garbage collected), it's the same instance for each call.
+   */
+  public UltAlprSdkFrame frame(int index) throws IOException {
+    if (index < 0 || index >= frameCount) {
+      throw new IndexOutOfBoundsException("Frame " + index + " out of [0, " + frameCount + ")");
+    }
+    final int chunk = index / framesPerChunk;
+    if (chunk != chunkIndex) {
+      mapChunk(chunk);
+    }
+    return chunkFrames[index - chunk * framesPerChunk];
+  }
+
+  private void mapChunk(int chunk) throws IOException {
+    final int first = chunk * framesPerChunk;
+    final int count = Math.min(framesPerChunk, frameCount - first);
+    final ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + (long) first * format.frameSize, (long) count * format.frameSize);
+    final UltAlprSdkFrame[] frames = new UltAlprSdkFrame[count];
+    for (int i = 0; i < count; ++i) {
+      final int frameOffset = i * format.frameSize;
+      final ByteBuffer y = slice(mapping, frameOffset, format.ySpan());
+      frames[i] = !format.isPlanar()
+        ? UltAlprSdkFrame.packed(format.imageType, y, format.width, format.height, format.yStride, format.exifOrientation)
+        : UltAlprSdkFrame.planar(format.imageType, y, slice(mapping, frameOffset + format.uOffset, format.uSpan()), slice(mapping, frameOffset + format.vOffset, format.vSpan()),
+            format.width, format.height, format.yStride, format.uStride, format.vStride, format.uvPixelStride, format.exifOrientation);
+    }
+    chunkFrames = frames; // The previous chunk is unmapped once its frames are no longer referenced
+    chunkIndex = chunk;
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int offset, int size) {
+    final ByteBuffer duplicate = data.duplicate();
+    duplicate.limit(offset + size).position(offset);
+    return duplicate.slice(); // The engine uses the buffer's address, not its position
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunkFrames = null;
+    chunkIndex = -1;
+    channel.close();
+  }
+}
@@ -8,33 +8,88 @@
 
 package org.doubango.ultimateAlpr.Sdk;
 
-public class UltAlprSdkResult {
+public class UltAlprSdkResult implements AutoCloseable {
   private long swigCPtr;
   protected boolean swigCMemOwn;
+  private UltAlprSdkCleaner.State swigCleanerState;
+
+  private static final UltAlprSdkCleaner.Deleter swigDeleter = new UltAlprSdkCleaner.Deleter() {
+    @Override
+    public void delete(long cPtr) {
+      ultimateAlprSdkJNI.delete_UltAlprSdkResult(cPtr);
+    }
+  };
 
   protected UltAlprSdkResult(long cPtr, boolean cMemoryOwn) {
     swigCMemOwn = cMemoryOwn;
     swigCPtr = cPtr;
+    if (cMemoryOwn && cPtr != 0) {
+      swigCleanerState = UltAlprSdkCleaner.register(this, cPtr, swigDeleter, true);
+    }
   }
 
   protected static long getCPtr(UltAlprSdkResult obj) {
     return (obj == null) ? 0 : obj.swigCPtr;
   }
 
-  protected void finalize() {
-    delete();
-  }
-
   public synchronized void delete() {
     if (swigCPtr != 0) {
       if (swigCMemOwn) {
         swigCMemOwn = false;
-        ultimateAlprSdkJNI.delete_UltAlprSdkResult(swigCPtr);
+        swigCleanerState.clean();
       }
       swigCPtr = 0;
     }
   }
 
+  @Override
+  public void close() {
+    delete();
+  }
+
+  private volatile UltAlprSdkResultSnapshot snapshot;
+
+  private static final ThreadLocal<UltAlprSdkResultParser> frameIdParsers = new ThreadLocal<UltAlprSdkResultParser>() {
+    @Override
+    protected UltAlprSdkResultParser initialValue() {
+      return new UltAlprSdkResultParser();
+    }
+  };
+
+  /**
+   * Fetches the fields into an immutable snapshot: code, numPlates and numCars, plus the JSON content when
+   * there are plates or cars (or on failure). See {@link UltAlprSdkResultSnapshot} for the details.
+   * The snapshot is cached: calling this function again doesn't cross JNI.
+   */
+  public UltAlprSdkResultSnapshot snapshot() {
+    UltAlprSdkResultSnapshot s = snapshot;
+    if (s == null) {
+      snapshot = s = UltAlprSdkResultSnapshot.of(this);
+    }
+    return s;
+  }
+
+  /**
+   * Gets the "frame_id" from the JSON content without parsing the plates.
+   * In parallel mode, this is the link between the frame sent to process() and the result delivered to the callback.
+   * @return The frame identifier or -1 if not present.
+   */
+  public long frameId() {
+    final UltAlprSdkResultSnapshot s = snapshot;
+    final String json = (s != null && s.json() != null) ? s.json() : json();
+    if (json == null) {
+      return -1;
+    }
+    try {
+      final UltAlprSdkResultParser parser = frameIdParsers.get();
+      parser.reset(json);
+      return parser.frameId();
+    }
+    catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
   public UltAlprSdkResult() {
     this(ultimateAlprSdkJNI.new_UltAlprSdkResult__SWIG_0(), true);
   }
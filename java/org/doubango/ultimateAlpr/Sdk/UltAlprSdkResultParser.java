@@ -0,0 +1,1065 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Pull parser for the JSON content returned by the engine (see {@link UltAlprSdkResult#json()}).
+ * The parser works directly on the UTF-8 bytes and fills pooled {@link Plate} records with primitive fields:
+ * once warmed up, parsing a result doesn't allocate.
+ * <p>
+ * Only what's requested is parsed: {@link #frameId()} stops as soon as "frame_id" is found and
+ * {@link #nextPlate()} only decodes the fields selected using {@link #setFields(int)}, the others are skipped without decoding.
+ * For the attributes returned as lists sorted by confidence only the first country is kept, and the first
+ * {@link #setMaxCandidates(int)} entries of the car's color, makeModelYear and bodyStyle lists (1 by default).
+ * </p>
+ * <p>
+ * The records are owned by the parser and overwritten by the next call to reset().
+ * The parser isn't thread-safe: use one instance per thread.
+ * </p>
+ * Sample code:
+ * <pre>
+ * final UltAlprSdkResultSnapshot snapshot = result.snapshot();
+ * if (snapshot.hasPlatesOrCars()) {
+ *   parser.reset(snapshot.json());
+ *   final long frameId = parser.frameId();
+ *   UltAlprSdkResultParser.Plate plate;
+ *   while ((plate = parser.nextPlate()) != null) {
+ *     ... plate.getText() ...
+ *   }
+ * }
+ * </pre>
+ */
+public final class UltAlprSdkResultParser {
+
+  /** Plate text. */
+  public static final int FIELD_TEXT = 1 << 0;
+  /** Recognition and detection confidences. */
+  public static final int FIELD_CONFIDENCES = 1 << 1;
+  /** Plate's warped box. */
+  public static final int FIELD_WARPED_BOX = 1 << 2;
+  /** License Plate Country Identification (LPCI). */
+  public static final int FIELD_COUNTRY = 1 << 3;
+  /** Car, including the color (VCR), make/model/year (VMMR) and body style (VBSR) attributes. */
+  public static final int FIELD_CAR = 1 << 4;
+  public static final int FIELD_ALL = FIELD_TEXT | FIELD_CONFIDENCES | FIELD_WARPED_BOX | FIELD_COUNTRY | FIELD_CAR;
+
+  private static final int TOP_NONE = 0;
+  private static final int TOP_FIRST_MEMBER = 1;
+  private static final int TOP_NEXT_MEMBER = 2;
+  private static final int TOP_DONE = 3;
+
+  private static final int PLATES_UNKNOWN = 0;
+  private static final int PLATES_FIRST = 1;
+  private static final int PLATES_NEXT = 2;
+  private static final int PLATES_DONE = 3;
+
+  private static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+  };
+
+  private ByteBuffer buffer;
+  private ByteBuffer encoded; // Owned buffer for reset(CharSequence)
+  private int pos;
+  private int end;
+  private int topPos; // Cursor on the top-level members, -1 while unknown (plates being parsed)
+  private int topState = TOP_NONE;
+  private int platesPos; // Cursor in the "plates" array
+  private int platesState = PLATES_UNKNOWN;
+  private long frameId = -1;
+  private int fields = FIELD_ALL;
+  private int maxCandidates = 1;
+  private int numPlates = 0;
+  private final ArrayList<Plate> pool = new ArrayList<Plate>();
+  private final Text key = new Text();
+
+  /**
+   * Selects the fields to decode for each plate. Default: {@link #FIELD_ALL}.
+   * @param fields Bitwise OR of FIELD_* values.
+   */
+  public void setFields(int fields) {
+    this.fields = fields;
+  }
+
+  /**
+   * Selects how many entries to keep for the car attributes returned as lists sorted by confidence (color,
+   * makeModelYear, bodyStyle), e.g. to fuse the runner-up colors or makes. Default: 1, the best entry only.
+   * @param maxCandidates Number of entries to keep, at least 1. Use Integer.MAX_VALUE to keep all of them.
+   */
+  public void setMaxCandidates(int maxCandidates) {
+    if (maxCandidates < 1) {
+      throw new IllegalArgumentException("Invalid maxCandidates: " + maxCandidates);
+    }
+    this.maxCandidates = maxCandidates;
+  }
+
+  /**
+   * Starts parsing a new JSON content. The content goes from the buffer's position to its limit.
+   * The buffer isn't modified and must not be changed until the parsing is done.
+   * @param json The UTF-8 JSON content, e.g. read from a file or a socket.
+   */
+  public void reset(ByteBuffer json) {
+    buffer = json;
+    end = json.limit();
+    topPos = json.position();
+    topState = TOP_NONE;
+    platesPos = -1;
+    platesState = PLATES_UNKNOWN;
+    frameId = -1;
+    numPlates = 0;
+  }
+
+  /**
+   * Starts parsing a new JSON content, e.g. {@link UltAlprSdkResult#json()}.
+   * The characters are encoded to UTF-8 into a buffer owned by the parser and reused by the next calls:
+   * once warmed up, no allocation (unlike String.getBytes()).
+   * @param json The JSON content.
+   */
+  public void reset(CharSequence json) {
+    final int length = json.length();
+    if (encoded == null || encoded.capacity() < length * 3) { // At most 3 bytes per char
+      encoded = ByteBuffer.allocate(Math.max(length * 3, 1024));
+    }
+    final byte[] bytes = encoded.array();
+    int n = 0;
+    for (int i = 0; i < length; ++i) {
+      final char c = json.charAt(i);
+      if (c < 0x80) {
+        bytes[n++] = (byte) c;
+      }
+      else if (c < 0x800) {
+        bytes[n++] = (byte) (0xC0 | (c >> 6));
+        bytes[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(json.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, json.charAt(++i));
+        bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+        bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+      }
+      else if (Character.isSurrogate(c)) {
+        bytes[n++] = '?'; // Unpaired surrogate, same as String.getBytes()
+      }
+      else {
+        bytes[n++] = (byte) (0xE0 | (c >> 12));
+        bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    encoded.clear();
+    encoded.limit(n);
+    reset(encoded);
+  }
+
+  /**
+   * Gets the frame identifier. Only the bytes up to "frame_id" are scanned.
+   * @return The frame identifier or -1 if not present.
+   */
+  public long frameId() {
+    while (frameId < 0 && scanTopLevel(false)) {
+      // Keep scanning
+    }
+    return frameId;
+  }
+
+  /**
+   * Parses the next plate.
+   * @return A pooled record, valid until the next call to reset(), or null if there is no more plate.
+   */
+  public Plate nextPlate() {
+    while (platesState == PLATES_UNKNOWN && scanTopLevel(true)) {
+      // Keep scanning
+    }
+    if (platesState == PLATES_UNKNOWN || platesState == PLATES_DONE) {
+      return null;
+    }
+    pos = platesPos;
+    if (platesState == PLATES_FIRST) {
+      if (peek() == ']') {
+        ++pos;
+        finishPlates();
+        return null;
+      }
+    }
+    else {
+      final byte c = next();
+      if (c == ']') {
+        finishPlates();
+        return null;
+      }
+      if (c != ',') {
+        throw error("',' or ']' expected");
+      }
+    }
+    if (numPlates == pool.size()) {
+      pool.add(new Plate());
+    }
+    final Plate plate = pool.get(numPlates++);
+    parsePlate(plate);
+    platesPos = pos;
+    platesState = PLATES_NEXT;
+    return plate;
+  }
+
+  /**
+   * Parses all the remaining plates.
+   * @return The total number of plates parsed since the last call to reset().
+   */
+  public int parsePlates() {
+    while (nextPlate() != null) {
+      // Keep parsing
+    }
+    return numPlates;
+  }
+
+  /**
+   * Number of plates parsed since the last call to reset().
+   */
+  public int getNumPlates() {
+    return numPlates;
+  }
+
+  /**
+   * Gets a plate already parsed.
+   * @param index Index in [0, {@link #getNumPlates()}).
+   */
+  public Plate getPlate(int index) {
+    if (index < 0 || index >= numPlates) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", numPlates: " + numPlates);
+    }
+    return pool.get(index);
+  }
+
+  /**
+   * Scans the next top-level member.
+   * @param enterPlates Whether to stop right after the opening bracket of the "plates" array instead of skipping it.
+   * @return false if there is nothing more to scan.
+   */
+  private boolean scanTopLevel(boolean enterPlates) {
+    if (topState == TOP_DONE) {
+      return false;
+    }
+    if (topPos < 0) {
+      topPos = skipRemainingPlates();
+    }
+    pos = topPos;
+    if (topState == TOP_NONE) {
+      expect('{');
+      topState = TOP_FIRST_MEMBER;
+    }
+    final byte c = next();
+    if (c == '}') {
+      topState = TOP_DONE;
+      topPos = pos;
+      return false;
+    }
+    if (topState == TOP_NEXT_MEMBER) {
+      if (c != ',') {
+        throw error("',' or '}' expected");
+      }
+    }
+    else {
+      --pos; // First member: no separator
+      topState = TOP_NEXT_MEMBER;
+    }
+    readString(key);
+    expect(':');
+    if (key.contentEquals("frame_id")) {
+      frameId = (long) readNumber();
+    }
+    else if (platesState == PLATES_UNKNOWN && key.contentEquals("plates")) {
+      expect('[');
+      platesPos = pos;
+      platesState = PLATES_FIRST;
+      if (enterPlates) {
+        topPos = -1; // Will be known once the plates are parsed
+        return true;
+      }
+      pos = skipRemainingPlates();
+    }
+    else {
+      skipValue();
+    }
+    topPos = pos;
+    return true;
+  }
+
+  /**
+   * Skips the plates not parsed yet without changing the plates' cursor.
+   * @return The position after the closing bracket of the "plates" array.
+   */
+  private int skipRemainingPlates() {
+    pos = platesPos;
+    if (platesState == PLATES_FIRST) {
+      if (peek() == ']') {
+        return ++pos;
+      }
+      skipValue();
+    }
+    if (platesState != PLATES_DONE) {
+      skipRemainingArray();
+    }
+    return pos;
+  }
+
+  private void finishPlates() {
+    platesState = PLATES_DONE;
+    if (topPos < 0) {
+      topPos = pos;
+    }
+  }
+
+  private void parsePlate(Plate plate) {
+    plate.clear();
+    expect('{');
+    if (peek() == '}') {
+      ++pos;
+      return;
+    }
+    do {
+      readString(key);
+      expect(':');
+      if ((fields & FIELD_TEXT) != 0 && key.contentEquals("text")) {
+        readText(plate.text);
+        plate.hasText = true;
+      }
+      else if ((fields & FIELD_CONFIDENCES) != 0 && key.contentEquals("confidences")) {
+        expect('[');
+        if (peek() != ']') {
+          plate.recognitionConfidence = (float) readNumber();
+          if (peek() == ',') {
+            ++pos;
+            plate.detectionConfidence = (float) readNumber();
+          }
+        }
+        skipRemainingArray();
+      }
+      else if ((fields & FIELD_WARPED_BOX) != 0 && key.contentEquals("warpedBox")) {
+        readBox(plate.warpedBox);
+      }
+      else if ((fields & FIELD_COUNTRY) != 0 && key.contentEquals("country")) {
+        plate.hasCountry = parseFirstCountry(plate);
+      }
+      else if ((fields & FIELD_CAR) != 0 && key.contentEquals("car")) {
+        parseCar(plate.car);
+        plate.hasCar = true;
+      }
+      else {
+        skipValue();
+      }
+    } while (nextMember());
+  }
+
+  private boolean parseFirstCountry(Plate plate) {
+    expect('[');
+    if (peek() == ']') {
+      ++pos;
+      return false;
+    }
+    expect('{');
+    if (peek() != '}') {
+      do {
+        readString(key);
+        expect(':');
+        if (key.contentEquals("klass")) {
+          plate.countryKlass = (int) readNumber();
+        }
+        else if (key.contentEquals("confidence")) {
+          plate.countryConfidence = (float) readNumber();
+        }
+        else if (key.contentEquals("code")) {
+          readText(plate.countryCode);
+        }
+        else if (key.contentEquals("name")) {
+          readText(plate.countryName);
+        }
+        else if (key.contentEquals("state")) {
+          readText(plate.countryState);
+        }
+        else if (key.contentEquals("other")) {
+          readText(plate.countryOther);
+        }
+        else {
+          skipValue();
+        }
+      } while (nextMember());
+    }
+    else {
+      ++pos;
+    }
+    skipRemainingArray();
+    return true;
+  }
+
+  private void parseCar(Car car) {
+    expect('{');
+    if (peek() == '}') {
+      ++pos;
+      return;
+    }
+    do {
+      readString(key);
+      expect(':');
+      if (key.contentEquals("confidence")) {
+        car.confidence = (float) readNumber();
+      }
+      else if (key.contentEquals("warpedBox")) {
+        readBox(car.warpedBox);
+      }
+      else if (key.contentEquals("color")) {
+        car.numColors = parseAttributes(car.colors);
+      }
+      else if (key.contentEquals("bodyStyle")) {
+        car.numBodyStyles = parseAttributes(car.bodyStyles);
+      }
+      else if (key.contentEquals("makeModelYear")) {
+        car.numMakeModelYears = parseMakeModelYears(car.makeModelYears);
+      }
+      else {
+        skipValue();
+      }
+    } while (nextMember());
+  }
+
+  /**
+   * Parses the first {@link #maxCandidates} entries of an attribute list into the pooled records.
+   * @return The number of entries parsed.
+   */
+  private int parseAttributes(ArrayList<Attribute> attributes) {
+    expect('[');
+    if (peek() == ']') {
+      ++pos;
+      return 0;
+    }
+    int count = 0;
+    do {
+      if (count < maxCandidates) {
+        if (count == attributes.size()) {
+          attributes.add(new Attribute());
+        }
+        parseAttribute(attributes.get(count++));
+      }
+      else {
+        skipValue();
+      }
+    } while (nextElement());
+    return count;
+  }
+
+  private void parseAttribute(Attribute attribute) {
+    attribute.clear();
+    expect('{');
+    if (peek() == '}') {
+      ++pos;
+      return;
+    }
+    do {
+      readString(key);
+      expect(':');
+      if (key.contentEquals("klass")) {
+        attribute.klass = (int) readNumber();
+      }
+      else if (key.contentEquals("confidence")) {
+        attribute.confidence = (float) readNumber();
+      }
+      else if (key.contentEquals("name")) {
+        readText(attribute.name);
+      }
+      else {
+        skipValue();
+      }
+    } while (nextMember());
+  }
+
+  private int parseMakeModelYears(ArrayList<MakeModelYear> makeModelYears) {
+    expect('[');
+    if (peek() == ']') {
+      ++pos;
+      return 0;
+    }
+    int count = 0;
+    do {
+      if (count < maxCandidates) {
+        if (count == makeModelYears.size()) {
+          makeModelYears.add(new MakeModelYear());
+        }
+        parseMakeModelYear(makeModelYears.get(count++));
+      }
+      else {
+        skipValue();
+      }
+    } while (nextElement());
+    return count;
+  }
+
+  private void parseMakeModelYear(MakeModelYear makeModelYear) {
+    makeModelYear.clear();
+    expect('{');
+    if (peek() == '}') {
+      ++pos;
+      return;
+    }
+    do {
+      readString(key);
+      expect(':');
+      if (key.contentEquals("klass")) {
+        makeModelYear.klass = (int) readNumber();
+      }
+      else if (key.contentEquals("confidence")) {
+        makeModelYear.confidence = (float) readNumber();
+      }
+      else if (key.contentEquals("make")) {
+        readText(makeModelYear.make);
+      }
+      else if (key.contentEquals("model")) {
+        readText(makeModelYear.model);
+      }
+      else if (key.contentEquals("year")) {
+        readText(makeModelYear.year); // Not integer on purpose, could be interval or...
+      }
+      else {
+        skipValue();
+      }
+    } while (nextMember());
+  }
+
+  private void readBox(float[] box) {
+    expect('[');
+    for (int i = 0; i < box.length; ++i) {
+      if (i > 0) {
+        expect(',');
+      }
+      box[i] = (float) readNumber();
+    }
+    skipRemainingArray();
+  }
+
+  /**
+   * Consumes the separator after an object member.
+   * @return true if another member follows, false if the object is closed.
+   */
+  private boolean nextMember() {
+    final byte c = next();
+    if (c == ',') {
+      return true;
+    }
+    if (c == '}') {
+      return false;
+    }
+    throw error("',' or '}' expected");
+  }
+
+  /**
+   * Consumes the separator after an array element.
+   * @return true if another element follows, false if the array is closed.
+   */
+  private boolean nextElement() {
+    final byte c = next();
+    if (c == ',') {
+      return true;
+    }
+    if (c == ']') {
+      return false;
+    }
+    throw error("',' or ']' expected");
+  }
+
+  /**
+   * Skips the remaining elements of an array and its closing bracket.
+   */
+  private void skipRemainingArray() {
+    for (;;) {
+      final byte c = next();
+      if (c == ']') {
+        return;
+      }
+      if (c != ',') {
+        throw error("',' or ']' expected");
+      }
+      skipValue();
+    }
+  }
+
+  private void skipValue() {
+    skipWhitespaces();
+    if (pos >= end) {
+      throw error("Value expected");
+    }
+    final byte c = buffer.get(pos);
+    if (c == '"') {
+      skipString();
+    }
+    else if (c == '{' || c == '[') {
+      int depth = 0;
+      while (pos < end) {
+        final byte b = buffer.get(pos);
+        if (b == '"') {
+          skipString();
+          continue;
+        }
+        ++pos;
+        if (b == '{' || b == '[') {
+          ++depth;
+        }
+        else if ((b == '}' || b == ']') && --depth == 0) {
+          return;
+        }
+      }
+      throw error("Unterminated object or array");
+    }
+    else {
+      // Number, true, false or null
+      while (pos < end) {
+        final byte b = buffer.get(pos);
+        if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+          break;
+        }
+        ++pos;
+      }
+    }
+  }
+
+  private void skipString() {
+    ++pos; // opening quote
+    while (pos < end) {
+      final byte b = buffer.get(pos++);
+      if (b == '\\') {
+        ++pos;
+      }
+      else if (b == '"') {
+        return;
+      }
+    }
+    throw error("Unterminated string");
+  }
+
+  /**
+   * Reads a string or the raw text of any other scalar value (e.g. number) into the text.
+   */
+  private void readText(Text text) {
+    skipWhitespaces();
+    if (pos < end && buffer.get(pos) == '"') {
+      readString(text);
+      return;
+    }
+    text.length = 0;
+    final int start = pos;
+    skipValue();
+    final int length = pos - start;
+    if (length == 4 && buffer.get(start) == 'n') {
+      return; // null
+    }
+    text.ensureCapacity(length);
+    for (int i = 0; i < length; ++i) {
+      text.chars[i] = (char) buffer.get(start + i);
+    }
+    text.length = length;
+  }
+
+  private void readString(Text text) {
+    expect('"');
+    text.length = 0;
+    while (pos < end) {
+      int b = buffer.get(pos++) & 0xFF;
+      if (b == '"') {
+        return;
+      }
+      if (b == '\\') {
+        if (pos >= end) {
+          break;
+        }
+        b = buffer.get(pos++);
+        switch (b) {
+          case 'b': text.append('\b'); break;
+          case 'f': text.append('\f'); break;
+          case 'n': text.append('\n'); break;
+          case 'r': text.append('\r'); break;
+          case 't': text.append('\t'); break;
+          case 'u': text.append((char) readHex4()); break;
+          default: text.append((char) b); break; // '"', '\\', '/'
+        }
+      }
+      else if (b < 0x80) {
+        text.append((char) b);
+      }
+      else if (b < 0xE0) {
+        text.append((char) (((b & 0x1F) << 6) | (continuation())));
+      }
+      else if (b < 0xF0) {
+        final int c1 = continuation();
+        text.append((char) (((b & 0x0F) << 12) | (c1 << 6) | continuation()));
+      }
+      else {
+        final int c1 = continuation();
+        final int c2 = continuation();
+        final int codePoint = ((b & 0x07) << 18) | (c1 << 12) | (c2 << 6) | continuation();
+        text.append(Character.highSurrogate(codePoint));
+        text.append(Character.lowSurrogate(codePoint));
+      }
+    }
+    throw error("Unterminated string");
+  }
+
+  private int continuation() {
+    if (pos >= end) {
+      throw error("Truncated UTF-8 sequence");
+    }
+    return buffer.get(pos++) & 0x3F;
+  }
+
+  private int readHex4() {
+    if (pos + 4 > end) {
+      throw error("Truncated unicode escape");
+    }
+    int value = 0;
+    for (int i = 0; i < 4; ++i) {
+      final int digit = Character.digit(buffer.get(pos++), 16);
+      if (digit < 0) {
+        throw error("Invalid unicode escape");
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
+  /**
+   * Reads a JSON number without allocating. Precision is more than enough for the float values returned by the engine.
+   */
+  private double readNumber() {
+    skipWhitespaces();
+    boolean negative = false;
+    if (pos < end && buffer.get(pos) == '-') {
+      negative = true;
+      ++pos;
+    }
+    long mantissa = 0;
+    int exponent = 0;
+    int numDigits = 0;
+    byte b;
+    while (pos < end && (b = buffer.get(pos)) >= '0' && b <= '9') {
+      if (mantissa < 100000000000000000L) {
+        mantissa = mantissa * 10 + (b - '0');
+      } else {
+        ++exponent;
+      }
+      ++numDigits;
+      ++pos;
+    }
+    if (pos < end && buffer.get(pos) == '.') {
+      ++pos;
+      while (pos < end && (b = buffer.get(pos)) >= '0' && b <= '9') {
+        if (mantissa < 100000000000000000L) {
+          mantissa = mantissa * 10 + (b - '0');
+          --exponent;
+        }
+        ++numDigits;
+        ++pos;
+      }
+    }
+    if (numDigits == 0) {
+      throw error("Number expected");
+    }
+    if (pos < end && ((b = buffer.get(pos)) == 'e' || b == 'E')) {
+      ++pos;
+      boolean negativeExponent = false;
+      if (pos < end && ((b = buffer.get(pos)) == '-' || b == '+')) {
+        negativeExponent = (b == '-');
+        ++pos;
+      }
+      int e = 0;
+      while (pos < end && (b = buffer.get(pos)) >= '0' && b <= '9') {
+        e = Math.min(e * 10 + (b - '0'), 1000);
+        ++pos;
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    double value = mantissa;
+    if (exponent < 0) {
+      value = (-exponent < POW10.length) ? (value / POW10[-exponent]) : (value / Math.pow(10, -exponent));
+    }
+    else if (exponent > 0) {
+      value = (exponent < POW10.length) ? (value * POW10[exponent]) : (value * Math.pow(10, exponent));
+    }
+    return negative ? -value : value;
+  }
+
+  private void skipWhitespaces() {
+    byte b;
+    while (pos < end && ((b = buffer.get(pos)) == ' ' || b == '\t' || b == '\n' || b == '\r')) {
+      ++pos;
+    }
+  }
+
+  private byte peek() {
+    skipWhitespaces();
+    if (pos >= end) {
+      throw error("Unexpected end of content");
+    }
+    return buffer.get(pos);
+  }
+
+  private byte next() {
+    final byte b = peek();
+    ++pos;
+    return b;
+  }
+
+  private void expect(char c) {
+    if (next() != c) {
+      --pos;
+      throw error("'" + c + "' expected");
+    }
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException("Malformed JSON at offset " + pos + ": " + message);
+  }
+
+  /**
+   * Reusable char sequence. {@link #toString()} allocates a new String, use it only when needed.
+   */
+  public static final class Text implements CharSequence {
+    private char[] chars = new char[32];
+    private int length = 0;
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+      }
+      return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    public boolean isEmpty() {
+      return length == 0;
+    }
+
+    /**
+     * Compares the content without allocating.
+     */
+    public boolean contentEquals(CharSequence other) {
+      if (other.length() != length) {
+        return false;
+      }
+      for (int i = 0; i < length; ++i) {
+        if (chars[i] != other.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Copies the content into the destination array.
+     * @return The number of chars copied.
+     */
+    public int getChars(char[] dst, int dstOffset) {
+      System.arraycopy(chars, 0, dst, dstOffset, length);
+      return length;
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, 0, length);
+    }
+
+    void clear() {
+      length = 0;
+    }
+
+    void append(char c) {
+      if (length == chars.length) {
+        ensureCapacity(length + 1);
+      }
+      chars[length++] = c;
+    }
+
+    void ensureCapacity(int capacity) {
+      if (capacity > chars.length) {
+        final char[] newChars = new char[Math.max(capacity, chars.length << 1)];
+        System.arraycopy(chars, 0, newChars, 0, length);
+        chars = newChars;
+      }
+    }
+  }
+
+  /**
+   * Classification result (e.g. color or body style): a class and its confidence.
+   */
+  public static final class Attribute {
+    int klass;
+    float confidence;
+    final Text name = new Text();
+
+    public int getKlass() { return klass; }
+    public float getConfidence() { return confidence; }
+    public Text getName() { return name; }
+
+    void clear() {
+      klass = -1;
+      confidence = 0.f;
+      name.clear();
+    }
+  }
+
+  /**
+   * Vehicle Make Model Recognition (VMMR) result.
+   */
+  public static final class MakeModelYear {
+    int klass;
+    float confidence;
+    final Text make = new Text();
+    final Text model = new Text();
+    final Text year = new Text();
+
+    public int getKlass() { return klass; }
+    public float getConfidence() { return confidence; }
+    public Text getMake() { return make; }
+    public Text getModel() { return model; }
+    /** Not integer on purpose, could be interval or... */
+    public Text getYear() { return year; }
+
+    void clear() {
+      klass = -1;
+      confidence = 0.f;
+      make.clear();
+      model.clear();
+      year.clear();
+    }
+  }
+
+  /**
+   * The car and its attributes. Each attribute list is sorted by confidence, the best entry first,
+   * and holds at most {@link UltAlprSdkResultParser#setMaxCandidates(int)} entries.
+   */
+  public static final class Car {
+    float confidence;
+    final float[] warpedBox = new float[8];
+    int numColors;
+    final ArrayList<Attribute> colors = newList(new Attribute());
+    int numBodyStyles;
+    final ArrayList<Attribute> bodyStyles = newList(new Attribute());
+    int numMakeModelYears;
+    final ArrayList<MakeModelYear> makeModelYears = newList(new MakeModelYear());
+
+    public float getConfidence() { return confidence; }
+    public float[] getWarpedBox() { return warpedBox; }
+    /** Vehicle Color Recognition (VCR). */
+    public boolean hasColor() { return numColors != 0; }
+    /** The color with the highest confidence. */
+    public Attribute getColor() { return colors.get(0); }
+    public int getNumColors() { return numColors; }
+    public Attribute getColor(int index) { return colors.get(checkIndex(index, numColors)); }
+    /** Vehicle Body Style Recognition (VBSR). */
+    public boolean hasBodyStyle() { return numBodyStyles != 0; }
+    /** The body style with the highest confidence. */
+    public Attribute getBodyStyle() { return bodyStyles.get(0); }
+    public int getNumBodyStyles() { return numBodyStyles; }
+    public Attribute getBodyStyle(int index) { return bodyStyles.get(checkIndex(index, numBodyStyles)); }
+    /** Vehicle Make Model Recognition (VMMR). */
+    public boolean hasMakeModelYear() { return numMakeModelYears != 0; }
+    /** The make/model/year with the highest confidence. */
+    public MakeModelYear getMakeModelYear() { return makeModelYears.get(0); }
+    public int getNumMakeModelYears() { return numMakeModelYears; }
+    public MakeModelYear getMakeModelYear(int index) { return makeModelYears.get(checkIndex(index, numMakeModelYears)); }
+    public int getMakeModelYearKlass() { return makeModelYears.get(0).klass; }
+    public float getMakeModelYearConfidence() { return makeModelYears.get(0).confidence; }
+    public Text getMake() { return makeModelYears.get(0).make; }
+    public Text getModel() { return makeModelYears.get(0).model; }
+    public Text getYear() { return makeModelYears.get(0).year; }
+
+    void clear() {
+      confidence = 0.f;
+      java.util.Arrays.fill(warpedBox, 0.f);
+      numColors = 0;
+      colors.get(0).clear();
+      numBodyStyles = 0;
+      bodyStyles.get(0).clear();
+      numMakeModelYears = 0;
+      makeModelYears.get(0).clear();
+    }
+
+    private static <T> ArrayList<T> newList(T first) {
+      final ArrayList<T> list = new ArrayList<T>(1);
+      list.add(first);
+      return list;
+    }
+
+    private static int checkIndex(int index, int size) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+      }
+      return index;
+    }
+  }
+
+  public static final class Plate {
+    boolean hasText;
+    final Text text = new Text();
+    float recognitionConfidence;
+    float detectionConfidence;
+    final float[] warpedBox = new float[8];
+    boolean hasCountry;
+    int countryKlass;
+    float countryConfidence;
+    final Text countryCode = new Text();
+    final Text countryName = new Text();
+    final Text countryState = new Text();
+    final Text countryOther = new Text();
+    boolean hasCar;
+    final Car car = new Car();
+
+    /** Starting 3.2 it's possible to have cars without plates when enabled. */
+    public boolean hasText() { return hasText; }
+    public Text getText() { return text; }
+    public float getRecognitionConfidence() { return recognitionConfidence; }
+    public float getDetectionConfidence() { return detectionConfidence; }
+    public float[] getWarpedBox() { return warpedBox; }
+    /** License Plate Country Identification (LPCI). */
+    public boolean hasCountry() { return hasCountry; }
+    public int getCountryKlass() { return countryKlass; }
+    public float getCountryConfidence() { return countryConfidence; }
+    /** ISO-code: https://en.wikipedia.org/wiki/ISO_3166-1_alpha-3 */
+    public Text getCountryCode() { return countryCode; }
+    public Text getCountryName() { return countryName; }
+    public Text getCountryState() { return countryState; }
+    /** Additional information, e.g. the vehicle type ("Private vehicle"). Empty if not provided. */
+    public Text getCountryOther() { return countryOther; }
+    public boolean hasCar() { return hasCar; }
+    public Car getCar() { return car; }
+
+    void clear() {
+      hasText = false;
+      text.clear();
+      recognitionConfidence = 0.f;
+      detectionConfidence = 0.f;
+      java.util.Arrays.fill(warpedBox, 0.f);
+      hasCountry = false;
+      countryKlass = -1;
+      countryConfidence = 0.f;
+      countryCode.clear();
+      countryName.clear();
+      countryState.clear();
+      countryOther.clear();
+      hasCar = false;
+      car.clear();
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Worker process of {@link UltAlprSdkWorkerPool}: initializes the engine with its own configuration and processes the
+ * frames read from the request ring, writing the results to the result ring. Launched by the pool, not meant to be started by hand.
+ * <p>
+ * Usage: UltAlprSdkWorker &lt;request ring file&gt; &lt;result ring file&gt; &lt;JSON config file&gt;
+ * </p>
+ * Request record: request id (int64), image type (int32), EXIF orientation (int32), width, height, Y/packed stride,
+ * U stride, V stride, UV pixel stride (int64 each), planar flag (int32), Y/packed, U and V sizes (int32 each),
+ * then the planes, each starting at a multiple of 64 bytes from the record start.
+ * Result record: request id (int64), process() duration in nanoseconds (int64), then {@link UltAlprSdkResultSnapshot#writeTo(ByteBuffer)}.
+ * Once the engine is initialized, the worker beats the request ring's heartbeat every 100ms, except while process() is running.
+ */
+public final class UltAlprSdkWorker {
+  static final int EXIT_CODE_USAGE = 1;
+  static final int EXIT_CODE_INIT_FAILED = 2;
+  private static final int REQUEST_HEADER_SIZE = 128;
+  private static final int PLANE_ALIGNMENT = 64;
+  private static final long PARENT_CHECK_INTERVAL_NANOS = 1000000000L;
+  private static final long HEARTBEAT_INTERVAL_NANOS = 100000000L;
+
+  private UltAlprSdkWorker() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      System.err.println("Usage: UltAlprSdkWorker <request ring file> <result ring file> <JSON config file>");
+      System.exit(EXIT_CODE_USAGE);
+    }
+    System.loadLibrary(System.getProperty("os.name").toLowerCase().contains("win") ? "ultimateALPR-SDK" : "ultimate_alpr-sdk");
+
+    final String jsonConfig = new String(Files.readAllBytes(Paths.get(args[2])), StandardCharsets.UTF_8);
+    try (UltAlprSdkMappedRing requests = UltAlprSdkMappedRing.open(Paths.get(args[0]));
+         UltAlprSdkMappedRing results = UltAlprSdkMappedRing.open(Paths.get(args[1]))) {
+      try (UltAlprSdkResult init = UltAlprSdkEngine.init(jsonConfig)) {
+        if (!init.isOK()) {
+          System.err.println("UltAlprSdkWorker: init failed: " + init.snapshot());
+          System.exit(EXIT_CODE_INIT_FAILED);
+        }
+      }
+      run(requests, results);
+    }
+    finally {
+      UltAlprSdkEngine.deInit().close();
+    }
+  }
+
+  private static void run(UltAlprSdkMappedRing requests, UltAlprSdkMappedRing results) {
+    final ProcessHandle parent = ProcessHandle.current().parent().orElse(null);
+    long lastParentCheck = System.nanoTime();
+    long lastHeartbeat = System.nanoTime();
+    requests.heartbeat(); // Initialized
+    int idle = 0;
+    for (;;) {
+      if (System.nanoTime() - lastHeartbeat > HEARTBEAT_INTERVAL_NANOS) {
+        requests.heartbeat();
+        lastHeartbeat = System.nanoTime();
+      }
+      final ByteBuffer request = requests.tryRead();
+      if (request == null) {
+        if (System.nanoTime() - lastParentCheck > PARENT_CHECK_INTERVAL_NANOS) {
+          if (parent == null || !parent.isAlive()) {
+            return; // Orphaned: the supervisor is gone
+          }
+          lastParentCheck = System.nanoTime();
+        }
+        UltAlprSdkMappedRing.idle(idle++);
+        continue;
+      }
+      idle = 0;
+      final long requestId = request.getLong(0);
+      final long startNanos = System.nanoTime();
+      final UltAlprSdkResultSnapshot snapshot;
+      try (UltAlprSdkResult result = readRequest(request).process()) { // The planes are read in place, from the mapped file
+        snapshot = result.snapshot();
+      }
+      final long elapsedNanos = System.nanoTime() - startNanos;
+      requests.release();
+      requests.heartbeat();
+      lastHeartbeat = System.nanoTime();
+      writeResult(requests, results, requestId, elapsedNanos, snapshot);
+    }
+  }
+
+  private static void writeResult(UltAlprSdkMappedRing requests, UltAlprSdkMappedRing results, long requestId, long elapsedNanos, UltAlprSdkResultSnapshot snapshot) {
+    ByteBuffer slot;
+    int idle = 0;
+    long lastHeartbeat = System.nanoTime();
+    while ((slot = results.tryClaim()) == null) {
+      UltAlprSdkMappedRing.idle(idle++); // The supervisor drains the results continuously
+      if (System.nanoTime() - lastHeartbeat > HEARTBEAT_INTERVAL_NANOS) {
+        requests.heartbeat();
+        lastHeartbeat = System.nanoTime();
+      }
+    }
+    slot.putLong(requestId);
+    slot.putLong(elapsedNanos);
+    try {
+      snapshot.writeTo(slot);
+    }
+    catch (BufferOverflowException e) {
+      new UltAlprSdkResultSnapshot(snapshot.code(), "Result too large for the result ring", null, snapshot.numPlates(), snapshot.numCars()).writeTo(slot);
+    }
+    results.commit(slot.position());
+  }
+
+  /**
+   * Size of the request record for a frame, in bytes.
+   */
+  static int requestSize(UltAlprSdkFrame frame) {
+    int size = REQUEST_HEADER_SIZE + align(frame.getData().remaining());
+    if (frame.isPlanar()) {
+      size += align(frame.getUPlane().remaining()) + align(frame.getVPlane().remaining());
+    }
+    return size;
+  }
+
+  /**
+   * Writes a frame to a request slot.
+   * @return The record length.
+   */
+  static int writeRequest(ByteBuffer slot, long requestId, UltAlprSdkFrame frame) {
+    final ByteBuffer y = frame.getData().duplicate();
+    final ByteBuffer u = frame.isPlanar() ? frame.getUPlane().duplicate() : null;
+    final ByteBuffer v = frame.isPlanar() ? frame.getVPlane().duplicate() : null;
+    slot.putLong(0, requestId);
+    slot.putInt(8, frame.getImageType().swigValue());
+    slot.putInt(12, frame.getExifOrientation());
+    slot.putLong(16, frame.getWidth());
+    slot.putLong(24, frame.getHeight());
+    slot.putLong(32, frame.getStride());
+    slot.putLong(40, frame.getUStride());
+    slot.putLong(48, frame.getVStride());
+    slot.putLong(56, frame.getUVPixelStride());
+    slot.putInt(64, frame.isPlanar() ? 1 : 0);
+    slot.putInt(68, y.remaining());
+    slot.putInt(72, (u != null) ? u.remaining() : 0);
+    slot.putInt(76, (v != null) ? v.remaining() : 0);
+    int offset = REQUEST_HEADER_SIZE;
+    offset = putPlane(slot, offset, y);
+    if (u != null) {
+      offset = putPlane(slot, offset, u);
+      offset = putPlane(slot, offset, v);
+    }
+    return offset;
+  }
+
+  /**
+   * Reads a frame from a request record. The planes are slices of the record: no copy.
+   */
+  static UltAlprSdkFrame readRequest(ByteBuffer record) {
+    final ULTALPR_SDK_IMAGE_TYPE imageType = ULTALPR_SDK_IMAGE_TYPE.swigToEnum(record.getInt(8));
+    final int exifOrientation = record.getInt(12);
+    final long width = record.getLong(16);
+    final long height = record.getLong(24);
+    final long stride = record.getLong(32);
+    final int ySize = record.getInt(68);
+    final ByteBuffer y = slice(record, REQUEST_HEADER_SIZE, ySize);
+    if (record.getInt(64) == 0) {
+      return UltAlprSdkFrame.packed(imageType, y, width, height, stride, exifOrientation);
+    }
+    final int uSize = record.getInt(72);
+    final int vSize = record.getInt(76);
+    final int uOffset = REQUEST_HEADER_SIZE + align(ySize);
+    final ByteBuffer u = slice(record, uOffset, uSize);
+    final ByteBuffer v = slice(record, uOffset + align(uSize), vSize);
+    return UltAlprSdkFrame.planar(imageType, y, u, v, width, height, stride, record.getLong(40), record.getLong(48), record.getLong(56), exifOrientation);
+  }
+
+  private static int putPlane(ByteBuffer slot, int offset, ByteBuffer plane) {
+    final int size = plane.remaining();
+    final ByteBuffer target = slot.duplicate();
+    target.position(offset);
+    target.put(plane);
+    return offset + align(size);
+  }
+
+  private static ByteBuffer slice(ByteBuffer record, int offset, int size) {
+    final ByteBuffer duplicate = record.duplicate();
+    duplicate.limit(offset + size).position(offset);
+    return duplicate.slice();
+  }
+
+  private static int align(int size) {
+    return (size + PLANE_ALIGNMENT - 1) & ~(PLANE_ALIGNMENT - 1);
+  }
+}
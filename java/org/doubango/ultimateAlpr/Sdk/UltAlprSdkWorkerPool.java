@@ -0,0 +1,606 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.Sdk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Supervisor of a pool of worker processes, each running its own engine ({@link UltAlprSdkWorker}).
+ * The engine is a process-wide singleton: scaling across crash domains (or running several configurations side by side,
+ * using one pool per configuration) requires several processes.
+ * <p>
+ * The frames are copied into memory-mapped ring files shared with the workers (no serialization, the worker passes the
+ * mapped planes to process() as is) and the results come back as compact records through another ring.
+ * Each frame goes to the least loaded worker (fewest frames in flight). A worker that exits is restarted after a delay,
+ * the frames it was processing fail with {@link WorkerCrashedException}.
+ * </p>
+ * <p>
+ * A worker that stops beating its heartbeat (hung outside process()) or holds a frame past the request timeout (hung in
+ * process()) is killed and restarted: the late frame fails with {@link TimeoutException}, the others in flight with
+ * {@link WorkerCrashedException}. A worker failing to initialize the engine is restarted with an exponential backoff:
+ * after {@link Options#setMaxInitFailures(int)} failures in a row the configuration is deemed broken and the pool
+ * fails (see {@link #getFailure()}).
+ * </p>
+ * The workers are launched using the current JVM, class path and java.library.path. Sample code:
+ * <pre>
+ * try (UltAlprSdkWorkerPool pool = new UltAlprSdkWorkerPool(new UltAlprSdkWorkerPool.Options(jsonConfig).setNumWorkers(4))) {
+ *   pool.submit(frame).thenAccept(result -&gt; ...);
+ *   ...
+ *   for (UltAlprSdkWorkerPool.WorkerStats stats : pool.getStats()) { ... }
+ * }
+ * </pre>
+ */
+public class UltAlprSdkWorkerPool implements AutoCloseable {
+
+  /**
+   * Pool configuration.
+   */
+  public static final class Options {
+    private final String jsonConfig;
+    private int numWorkers = 2;
+    private int requestSlots = 4;
+    private int requestSlotSize = 8 << 20; // 1920x1080 RGBA32 fits
+    private int resultSlots = 16;
+    private int resultSlotSize = 256 << 10;
+    private long restartDelayMillis = 1000;
+    private long maxRestartDelayMillis = 60000;
+    private int maxInitFailures = 5;
+    private long heartbeatTimeoutMillis = 10000;
+    private long requestTimeoutMillis = 30000;
+    private Path directory;
+    private final List<String> jvmArgs = new ArrayList<String>();
+
+    /**
+     * @param jsonConfig The engine configuration used by all the workers. Parallel mode isn't supported: each worker runs sequentially.
+     */
+    public Options(String jsonConfig) {
+      this.jsonConfig = jsonConfig;
+    }
+
+    /** Number of worker processes. Default: 2. */
+    public Options setNumWorkers(int numWorkers) { this.numWorkers = numWorkers; return this; }
+    /** Number of frames queued per worker. Default: 4. */
+    public Options setRequestSlots(int requestSlots) { this.requestSlots = requestSlots; return this; }
+    /** Maximum frame size, in bytes (all planes). Default: 8MB. */
+    public Options setRequestSlotSize(int requestSlotSize) { this.requestSlotSize = requestSlotSize; return this; }
+    /** Number of results queued per worker. Default: 16. */
+    public Options setResultSlots(int resultSlots) { this.resultSlots = resultSlots; return this; }
+    /** Maximum result size, in bytes. Larger JSON results are dropped (the other fields are kept). Default: 256KB. */
+    public Options setResultSlotSize(int resultSlotSize) { this.resultSlotSize = resultSlotSize; return this; }
+    /** Delay before restarting a worker that exited. Doubled after each initialization failure in a row. Default: 1000ms. */
+    public Options setRestartDelayMillis(long restartDelayMillis) { this.restartDelayMillis = restartDelayMillis; return this; }
+    /** Upper bound of the restart delay backoff. Default: 60000ms. */
+    public Options setMaxRestartDelayMillis(long maxRestartDelayMillis) { this.maxRestartDelayMillis = maxRestartDelayMillis; return this; }
+    /** Number of initialization failures in a row (same worker) after which the pool fails. Default: 5. */
+    public Options setMaxInitFailures(int maxInitFailures) { this.maxInitFailures = maxInitFailures; return this; }
+    /** Delay without heartbeat after which an initialized worker is killed. Must exceed the slowest process() call. Default: 10000ms. */
+    public Options setHeartbeatTimeoutMillis(long heartbeatTimeoutMillis) { this.heartbeatTimeoutMillis = heartbeatTimeoutMillis; return this; }
+    /**
+     * Delay after which a submitted frame without result fails and its worker is killed, queueing and engine
+     * initialization included. 0 to disable. Default: 30000ms.
+     */
+    public Options setRequestTimeoutMillis(long requestTimeoutMillis) { this.requestTimeoutMillis = requestTimeoutMillis; return this; }
+    /** Where to create the ring files. Prefer a tmpfs, e.g. /dev/shm on Linux. Default: a new temporary directory. */
+    public Options setDirectory(Path directory) { this.directory = directory; return this; }
+    /** Extra arguments for the worker JVMs, e.g. "-Xmx512m". */
+    public Options addJvmArg(String jvmArg) { this.jvmArgs.add(jvmArg); return this; }
+  }
+
+  /**
+   * Failure of the frames in flight on a worker that exited.
+   */
+  public static final class WorkerCrashedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    WorkerCrashedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Per-worker metrics.
+   */
+  public static final class WorkerStats {
+    private final int index;
+    private final long pid;
+    private final boolean alive;
+    private final int inFlight;
+    private final long completed;
+    private final long crashedFrames;
+    private final long restarts;
+    private final double throughput;
+    private final double meanProcessMillis;
+
+    WorkerStats(int index, long pid, boolean alive, int inFlight, long completed, long crashedFrames, long restarts, double throughput, double meanProcessMillis) {
+      this.index = index;
+      this.pid = pid;
+      this.alive = alive;
+      this.inFlight = inFlight;
+      this.completed = completed;
+      this.crashedFrames = crashedFrames;
+      this.restarts = restarts;
+      this.throughput = throughput;
+      this.meanProcessMillis = meanProcessMillis;
+    }
+
+    public int getIndex() { return index; }
+    /** Process id of the current worker process, -1 if not running. */
+    public long getPid() { return pid; }
+    public boolean isAlive() { return alive; }
+    /** Number of frames submitted and waiting for their result. */
+    public int getInFlightCount() { return inFlight; }
+    /** Number of results received since the pool started. */
+    public long getCompletedCount() { return completed; }
+    /** Number of frames failed because the worker exited. */
+    public long getCrashedFrameCount() { return crashedFrames; }
+    public long getRestartCount() { return restarts; }
+    /** Results per second since the worker (re)started. */
+    public double getThroughput() { return throughput; }
+    /** Mean process() duration measured in the worker, in milliseconds. */
+    public double getMeanProcessMillis() { return meanProcessMillis; }
+
+    @Override
+    public String toString() {
+      return String.format("worker #%d (pid %d, %s): inFlight: %d, completed: %d, crashedFrames: %d, restarts: %d, throughput: %.2f fps, process: %.3fms",
+        index, pid, alive ? "alive" : "down", inFlight, completed, crashedFrames, restarts, throughput, meanProcessMillis);
+    }
+  }
+
+  private static final long SUPERVISOR_INTERVAL_MILLIS = 100;
+
+  private final Options options;
+  private final Path directory;
+  private final boolean ownsDirectory;
+  private final Worker[] workers;
+  private final AtomicLong nextRequestId = new AtomicLong(0);
+  private final Thread supervisor;
+  private volatile boolean closed = false;
+  private volatile String failure;
+
+  /**
+   * Creates the ring files and launches the workers. The workers initialize their engine in the background:
+   * frames submitted in the meantime are queued.
+   */
+  public UltAlprSdkWorkerPool(Options options) throws IOException {
+    if (options.numWorkers <= 0) {
+      throw new IllegalArgumentException("Invalid number of workers: " + options.numWorkers);
+    }
+    this.options = options;
+    this.ownsDirectory = (options.directory == null);
+    this.directory = ownsDirectory ? Files.createTempDirectory("ultimateAlpr-pool") : options.directory;
+    this.workers = new Worker[options.numWorkers];
+    try {
+      for (int i = 0; i < workers.length; ++i) {
+        workers[i] = new Worker(i);
+        workers[i].start();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+    supervisor = new Thread(this::runSupervisor, "UltAlprSdkWorkerPool-supervisor");
+    supervisor.setDaemon(true);
+    supervisor.start();
+  }
+
+  /**
+   * Sends a frame to the least loaded worker. The frame's buffers are copied before returning.
+   * @return The future completed with the result, or failed with {@link WorkerCrashedException} or {@link TimeoutException}.
+   * Fails with {@link RejectedExecutionException} if the request rings of all workers are full or the pool failed.
+   */
+  public CompletableFuture<UltAlprSdkResultSnapshot> submit(UltAlprSdkFrame frame) {
+    final CompletableFuture<UltAlprSdkResultSnapshot> future = new CompletableFuture<UltAlprSdkResultSnapshot>();
+    if (closed) {
+      future.completeExceptionally(new RejectedExecutionException("Pool closed"));
+      return future;
+    }
+    final String reason = failure;
+    if (reason != null) {
+      future.completeExceptionally(new RejectedExecutionException("Pool failed: " + reason));
+      return future;
+    }
+    final int size = UltAlprSdkWorker.requestSize(frame);
+    final List<Worker> candidates = new ArrayList<Worker>(workers.length);
+    Collections.addAll(candidates, workers);
+    Collections.sort(candidates, Comparator.comparingInt(Worker::getInFlightCount));
+    for (Worker worker : candidates) {
+      if (worker.offer(frame, size, future)) {
+        return future;
+      }
+    }
+    future.completeExceptionally(new RejectedExecutionException("All workers are busy"));
+    return future;
+  }
+
+  /**
+   * Gets the reason why the pool gave up (e.g. the engine can't be initialized with the configuration).
+   * @return The reason, null if the pool is running.
+   */
+  public String getFailure() {
+    return failure;
+  }
+
+  /**
+   * Gets the metrics of each worker.
+   */
+  public List<WorkerStats> getStats() {
+    final List<WorkerStats> stats = new ArrayList<WorkerStats>(workers.length);
+    for (Worker worker : workers) {
+      stats.add(worker.stats());
+    }
+    return stats;
+  }
+
+  /**
+   * Stops the workers, fails the pending frames and deletes the ring files.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    if (supervisor != null) {
+      supervisor.interrupt();
+      try {
+        supervisor.join();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    for (Worker worker : workers) {
+      if (worker != null) {
+        worker.stop("Pool closed");
+      }
+    }
+    if (ownsDirectory) {
+      try {
+        Files.deleteIfExists(directory);
+      }
+      catch (IOException e) {
+        // Not empty: files left by a worker, ignore
+      }
+    }
+  }
+
+  private void runSupervisor() {
+    while (!closed) {
+      for (Worker worker : workers) {
+        worker.supervise();
+      }
+      final String reason = failure;
+      if (reason != null) {
+        System.err.println("UltAlprSdkWorkerPool: giving up: " + reason);
+        for (Worker worker : workers) {
+          worker.stop("Pool failed: " + reason);
+        }
+        return;
+      }
+      try {
+        Thread.sleep(SUPERVISOR_INTERVAL_MILLIS);
+      }
+      catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private Process launch(Path requests, Path results, Path config) throws IOException {
+    final List<String> command = new ArrayList<String>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+    command.addAll(options.jvmArgs);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(UltAlprSdkWorker.class.getName());
+    command.add(requests.toString());
+    command.add(results.toString());
+    command.add(config.toString());
+    return new ProcessBuilder(command).inheritIO().start();
+  }
+
+  /**
+   * One worker process and its rings. The rings are recreated (new files) on each restart.
+   */
+  private final class Worker {
+    final int index;
+    final Path config;
+    final Object writeLock = new Object();
+    final Map<Long, Request> inFlight = new ConcurrentHashMap<Long, Request>();
+    final AtomicLong completed = new AtomicLong(0);
+    final AtomicLong completedSinceStart = new AtomicLong(0);
+    final AtomicLong processNanos = new AtomicLong(0);
+    final AtomicLong crashedFrames = new AtomicLong(0);
+    final AtomicLong restarts = new AtomicLong(0);
+    int generation = 0; // Guarded by writeLock
+    volatile Process process;
+    volatile UltAlprSdkMappedRing requests; // Guarded by writeLock for writing
+    volatile Generation current;
+    volatile long startNanos;
+    volatile long exitNanos = -1;
+    // Supervisor thread only
+    long lastHeartbeat;
+    long lastHeartbeatNanos;
+    int initFailures = 0;
+
+    Worker(int index) throws IOException {
+      this.index = index;
+      this.config = directory.resolve("worker-" + index + ".json");
+      Files.write(config, options.jsonConfig.getBytes(StandardCharsets.UTF_8));
+    }
+
+    int getInFlightCount() {
+      return (process != null && process.isAlive()) ? inFlight.size() : Integer.MAX_VALUE;
+    }
+
+    void start() throws IOException {
+      synchronized (writeLock) {
+        final int gen = generation++;
+        final Path requestPath = directory.resolve("worker-" + index + "-" + gen + ".req");
+        final Path resultPath = directory.resolve("worker-" + index + "-" + gen + ".res");
+        final UltAlprSdkMappedRing requestRing = UltAlprSdkMappedRing.create(requestPath, options.requestSlots, options.requestSlotSize);
+        final UltAlprSdkMappedRing resultRing = UltAlprSdkMappedRing.create(resultPath, options.resultSlots, options.resultSlotSize);
+        final Generation next = new Generation(requestPath, resultPath, requestRing, resultRing);
+        process = launch(requestPath, resultPath, config);
+        requests = requestRing;
+        current = next;
+        startNanos = System.nanoTime();
+        completedSinceStart.set(0);
+        exitNanos = -1;
+        lastHeartbeat = 0;
+        lastHeartbeatNanos = startNanos;
+        next.reader = new Thread(() -> readResults(next), "UltAlprSdkWorkerPool-reader-" + index);
+        next.reader.setDaemon(true);
+        next.reader.start();
+      }
+    }
+
+    boolean offer(UltAlprSdkFrame frame, int size, CompletableFuture<UltAlprSdkResultSnapshot> future) {
+      synchronized (writeLock) {
+        final Process p = process;
+        if (p == null || !p.isAlive()) {
+          return false;
+        }
+        if (size > requests.getMaxRecordSize()) {
+          future.completeExceptionally(new IllegalArgumentException("Frame too large: " + size + " > " + requests.getMaxRecordSize() + " bytes"));
+          return true;
+        }
+        final ByteBuffer slot = requests.tryClaim();
+        if (slot == null) {
+          return false;
+        }
+        final long requestId = nextRequestId.incrementAndGet();
+        final int length = UltAlprSdkWorker.writeRequest(slot, requestId, frame);
+        inFlight.put(requestId, new Request(future, System.nanoTime()));
+        future.whenComplete((result, error) -> inFlight.remove(requestId)); // e.g. cancelled by the caller
+        requests.commit(length);
+        return true;
+      }
+    }
+
+    /**
+     * Drains the results of one generation of rings, until the worker is restarted or the pool closed.
+     */
+    void readResults(Generation rings) {
+      int idle = 0;
+      while (!closed && current == rings) {
+        final ByteBuffer record = rings.results.tryRead();
+        if (record == null) {
+          UltAlprSdkMappedRing.idle(idle++);
+          continue;
+        }
+        idle = 0;
+        final long requestId = record.getLong(0);
+        final long elapsedNanos = record.getLong(8);
+        record.position(16);
+        final UltAlprSdkResultSnapshot result = UltAlprSdkResultSnapshot.readFrom(record);
+        rings.results.release();
+        completed.incrementAndGet();
+        completedSinceStart.incrementAndGet();
+        processNanos.addAndGet(elapsedNanos);
+        final Request request = inFlight.remove(requestId);
+        if (request != null) {
+          request.future.complete(result);
+        }
+      }
+    }
+
+    /**
+     * Called periodically by the supervisor thread: kills the worker if it's hung, detects its exit and restarts it.
+     */
+    void supervise() {
+      final Process p = process;
+      if (p == null) {
+        return;
+      }
+      if (p.isAlive()) {
+        checkLiveness(p);
+        return;
+      }
+      if (exitNanos < 0) {
+        exitNanos = System.nanoTime();
+        final int exitCode = p.exitValue();
+        System.err.println("UltAlprSdkWorkerPool: worker #" + index + " exited with code " + exitCode);
+        failInFlight("Worker #" + index + " exited with code " + exitCode);
+        initFailures = (exitCode == UltAlprSdkWorker.EXIT_CODE_INIT_FAILED) ? initFailures + 1 : 0;
+        if (initFailures >= options.maxInitFailures) {
+          failure = "worker #" + index + " failed to initialize the engine " + initFailures + " times in a row";
+          return;
+        }
+      }
+      if (System.nanoTime() - exitNanos >= restartDelayMillis() * 1000000L) {
+        final Generation previous = current;
+        try {
+          start();
+          restarts.incrementAndGet();
+        }
+        catch (IOException e) {
+          System.err.println("UltAlprSdkWorkerPool: failed to restart worker #" + index + ": " + e);
+          exitNanos = System.nanoTime(); // Retry after the delay
+          return;
+        }
+        previous.dispose();
+      }
+    }
+
+    /**
+     * Restart delay: exponential backoff while the engine fails to initialize.
+     */
+    long restartDelayMillis() {
+      long delay = options.restartDelayMillis;
+      for (int i = 1; i < initFailures && delay < options.maxRestartDelayMillis; ++i) {
+        delay <<= 1;
+      }
+      return Math.min(delay, options.maxRestartDelayMillis);
+    }
+
+    private void checkLiveness(Process p) {
+      final long now = System.nanoTime();
+      final long heartbeat = requests.getHeartbeat();
+      if (heartbeat != lastHeartbeat) {
+        lastHeartbeat = heartbeat;
+        lastHeartbeatNanos = now;
+      }
+      else if (heartbeat != 0 && now - lastHeartbeatNanos > options.heartbeatTimeoutMillis * 1000000L) {
+        kill(p, "Worker #" + index + " killed: no heartbeat for " + options.heartbeatTimeoutMillis + "ms");
+        return;
+      }
+      if (options.requestTimeoutMillis > 0) {
+        for (Request request : inFlight.values()) {
+          if (now - request.submitNanos > options.requestTimeoutMillis * 1000000L) {
+            request.future.completeExceptionally(new TimeoutException("No result from worker #" + index + " within " + options.requestTimeoutMillis + "ms"));
+            kill(p, "Worker #" + index + " killed: request timed out");
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Kills a hung worker. Its exit is then handled (and the worker restarted) as for a crash.
+     */
+    private void kill(Process p, String reason) {
+      System.err.println("UltAlprSdkWorkerPool: " + reason);
+      failInFlight(reason);
+      p.destroyForcibly();
+    }
+
+    void stop(String reason) {
+      final Process p;
+      final Generation g;
+      synchronized (writeLock) {
+        p = process;
+        g = current;
+        process = null;
+        current = null;
+      }
+      if (p != null) {
+        p.destroy();
+        try {
+          p.waitFor();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      failInFlight(reason);
+      if (g != null) {
+        g.dispose();
+      }
+      try {
+        Files.deleteIfExists(config);
+      }
+      catch (IOException e) {
+        // Ignore
+      }
+    }
+
+    void failInFlight(String reason) {
+      for (Long requestId : new ArrayList<Long>(inFlight.keySet())) {
+        final Request request = inFlight.remove(requestId);
+        if (request != null && request.future.completeExceptionally(new WorkerCrashedException(reason))) {
+          crashedFrames.incrementAndGet();
+        }
+      }
+    }
+
+    WorkerStats stats() {
+      final Process p = process;
+      final boolean alive = (p != null && p.isAlive());
+      final long count = completed.get();
+      final double uptimeSeconds = (System.nanoTime() - startNanos) / 1e9;
+      return new WorkerStats(index, alive ? p.pid() : -1, alive, inFlight.size(), count, crashedFrames.get(), restarts.get(),
+        (alive && uptimeSeconds > 0) ? completedSinceStart.get() / uptimeSeconds : 0.0,
+        (count > 0) ? (processNanos.get() / 1e6) / count : 0.0);
+    }
+  }
+
+  /**
+   * A frame in flight.
+   */
+  private static final class Request {
+    final CompletableFuture<UltAlprSdkResultSnapshot> future;
+    final long submitNanos;
+
+    Request(CompletableFuture<UltAlprSdkResultSnapshot> future, long submitNanos) {
+      this.future = future;
+      this.submitNanos = submitNanos;
+    }
+  }
+
+  /**
+   * The rings shared with one worker process.
+   */
+  private static final class Generation {
+    final Path requestPath;
+    final Path resultPath;
+    final UltAlprSdkMappedRing requests;
+    final UltAlprSdkMappedRing results;
+    Thread reader;
+
+    Generation(Path requestPath, Path resultPath, UltAlprSdkMappedRing requests, UltAlprSdkMappedRing results) {
+      this.requestPath = requestPath;
+      this.resultPath = resultPath;
+      this.requests = requests;
+      this.results = results;
+    }
+
+    void dispose() {
+      try {
+        if (reader != null) {
+          reader.join(); // Exits as soon as the generation isn't the current one
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      try {
+        requests.close();
+        results.close();
+        Files.deleteIfExists(requestPath);
+        Files.deleteIfExists(resultPath);
+      }
+      catch (IOException e) {
+        System.err.println("UltAlprSdkWorkerPool: failed to delete the ring files: " + e);
+      }
+    }
+  }
+}
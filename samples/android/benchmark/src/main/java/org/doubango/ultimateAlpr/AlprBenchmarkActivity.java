@@ -19,6 +19,7 @@ import android.widget.TextView;
 
 import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkLatencyMonitor;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkParallelDeliveryCallback;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
 import org.json.JSONArray;
@@ -382,11 +383,11 @@ public class AlprBenchmarkActivity extends AppCompatActivity {
         mCallback = PARALLEL_MODE ? new MyUltAlprSdkParallelDeliveryCallback((int)(NUM_LOOPS * PERCENT_POSITIVES)) : null;
 
         // Initialize the engine
-        UltAlprSdkResult result = assertIsOk(UltAlprSdkEngine.init(
+        assertIsOk(UltAlprSdkEngine.init(
                 getAssets(),
                 getConfig(),
                 mCallback
-        ));
+        )).close();
     }
 
     @Override
@@ -420,12 +421,14 @@ public class AlprBenchmarkActivity extends AppCompatActivity {
         }
 
         // Warm up to prepare for benchmark
-        assertIsOk(UltAlprSdkEngine.warmUp(images[1].mType));
+        assertIsOk(UltAlprSdkEngine.warmUp(images[1].mType)).close();
 
         textView.setText("*** Started timing... ***");
 
         // Processing
         Log.i(TAG, "*** Started timing... ***");
+        final UltAlprSdkLatencyMonitor latencyMonitor = new UltAlprSdkLatencyMonitor(); // Per-call latency (p50, p99, p999)
+        UltAlprSdkEngine.setLatencyMonitor(latencyMonitor);
         final long startTimeInMillis = SystemClock.uptimeMillis();
         for (Integer i : indices) {
             final AlprImage image = images[i];
@@ -434,13 +437,15 @@ public class AlprBenchmarkActivity extends AppCompatActivity {
                     image.mBuffer,
                     image.mWidth,
                     image.mHeight
-            ));
+            )).close();
         }
         final long endTimeInMillis = SystemClock.uptimeMillis();
+        UltAlprSdkEngine.setLatencyMonitor(null);
         final long elapsedTime = (endTimeInMillis - startTimeInMillis);
         final float estimatedFps = 1000.f / (elapsedTime / (float)NUM_LOOPS);
 
         Log.i(TAG, "Elapsed time: " + elapsedTime + " millis, FrameRate: " + estimatedFps);
+        Log.i(TAG, "Latency: " + latencyMonitor.snapshot());
 
         textView.setText("Elapsed time: " + (endTimeInMillis - startTimeInMillis) + " millis" + ", Frame rate: " + estimatedFps);
 
@@ -453,7 +458,7 @@ public class AlprBenchmarkActivity extends AppCompatActivity {
     @Override
     public void onDestroy() {
         Log.i(TAG, "onDestroy");
-        final UltAlprSdkResult result = assertIsOk(UltAlprSdkEngine.deInit());
+        assertIsOk(UltAlprSdkEngine.deInit()).close();
 
         super.onDestroy();
     }
@@ -589,7 +594,7 @@ public class AlprBenchmarkActivity extends AppCompatActivity {
      * @return the String representing the result
      */
     static final String resultToString(final UltAlprSdkResult result) {
-        return "code: " + result.code() + ", phrase: " + result.phrase() + ", numPlates: " + result.numPlates() + ", json: " + result.json();
+        return result.snapshot().toString();
     }
 
 
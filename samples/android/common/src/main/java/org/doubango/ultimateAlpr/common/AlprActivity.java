@@ -22,8 +22,14 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine;
-import org.doubango.ultimateAlpr.Sdk.UltAlprSdkParallelDeliveryCallback;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrameContext;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrameTracker;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkMotionGate;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkPlateDeduplicator;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkPlateTracker;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultParser;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultSnapshot;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -43,49 +49,84 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
     private boolean mIsPaused = true;
 
     /**
-     * Parallel callback delivery function used by the engine to notify for new deferred results
+     * Receives the deferred results from the parallel callback, with the context of the frame they come from
      */
-    static class MyUltAlprSdkParallelDeliveryCallback extends UltAlprSdkParallelDeliveryCallback {
-        static final String TAG = MyUltAlprSdkParallelDeliveryCallback.class.getCanonicalName();
+    static class MyParallelDeliveryListener implements UltAlprSdkFrameTracker.Listener<UltAlprSdkFrameContext> {
+        static final String TAG = MyParallelDeliveryListener.class.getCanonicalName();
 
         AlprPlateView mAlprPlateView;
-        Size mImageSize;
-        long mTotalDuration = 0;
-        int mOrientation = 0;
+        UltAlprSdkPlateTracker mPlateTracker;
+        UltAlprSdkPlateDeduplicator mPlateDeduplicator;
+        final UltAlprSdkResultParser mResultParser = new UltAlprSdkResultParser(); // Used with the frame tracker's lock held
 
         void setAlprPlateView(@NonNull final AlprPlateView view) {
             mAlprPlateView = view;
         }
 
-        void setImageSize(@NonNull final Size imageSize, @NonNull final int orientation) {
-            mImageSize = imageSize;
-            mOrientation = orientation;
+        void setPlateTracker(final UltAlprSdkPlateTracker tracker) {
+            mPlateTracker = tracker;
         }
 
-        void setDurationTime(final long totalDuration) {
-            mTotalDuration = totalDuration;
+        void setPlateDeduplicator(final UltAlprSdkPlateDeduplicator deduplicator) {
+            mPlateDeduplicator = deduplicator;
         }
 
         @Override
-        public void onNewResult(UltAlprSdkResult result) {
-            Log.d(TAG, AlprUtils.resultToString(result));
-            if (mAlprPlateView!= null) {
-                mAlprPlateView.setResult(result, mImageSize, mTotalDuration, mOrientation);
+        public void onResult(UltAlprSdkResultSnapshot result, UltAlprSdkFrameContext context) {
+            Log.d(TAG, result.toString());
+            trackPlates(mPlateTracker, mResultParser, result);
+            if (context != null) { // Unmatched result: no capture time, Image.getTimestamp() has its own clock
+                logNewPlates(mPlateDeduplicator, result, context.getCaptureTimestamp());
+            }
+            if (mAlprPlateView != null && context != null) {
+                // The image size, orientation and duration are the ones of the frame the result comes from
+                mAlprPlateView.setResult(result, new Size((int)context.getWidth(), (int)context.getHeight()), (Long)context.getUserData(), context.getOrientation());
             }
         }
-        static MyUltAlprSdkParallelDeliveryCallback newInstance() {
-            return new MyUltAlprSdkParallelDeliveryCallback();
+
+        @Override
+        public void onSkipped(UltAlprSdkFrameContext context) {
+            Log.d(TAG, "No result for frame: " + context);
+            trackPlates(mPlateTracker, mResultParser, null);
         }
     }
 
+    /**
+     * Number of frames waiting for their deferred result. Older frames are dropped.
+     */
+    static final int PARALLEL_DELIVERY_WINDOW = 8;
+
     /**
      * The parallel delivery callback. Set to null to disable parallel mode
      * and enforce sequential mode.
      */
-    private MyUltAlprSdkParallelDeliveryCallback mParallelDeliveryCallback;
+    private UltAlprSdkFrameTracker<UltAlprSdkFrameContext> mParallelDeliveryCallback;
+    private MyParallelDeliveryListener mParallelDeliveryListener;
 
     private AlprPlateView mAlprPlateView;
 
+    /**
+     * Skips the static frames (no motion) before inference. Null if disabled.
+     */
+    private UltAlprSdkMotionGate mMotionGate;
+
+    /**
+     * Follows the vehicles across the frames: one event when a vehicle enters, when its best text changes
+     * and when it exits (see onTrackEvent). Null if disabled.
+     */
+    private UltAlprSdkPlateTracker mPlateTracker;
+    private final UltAlprSdkResultParser mResultParser = new UltAlprSdkResultParser(); // Used on the camera thread only (sequential mode)
+
+    /**
+     * Logs each plate once per PLATE_DEDUPLICATION_TTL_MILLIS instead of once per frame. Null if disabled.
+     */
+    private UltAlprSdkPlateDeduplicator mPlateDeduplicator;
+
+    /**
+     * A plate seen again within this delay isn't logged again.
+     */
+    static final long PLATE_DEDUPLICATION_TTL_MILLIS = 10000;
+
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
         Log.i(TAG, "onCreate " + this);
@@ -104,7 +145,38 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
         dummyFile.delete();
 
         // Create parallel delivery callback is enabled
-        mParallelDeliveryCallback = isParallelDeliveryEnabled() ? MyUltAlprSdkParallelDeliveryCallback.newInstance() : null;
+        // Reorder mode: the results reach the listener (and the plate tracker) in frame order
+        if (isParallelDeliveryEnabled()) {
+            mParallelDeliveryListener = new MyParallelDeliveryListener();
+            mParallelDeliveryCallback = new UltAlprSdkFrameTracker<>(mParallelDeliveryListener, PARALLEL_DELIVERY_WINDOW, true);
+        }
+
+        // Create the motion gate if enabled
+        // The whole frame is watched: the detection ROI is defined after rotation while the gate reads the raw Y plane
+        if (isMotionGateEnabled()) {
+            mMotionGate = new UltAlprSdkMotionGate();
+        }
+
+        // Create the plate tracker if enabled
+        if (isPlateTrackingEnabled()) {
+            mPlateTracker = new UltAlprSdkPlateTracker(new UltAlprSdkPlateTracker.Listener() {
+                @Override
+                public void onTrackEvent(int event, UltAlprSdkPlateTracker.Track track) {
+                    AlprActivity.this.onTrackEvent(event, track);
+                }
+            });
+            if (mParallelDeliveryListener != null) {
+                mParallelDeliveryListener.setPlateTracker(mPlateTracker);
+            }
+        }
+
+        // Create the plate deduplicator if enabled
+        if (isPlateDeduplicationEnabled()) {
+            mPlateDeduplicator = new UltAlprSdkPlateDeduplicator(PLATE_DEDUPLICATION_TTL_MILLIS, 4);
+            if (mParallelDeliveryListener != null) {
+                mParallelDeliveryListener.setPlateDeduplicator(mPlateDeduplicator);
+            }
+        }
 
         // Init the engine
         final JSONObject config = getJsonConfig();
@@ -124,6 +196,7 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
                 mParallelDeliveryCallback
         ));
         Log.i(TAG,"ALPR engine initialized: " + AlprUtils.resultToString(alprResult));
+        alprResult.close();
 
         // Activate the license
         final boolean isActivationPossible = !getActivationServerUrl().isEmpty() && !getActivationMasterOrSlaveKey().isEmpty();
@@ -140,22 +213,35 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
                         getAssets(),
                         config.toString(),
                         mParallelDeliveryCallback
-                ));
+                )).close();
             }
         }
 
         // WarmUp to speedup first inference
-        AlprUtils.assertIsOk(UltAlprSdkEngine.warmUp(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV420P));
+        AlprUtils.assertIsOk(UltAlprSdkEngine.warmUp(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV420P)).close();
     }
 
     @Override
     public void onDestroy() {
         Log.i(TAG, "onDestroy " + this);
+        if (mMotionGate != null) {
+            Log.i(TAG, "Motion gate: " + mMotionGate.getStats());
+        }
+        if (mPlateTracker != null) {
+            synchronized (mPlateTracker) {
+                mPlateTracker.flush();
+                Log.i(TAG, "Plate tracker: " + mPlateTracker.getObservations() + " plates, " + mPlateTracker.getEvents() + " events");
+            }
+        }
+        if (mPlateDeduplicator != null) {
+            Log.i(TAG, "Plate deduplicator: " + mPlateDeduplicator.getMisses() + " new, " + mPlateDeduplicator.getHits() + " duplicates, " + mPlateDeduplicator.getExpirations() + " expired");
+        }
         // DeInitialize the engine. This will stop all threads and cleanup all pending calls.
         // If you're performing a work in a parallel callback thread, then this function will
         // block until the end.
         final UltAlprSdkResult result = AlprUtils.assertIsOk(UltAlprSdkEngine.deInit());
         Log.i(TAG,"ALPR engine deInitialized: " + AlprUtils.resultToString(result));
+        result.close();
 
         super.onDestroy();
     }
@@ -177,8 +263,8 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
     @Override
     public void setAlprPlateView(@NonNull final AlprPlateView view) {
         mAlprPlateView = view;
-        if (mParallelDeliveryCallback != null) {
-            mParallelDeliveryCallback.setAlprPlateView(view);
+        if (mParallelDeliveryListener != null) {
+            mParallelDeliveryListener.setAlprPlateView(view);
         }
         final List<Float> roi = getDetectROI();
         assert(roi.size() == 4);
@@ -216,17 +302,31 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
             case 0: default: exifOrientation = ExifInterface.ORIENTATION_NORMAL; break;
         }
 
-        // Update image for the async callback
-        if (mParallelDeliveryCallback != null) {
-            mParallelDeliveryCallback.setImageSize((jpegOrientation % 180) == 0 ? imageSize : new Size(imageSize.getHeight(), imageSize.getWidth()), jpegOrientation);
+        final Size displaySize = (jpegOrientation % 180) == 0 ? imageSize : new Size(imageSize.getHeight(), imageSize.getWidth());
+        final long captureTimestamp = image.getTimestamp();
+
+        // Skip the frame if nothing moved since the previous ones (most frames don't have any plate)
+        final Image.Plane[] planes = image.getPlanes();
+        if (mMotionGate != null && !mMotionGate.shouldProcess(planes[0].getBuffer(), imageSize.getWidth(), imageSize.getHeight(), planes[0].getRowStride())) {
+            image.close();
+            mIsProcessing = false;
+            // No observation for this frame: the tracks age as if nothing was seen. In parallel mode the frame goes through
+            // the frame tracker (reported to onSkipped) to reach the plate tracker in order with the pending results.
+            if (mParallelDeliveryCallback != null) {
+                mParallelDeliveryCallback.skip(new UltAlprSdkFrameContext(captureTimestamp, null, displaySize.getWidth(), displaySize.getHeight(), jpegOrientation, 0L));
+            } else {
+                trackPlates(mPlateTracker, mResultParser, null);
+            }
+            return;
         }
 
         // The actual ALPR inference is done here
         // Do not worry about the time taken to perform the inference, the caller
         // (most likely the camera fragment) set the current image using a background thread.
-        final Image.Plane[] planes = image.getPlanes();
         final long startTimeInMillis = SystemClock.uptimeMillis();
-        final UltAlprSdkResult result = /*AlprUtils.assertIsOk*/(UltAlprSdkEngine.process(
+        final long durationInMillis;
+        final UltAlprSdkResultSnapshot snapshot; // Single fetch for all fields, still valid once the result is closed
+        try (final UltAlprSdkResult result = /*AlprUtils.assertIsOk*/(UltAlprSdkEngine.process(
                 ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV420P,
                 planes[0].getBuffer(),
                 planes[1].getBuffer(),
@@ -238,11 +338,15 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
                 planes[2].getRowStride(),
                 planes[1].getPixelStride(),
                 exifOrientation
-        ));
-        final long durationInMillis = SystemClock.uptimeMillis() - startTimeInMillis; // Total time: Inference + image processing (chroma conversion, rotation...)
+        ))) {
+            durationInMillis = SystemClock.uptimeMillis() - startTimeInMillis; // Total time: Inference + image processing (chroma conversion, rotation...)
+
+            // Attach the frame's context to get it back with the deferred result
+            if (mParallelDeliveryCallback != null) {
+                mParallelDeliveryCallback.track(result, new UltAlprSdkFrameContext(captureTimestamp, null, displaySize.getWidth(), displaySize.getHeight(), jpegOrientation, durationInMillis));
+            }
 
-        if (mParallelDeliveryCallback != null) {
-            mParallelDeliveryCallback.setDurationTime(durationInMillis);
+            snapshot = result.snapshot();
         }
 
         // Release the image and signal the inference process is finished
@@ -250,20 +354,71 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
 
         mIsProcessing = false;
 
-        if (result.isOK()) {
-            Log.d(TAG, AlprUtils.resultToString(result));
+        if (snapshot.isOK()) {
+            Log.d(TAG, snapshot.toString());
         } else {
-            Log.e(TAG, AlprUtils.resultToString(result));
+            Log.e(TAG, snapshot.toString());
         }
 
         // Display the result if sequential mode. Otherwise, let the parallel callback
         // display the result when provided.
         // Starting version 3.2 the callback will be called even if the result is empty
-        if (mAlprPlateView != null && (mParallelDeliveryCallback == null || (result.numPlates() == 0 && result.numCars() == 0))) { // means sequential call or no plate/car to expect from the parallel delivery callback
-            mAlprPlateView.setResult(result, (jpegOrientation % 180) == 0 ? imageSize : new Size(imageSize.getHeight(), imageSize.getWidth()), durationInMillis, jpegOrientation);
+        if (mParallelDeliveryCallback == null || (snapshot.numPlates() == 0 && snapshot.numCars() == 0)) { // means sequential call or no plate/car to expect from the parallel delivery callback
+            if (mParallelDeliveryCallback == null) { // In parallel mode the listener feeds the tracker with all the results, empty ones included
+                trackPlates(mPlateTracker, mResultParser, snapshot);
+            }
+            logNewPlates(mPlateDeduplicator, snapshot, captureTimestamp);
+            if (mAlprPlateView != null) {
+                mAlprPlateView.setResult(snapshot, displaySize, durationInMillis, jpegOrientation);
+            }
         }
     }
 
+    /**
+     * Feeds the tracker with a frame. In parallel mode all the frames, motion-gated ones included, come from the
+     * listener in frame order. The tracker is locked: onTrackEvent may be called from the camera or the callback thread.
+     * @param snapshot The frame's result, null if the frame wasn't processed (motion gate) or its result was lost
+     */
+    static void trackPlates(final UltAlprSdkPlateTracker tracker, final UltAlprSdkResultParser parser, final UltAlprSdkResultSnapshot snapshot) {
+        if (tracker == null || (snapshot != null && !snapshot.isOK())) {
+            return;
+        }
+        final boolean hasPlatesOrCars = snapshot != null && snapshot.hasPlatesOrCars();
+        if (hasPlatesOrCars) {
+            parser.reset(snapshot.json()); // Encoded into the parser's own buffer, reused across the frames
+        }
+        synchronized (tracker) {
+            tracker.update(hasPlatesOrCars ? parser : null);
+        }
+    }
+
+    /**
+     * Logs the plates not seen within the deduplicator's TTL. The deduplicator is thread-safe.
+     * @param timestampNanos Capture time of the frame, in nanoseconds
+     */
+    static void logNewPlates(final UltAlprSdkPlateDeduplicator deduplicator, final UltAlprSdkResultSnapshot snapshot, final long timestampNanos) {
+        if (deduplicator == null || !snapshot.hasPlatesOrCars()) {
+            return;
+        }
+        final List<AlprUtils.Plate> plates = AlprUtils.removeDuplicates(AlprUtils.extractPlates(snapshot), deduplicator, 0, timestampNanos / 1000000L);
+        for (final AlprUtils.Plate plate : plates) {
+            if (!plate.getNumber().isEmpty()) {
+                Log.i(TAG, "New plate: " + plate.getNumber() + " (" + plate.getRecognitionConfidence() + "%)");
+            }
+        }
+    }
+
+    /**
+     * Called when a vehicle enters, when its best text changes and when it exits. This is where to forward
+     * the plates downstream: a vehicle produces a few events instead of one result per frame.
+     * @param event UltAlprSdkPlateTracker.EVENT_*
+     * @param track Owned by the tracker, valid during the call only
+     */
+    protected void onTrackEvent(final int event, final UltAlprSdkPlateTracker.Track track) {
+        final String name = (event == UltAlprSdkPlateTracker.EVENT_ENTER) ? "enter" : ((event == UltAlprSdkPlateTracker.EVENT_UPDATE) ? "update" : "exit");
+        Log.i(TAG, "Track #" + track.getId() + " " + name + ": " + (track.hasText() ? track.getText() : "<car>") + " (" + track.getRecognitionConfidence() + "%, " + track.getHits() + " frames)");
+    }
+
     /**
      * Gets the base folder defining a path where the application can write private
      * data.
@@ -310,4 +465,32 @@ public abstract class AlprActivity extends AppCompatActivity implements AlprCame
     protected abstract boolean isParallelDeliveryEnabled();
 
     protected abstract List<Float> getDetectROI();
+
+    /**
+     * Whether to skip the static frames before inference (see UltAlprSdkMotionGate). Frames are
+     * still processed periodically (keyframes) to read the plates of stopped vehicles.
+     * Opt-in: override to enable.
+     * @return false by default
+     */
+    protected boolean isMotionGateEnabled() {
+        return false;
+    }
+
+    /**
+     * Whether to follow the vehicles across the frames (see UltAlprSdkPlateTracker and onTrackEvent).
+     * Opt-in: override to enable.
+     * @return false by default
+     */
+    protected boolean isPlateTrackingEnabled() {
+        return false;
+    }
+
+    /**
+     * Whether to log each plate once per PLATE_DEDUPLICATION_TTL_MILLIS (see UltAlprSdkPlateDeduplicator).
+     * Lighter than the tracking, text only.
+     * @return false by default
+     */
+    protected boolean isPlateDeduplicationEnabled() {
+        return false;
+    }
 }
\ No newline at end of file
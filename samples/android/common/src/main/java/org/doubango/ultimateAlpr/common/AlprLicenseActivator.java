@@ -138,6 +138,7 @@ public class AlprLicenseActivator {
                             throw new AssertionError("Failed to request runtime key: " + result.phrase());
                         }
                         data.put("runtimeKey", result.json());
+                        result.close();
                         writer.write(data.toString());
 
                         writer.flush();
@@ -25,6 +25,7 @@ import android.view.View;
 import androidx.annotation.NonNull;
 
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultSnapshot;
 
 import java.util.HashMap;
 import java.util.Iterator;
@@ -179,7 +180,16 @@ public class AlprPlateView extends View {
      * @param result
      * @param imageSize
      */
-    public synchronized void setResult(@NonNull final UltAlprSdkResult result, @NonNull final Size imageSize, @NonNull final long durationTime, @NonNull final int orientation) {
+    public void setResult(@NonNull final UltAlprSdkResult result, @NonNull final Size imageSize, @NonNull final long durationTime, @NonNull final int orientation) {
+        setResult(result.snapshot(), imageSize, durationTime, orientation);
+    }
+
+    /**
+     *
+     * @param result
+     * @param imageSize
+     */
+    public synchronized void setResult(@NonNull final UltAlprSdkResultSnapshot result, @NonNull final Size imageSize, @NonNull final long durationTime, @NonNull final int orientation) {
         mPlates = AlprUtils.extractPlates(result);
         mImageSize = imageSize;
         mDurationTimeMillis = durationTime;
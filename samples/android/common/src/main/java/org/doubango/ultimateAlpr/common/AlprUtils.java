@@ -13,14 +13,15 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkPlateDeduplicator;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultParser;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultSnapshot;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -135,146 +136,155 @@ public class AlprUtils {
     }
 
     static public final long extractFrameId(final UltAlprSdkResult result) {
-        final String jsonString = result.json();
-        if (jsonString != null) {
-            try {
-                final JSONObject jObject = new JSONObject(jsonString);
-                return jObject.getLong("frame_id");
-            }
-            catch (JSONException e) { }
-        }
-        return 0;
+        final long frameId = result.frameId(); // Only the bytes up to "frame_id" are scanned
+        return frameId < 0 ? 0 : frameId;
     }
 
     static public final List<Plate> extractPlates(final UltAlprSdkResult result) {
+        return extractPlates(result.snapshot()); // Single fetch for all fields
+    }
+
+    static public final List<Plate> extractPlates(final UltAlprSdkResultSnapshot snapshot) {
         final List<Plate> plates = new LinkedList<>();
-        if (!result.isOK() || (result.numPlates() == 0 && result.numCars() == 0)) {
+        if (!snapshot.hasPlatesOrCars()) {
             return plates;
         }
-        final String jsonString = result.json();
+        final String jsonString = snapshot.json();
         //final String jsonString = "{\"frame_id\":178,\"lantency\":0,\"plates\":[{\"car\":{\"color\":[{\"confidence\":59.76562,\"klass\":11,\"name\":\"white\"},{\"confidence\":27.73438,\"klass\":0,\"name\":\"black\"},{\"confidence\":11.32812,\"klass\":9,\"name\":\"silver\"},{\"confidence\":0.390625,\"klass\":4,\"name\":\"gray\"},{\"confidence\":0.390625,\"klass\":5,\"name\":\"green\"}],\"confidence\":89.45312,\"makeModelYear\":[{\"confidence\":5.46875,\"klass\":8072,\"make\":\"nissan\",\"model\":\"nv\",\"year\":2012},{\"confidence\":3.90625,\"klass\":4885,\"make\":\"gmc\",\"model\":\"yukon 1500\",\"year\":2007},{\"confidence\":1.953125,\"klass\":3950,\"make\":\"ford\",\"model\":\"f150\",\"year\":2001},{\"confidence\":1.953125,\"klass\":4401,\"make\":\"ford\",\"model\":\"ranger\",\"year\":2008},{\"confidence\":1.953125,\"klass\":3954,\"make\":\"ford\",\"model\":\"f150\",\"year\":2005}],\"warpedBox\":[37.26704,655.171,253.8487,655.171,253.8487,897.6935,37.26704,897.6935]},\"confidences\":[86.99596,99.60938],\"country\":[{\"code\":\"RUS\",\"confidence\":99.60938,\"klass\":65,\"name\":\"Russian Federation\",\"other\":\"Private vehicle\",\"state\":\"Republic of Karelia\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":88,\"name\":\"United States of America\",\"state\":\"Iowa\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":80,\"name\":\"United States of America\",\"state\":\"Connecticut\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":81,\"name\":\"United States of America\",\"state\":\"Delaware\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":82,\"name\":\"United States of America\",\"state\":\"Florida\"}],\"text\":\"K643ET10\",\"warpedBox\":[61.73531,819.796,145.57,819.796,145.57,881.916,61.73531,881.916]}]}";
         if (jsonString == null) { // No plate
             return plates;
         }
 
+        final UltAlprSdkResultParser parser = sResultParsers.get();
         try {
-            final JSONObject jObject = new JSONObject(jsonString);
-            if (jObject.has("plates")) {
-                final JSONArray jPlates = jObject.getJSONArray("plates");
-                for (int i = 0; i < jPlates.length(); ++i) {
-                    final JSONObject jPlate = jPlates.getJSONObject(i);
-
-                    // The plate itself (backward-compatible with 2.0.0)
-                    final Plate plate = new Plate();
-                    plate.mWarpedBox = new float[8];
-                    if (jPlate.has("text")) { // Starting 3.2 it's possible to have cars without plates when enabled
-                        final JSONArray jConfidences = jPlate.getJSONArray("confidences");
-                        final JSONArray jWarpedBox = jPlate.getJSONArray("warpedBox");
-                        plate.mNumber = jPlate.getString("text");
-                        for (int j = 0; j < 8; ++j) {
-                            plate.mWarpedBox[j] = (float) jWarpedBox.getDouble(j);
-                        }
-                        plate.mRecognitionConfidence = (float) jConfidences.getDouble(0);
-                        plate.mDetectionConfidence = (float) jConfidences.getDouble(1);
+            parser.reset(jsonString);
+            UltAlprSdkResultParser.Plate jPlate;
+            while ((jPlate = parser.nextPlate()) != null) {
+                // The plate itself (backward-compatible with 2.0.0)
+                final Plate plate = new Plate();
+                plate.mWarpedBox = new float[8];
+                if (jPlate.hasText()) { // Starting 3.2 it's possible to have cars without plates when enabled
+                    plate.mNumber = jPlate.getText().toString();
+                    System.arraycopy(jPlate.getWarpedBox(), 0, plate.mWarpedBox, 0, 8);
+                    plate.mRecognitionConfidence = jPlate.getRecognitionConfidence();
+                    plate.mDetectionConfidence = jPlate.getDetectionConfidence();
+                }
+                else {
+                    plate.mNumber = "";
+                    plate.mRecognitionConfidence = 0.f;
+                    plate.mDetectionConfidence = 0.f;
+                }
+
+                // License Plate Country Identification [LPCI] (Added in 3.0.0): https://www.doubango.org/SDKs/anpr/docs/Features.html#license-plate-country-identification-lpci
+                // Only the country with the highest confidence is parsed
+                if (jPlate.hasCountry()) {
+                    plate.mCountries = new LinkedList<>();
+                    final Country country = new Country();
+                    country.mKlass = jPlate.getCountryKlass();
+                    country.mConfidence = jPlate.getCountryConfidence();
+                    country.mCode = jPlate.getCountryCode().toString(); // ISO-code: https://en.wikipedia.org/wiki/ISO_3166-1_alpha-3
+                    country.mName = jPlate.getCountryName().toString(); // Name in English
+                    if (!jPlate.getCountryState().isEmpty()) { // optional
+                        country.mState = jPlate.getCountryState().toString();
                     }
-                    else {
-                        plate.mNumber = "";
-                        plate.mRecognitionConfidence = 0.f;
-                        plate.mDetectionConfidence = 0.f;
+                    if (!jPlate.getCountryOther().isEmpty()) { // optional
+                        country.mOther = jPlate.getCountryOther().toString();
                     }
+                    plate.mCountries.add(country);
+                }
 
-                    // License Plate Country Identification [LPCI] (Added in 3.0.0): https://www.doubango.org/SDKs/anpr/docs/Features.html#license-plate-country-identification-lpci
-                    if (jPlate.has("country")) {
-                        plate.mCountries = new LinkedList<>();
-                        final JSONArray jCountries = jPlate.getJSONArray("country");
-                        for (int k = 0; k < jCountries.length(); ++k) {
-                            final JSONObject jCountry = jCountries.getJSONObject(k);
-                            final Country country = new Country();
-                            country.mKlass = jCountry.getInt("klass");
-                            country.mConfidence = (float) jCountry.getDouble("confidence");
-                            country.mCode = jCountry.getString("code"); // ISO-code: https://en.wikipedia.org/wiki/ISO_3166-1_alpha-3
-                            country.mName = jCountry.getString("name"); // Name in English
-                            if (jCountry.has("state")) { // optional
-                                country.mState = jCountry.getString("state");
-                            }
-                            if (jCountry.has("other")) { // optional
-                                country.mOther = jCountry.getString("other");
-                            }
-
-                            plate.mCountries.add(country);
+                // Car (Added in 3.0.0)
+                if (jPlate.hasCar()) {
+                    final UltAlprSdkResultParser.Car jCar = jPlate.getCar();
+                    plate.mCar = new Car();
+                    plate.mCar.mConfidence = jCar.getConfidence();
+                    plate.mCar.mWarpedBox = jCar.getWarpedBox().clone();
+
+                    // Vehicle Color Recognition [VCR] (added in 3.0.0) : https://www.doubango.org/SDKs/anpr/docs/Features.html#vehicle-color-recognition-vcr
+                    if (jCar.hasColor()) {
+                        plate.mCar.mColors = new LinkedList<>();
+                        for (int k = 0; k < jCar.getNumColors(); ++k) {
+                            plate.mCar.mColors.add(toAttribute(jCar.getColor(k)));
                         }
                     }
 
-                    // Car (Added in 3.0.0)
-                    if (jPlate.has("car")) {
-                        final JSONObject jCar = jPlate.getJSONObject("car");
-                        final JSONArray jCarWarpedBox = jCar.getJSONArray("warpedBox");
-                        plate.mCar = new Car();
-                        plate.mCar.mConfidence = (float) jCar.getDouble("confidence");
-                        plate.mCar.mWarpedBox = new float[8];
-                        for (int j = 0; j < 8; ++j) {
-                            plate.mCar.mWarpedBox[j] = (float) jCarWarpedBox.getDouble(j);
-                        }
-
-                        // Vehicle Color Recognition [VCR] (added in 3.0.0) : https://www.doubango.org/SDKs/anpr/docs/Features.html#vehicle-color-recognition-vcr
-                        if (jCar.has("color")) {
-                            plate.mCar.mColors = new LinkedList<>();
-                            final JSONArray jColors = jCar.getJSONArray("color");
-                            for (int k = 0; k < jColors.length(); ++k) {
-                                final JSONObject jColor = jColors.getJSONObject(k);
-                                final Car.Attribute color = new Car.Attribute();
-                                color.mKlass = jColor.getInt("klass");
-                                color.mConfidence = (float) jColor.getDouble("confidence");
-                                color.mName = jColor.getString("name"); // Name in English
-
-                                plate.mCar.mColors.add(color);
-                            }
-                        }
-
-                        // Vehicle Make Model Recognition [VMMR] (added in 3.0.0): https://www.doubango.org/SDKs/anpr/docs/Features.html#vehicle-make-model-recognition-vmmr
-                        if (jCar.has("makeModelYear")) {
-                            plate.mCar.mMakesModelsYears = new LinkedList<>();
-                            final JSONArray jMMYs = jCar.getJSONArray("makeModelYear");
-                            for (int k = 0; k < jMMYs.length(); ++k) {
-                                final JSONObject jMMY = jMMYs.getJSONObject(k);
-                                final Car.MakeModelYear mmy = new Car.MakeModelYear();
-                                mmy.mKlass = jMMY.getInt("klass");
-                                mmy.mConfidence = (float) jMMY.getDouble("confidence");
-                                mmy.mMake = jMMY.getString("make");
-                                mmy.mModel = jMMY.getString("model");
-                                mmy.mYear = jMMY.get("year").toString(); // Maybe Integer or String or whatever
-
-                                plate.mCar.mMakesModelsYears.add(mmy);
-                            }
+                    // Vehicle Make Model Recognition [VMMR] (added in 3.0.0): https://www.doubango.org/SDKs/anpr/docs/Features.html#vehicle-make-model-recognition-vmmr
+                    if (jCar.hasMakeModelYear()) {
+                        plate.mCar.mMakesModelsYears = new LinkedList<>();
+                        for (int k = 0; k < jCar.getNumMakeModelYears(); ++k) {
+                            final UltAlprSdkResultParser.MakeModelYear jMMY = jCar.getMakeModelYear(k);
+                            final Car.MakeModelYear mmy = new Car.MakeModelYear();
+                            mmy.mKlass = jMMY.getKlass();
+                            mmy.mConfidence = jMMY.getConfidence();
+                            mmy.mMake = jMMY.getMake().toString();
+                            mmy.mModel = jMMY.getModel().toString();
+                            mmy.mYear = jMMY.getYear().toString(); // Maybe Integer or String or whatever
+
+                            plate.mCar.mMakesModelsYears.add(mmy);
                         }
+                    }
 
-                        // Vehicle Body Style Recognition [VBSR] (added in 3.2.0): https://www.doubango.org/SDKs/anpr/docs/Features.html#features-vehiclebodystylerecognition
-                        if (jCar.has("bodyStyle")) {
-                            plate.mCar.mBodyStyles = new LinkedList<>();
-                            final JSONArray jBodyStyles = jCar.getJSONArray("bodyStyle");
-                            for (int k = 0; k < jBodyStyles.length(); ++k) {
-                                final JSONObject jBodyStyle = jBodyStyles.getJSONObject(k);
-                                final Car.Attribute bodyStyle = new Car.Attribute();
-                                bodyStyle.mKlass = jBodyStyle.getInt("klass");
-                                bodyStyle.mConfidence = (float) jBodyStyle.getDouble("confidence");
-                                bodyStyle.mName = jBodyStyle.getString("name"); // Name in English
-
-                                plate.mCar.mBodyStyles.add(bodyStyle);
-                            }
+                    // Vehicle Body Style Recognition [VBSR] (added in 3.2.0): https://www.doubango.org/SDKs/anpr/docs/Features.html#features-vehiclebodystylerecognition
+                    if (jCar.hasBodyStyle()) {
+                        plate.mCar.mBodyStyles = new LinkedList<>();
+                        for (int k = 0; k < jCar.getNumBodyStyles(); ++k) {
+                            plate.mCar.mBodyStyles.add(toAttribute(jCar.getBodyStyle(k)));
                         }
                     }
-
-                    plates.add(plate);
                 }
+
+                plates.add(plate);
             }
         }
-        catch (JSONException e) {
+        catch (IllegalArgumentException e) { // Malformed JSON
             e.printStackTrace();
             Log.e(TAG, e.toString());
         }
         return plates;
     }
 
+    private static Car.Attribute toAttribute(final UltAlprSdkResultParser.Attribute jAttribute) {
+        final Car.Attribute attribute = new Car.Attribute();
+        attribute.mKlass = jAttribute.getKlass();
+        attribute.mConfidence = jAttribute.getConfidence();
+        attribute.mName = jAttribute.getName().toString(); // Name in English
+        return attribute;
+    }
+
+    /**
+     * Streaming parsers (no org.json tree per frame), one per thread: the results are delivered on the camera
+     * thread in sequential mode and on the engine's thread in parallel mode.
+     * All the colors/makes/models are kept for the fusion done by {@link AlprPlateView}.
+     */
+    private static final ThreadLocal<UltAlprSdkResultParser> sResultParsers = new ThreadLocal<UltAlprSdkResultParser>() {
+        @Override
+        protected UltAlprSdkResultParser initialValue() {
+            final UltAlprSdkResultParser parser = new UltAlprSdkResultParser();
+            parser.setMaxCandidates(Integer.MAX_VALUE);
+            return parser;
+        }
+    };
+
+    /**
+     * Removes the plates already seen by the camera within the deduplicator's TTL, e.g. before forwarding
+     * the plates downstream: a vehicle is then forwarded once instead of once per frame.
+     * The cars without plate are kept.
+     * @param plates The plates extracted from a result. Modified in place.
+     * @param deduplicator The deduplicator, could be shared by all the cameras
+     * @param cameraId The camera the plates come from
+     * @param timestampMillis Time the frame was captured, in milliseconds
+     * @return The same list, with the new plates only
+     */
+    static public final List<Plate> removeDuplicates(final List<Plate> plates, @NonNull final UltAlprSdkPlateDeduplicator deduplicator, final long cameraId, final long timestampMillis) {
+        final Iterator<Plate> it = plates.iterator();
+        while (it.hasNext()) {
+            if (deduplicator.isDuplicate(cameraId, it.next().getNumber(), timestampMillis)) {
+                it.remove();
+            }
+        }
+        return plates;
+    }
+
     public static <K, V> V getOrDefault(@NonNull Map<K, V> map, K key, V defaultValue) {
         V v;
         return (((v = map.get(key)) != null) || map.containsKey(key))
@@ -289,8 +299,9 @@ public class AlprUtils {
      * @return The same result
      */
     static public final UltAlprSdkResult assertIsOk(final UltAlprSdkResult result) {
-        if (!result.isOK()) {
-            throw new AssertionError("Operation failed: " + result.phrase());
+        final UltAlprSdkResultSnapshot snapshot = result.snapshot();
+        if (!snapshot.isOK()) {
+            throw new AssertionError("Operation failed: " + snapshot.phrase());
         }
         return result;
     }
@@ -301,7 +312,7 @@ public class AlprUtils {
      * @return
      */
     static public final String resultToString(final UltAlprSdkResult result) {
-        return "code: " + result.code() + ", phrase: " + result.phrase() + ", numPlates: " + result.numPlates() + ", json: " + result.json();
+        return result.snapshot().toString();
     }
 
     /**
@@ -0,0 +1,85 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-call cost of the JNI accessors of {@link UltAlprSdkResult}.
+ * json() crosses JNI and builds a new String (modified UTF-8 conversion) on every call: compare with the
+ * cached {@link UltAlprSdkResult#snapshot()} and with a copy + snapshot, which is what a callback keeping the result pays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessorBenchmark {
+
+   private UltAlprSdkResult result;
+
+   @Setup
+   public void setup() throws IOException {
+      BenchmarkEnv.init(null);
+      final BufferedImage bgr = BenchmarkEnv.readBGR("multi.jpg");
+      result = BenchmarkEnv.process(FrameFactory.create(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGR24, BenchmarkEnv.pixels(bgr), bgr.getWidth(), bgr.getHeight()));
+      if (!result.isOK() || result.numPlates() == 0) {
+         throw new IOException("Unexpected result: " + result.json());
+      }
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      result.close();
+      BenchmarkEnv.deInit();
+   }
+
+   @Benchmark
+   public int code() {
+      return result.code();
+   }
+
+   @Benchmark
+   public long numPlates() {
+      return result.numPlates();
+   }
+
+   @Benchmark
+   public String json() {
+      return result.json();
+   }
+
+   @Benchmark
+   public UltAlprSdkResultSnapshot snapshotCached() {
+      return result.snapshot();
+   }
+
+   @Benchmark
+   public UltAlprSdkResultSnapshot copyAndSnapshot() {
+      try (UltAlprSdkResult copy = new UltAlprSdkResult(result)) {
+         return copy.snapshot();
+      }
+   }
+}
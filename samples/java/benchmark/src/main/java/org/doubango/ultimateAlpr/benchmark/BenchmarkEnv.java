@@ -0,0 +1,107 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkParallelDeliveryCallback;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+
+/**
+ * Environment shared by the benchmarks: native library, assets and engine configuration.
+ * Set using system properties (forwarded to the forked JVMs by JMH):
+ *  - "alpr.assets": path to the assets folder. Default: "../../../assets".
+ *  - "alpr.tokendata": base64 license token. Default: none (trial).
+ *  - "alpr.openvino": whether to enable OpenVINO. Default: true.
+ */
+final class BenchmarkEnv {
+   static final String ASSETS_FOLDER = System.getProperty("alpr.assets", "../../../assets");
+   static final String TOKEN_DATA = System.getProperty("alpr.tokendata", "");
+   static final boolean OPENVINO_ENABLED = Boolean.parseBoolean(System.getProperty("alpr.openvino", "true"));
+
+   static {
+      System.loadLibrary(System.getProperty("os.name").toLowerCase().contains("win") ? "ultimateALPR-SDK" : "ultimate_alpr-sdk");
+   }
+
+   private BenchmarkEnv() {
+   }
+
+   // https://www.doubango.org/SDKs/anpr/docs/Configuration_options.html
+   static String config() {
+      return String.format(
+         "{" +
+         "\"debug_level\": \"warn\"," +
+         "\"num_threads\": -1," +
+         "\"gpgpu_enabled\": true," +
+         "\"openvino_enabled\": %s," +
+         "\"detect_minscore\": 0.3," +
+         "\"pyramidal_search_enabled\": true," +
+         "\"recogn_minscore\": 0.2," +
+         "\"recogn_score_type\": \"min\"," +
+         "\"assets_folder\": \"%s\"," +
+         "\"charset\": \"latin\"," +
+         "\"license_token_data\": \"%s\"" +
+         "}",
+         OPENVINO_ENABLED ? "true" : "false",
+         ASSETS_FOLDER,
+         TOKEN_DATA
+      );
+   }
+
+   static void init(UltAlprSdkParallelDeliveryCallback parallelDeliveryCallback) throws IOException {
+      check("Init", parallelDeliveryCallback == null
+         ? UltAlprSdkEngine.init(config())
+         : UltAlprSdkEngine.init(config(), parallelDeliveryCallback));
+   }
+
+   static void deInit() throws IOException {
+      check("DeInit", UltAlprSdkEngine.deInit());
+   }
+
+   static void check(String functionName, UltAlprSdkResult result) throws IOException {
+      try (result) {
+         if (!result.isOK()) {
+            throw new IOException(String.format("%s: Execution failed: %s", functionName, result.json()));
+         }
+      }
+   }
+
+   static UltAlprSdkResult process(UltAlprSdkFrame frame) {
+      return frame.isPlanar()
+         ? UltAlprSdkEngine.process(frame.getImageType(), frame.getData(), frame.getUPlane(), frame.getVPlane(),
+            frame.getWidth(), frame.getHeight(), frame.getStride(), frame.getUStride(), frame.getVStride(), frame.getUVPixelStride(), frame.getExifOrientation())
+         : UltAlprSdkEngine.process(frame.getImageType(), frame.getData(), frame.getWidth(), frame.getHeight(), frame.getStride(), frame.getExifOrientation());
+   }
+
+   /**
+    * Decodes an image from the assets/images folder into a BGR24 buffered image.
+    */
+   static BufferedImage readBGR(String name) throws IOException {
+      final File file = new File(new File(ASSETS_FOLDER, "images"), name);
+      final BufferedImage decoded = ImageIO.read(file);
+      if (decoded == null) {
+         throw new IOException("Failed to decode: " + file.getAbsolutePath());
+      }
+      if (decoded.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+         return decoded;
+      }
+      final BufferedImage bgr = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+      bgr.getGraphics().drawImage(decoded, 0, 0, null);
+      return bgr;
+   }
+
+   static byte[] pixels(BufferedImage bgr) {
+      return ((DataBufferByte) bgr.getRaster().getDataBuffer()).getData();
+   }
+}
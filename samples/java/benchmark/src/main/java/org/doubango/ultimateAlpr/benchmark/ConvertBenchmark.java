@@ -0,0 +1,130 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkPixelConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pixel format conversion cost: {@link UltAlprSdkPixelConverter} kernels compared with the per-pixel conversion writing
+ * to a direct ByteBuffer (what FrameFactory and most integrations do). The "scalar*" benchmarks are the baselines.
+ * The images are random pixels generated at setup, the benchmarks don't need the engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConvertBenchmark {
+
+   @Param({ "1280x720", "1920x1080" })
+   public String size;
+
+   private int width;
+   private int height;
+   private int[] argb;
+   private byte[] y;
+   private byte[] uv; // NV12
+   private byte[] u;
+   private byte[] v;
+   private byte[] bgr;
+   private byte[] half;
+   private ByteBuffer direct;
+
+   @Setup
+   public void setup() {
+      final String[] dims = size.split("x");
+      width = Integer.parseInt(dims[0]);
+      height = Integer.parseInt(dims[1]);
+      final Random random = new Random(1);
+      argb = new int[width * height];
+      for (int i = 0; i < argb.length; ++i) {
+         argb[i] = random.nextInt() | 0xFF000000;
+      }
+      y = new byte[width * height];
+      uv = new byte[width * (height >> 1)];
+      u = new byte[(width >> 1) * (height >> 1)];
+      v = new byte[u.length];
+      bgr = new byte[width * height * 3];
+      half = new byte[(width >> 1) * (height >> 1) * 3];
+      UltAlprSdkPixelConverter.argbToBgr24(argb, 0, width, width, height, bgr, 0, width * 3);
+      direct = ByteBuffer.allocateDirect(bgr.length);
+   }
+
+   /** Baseline: per-pixel luma written to a direct buffer. */
+   @Benchmark
+   public ByteBuffer scalarArgbToY() {
+      direct.clear();
+      for (int j = 0; j < height; ++j) {
+         for (int i = 0; i < width; ++i) {
+            final int p = argb[j * width + i];
+            final int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            direct.put((byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16));
+         }
+      }
+      return direct;
+   }
+
+   @Benchmark
+   public ByteBuffer argbToY() {
+      UltAlprSdkPixelConverter.argbToY(argb, 0, width, width, height, y, 0, width);
+      direct.clear();
+      return direct.put(y, 0, y.length); // Including the copy to the direct buffer
+   }
+
+   /** Baseline: per-pixel BGR written to a direct buffer. */
+   @Benchmark
+   public ByteBuffer scalarArgbToBgr24() {
+      direct.clear();
+      for (int i = 0; i < argb.length; ++i) {
+         final int p = argb[i];
+         direct.put((byte) p).put((byte) (p >> 8)).put((byte) (p >> 16));
+      }
+      return direct;
+   }
+
+   @Benchmark
+   public ByteBuffer argbToBgr24() {
+      UltAlprSdkPixelConverter.argbToBgr24(argb, 0, width, width, height, bgr, 0, width * 3);
+      direct.clear();
+      return direct.put(bgr, 0, bgr.length);
+   }
+
+   @Benchmark
+   public byte[] argbToNv12() {
+      UltAlprSdkPixelConverter.argbToYuv420(argb, 0, width, width, height, y, 0, width, uv, 0, uv, 1, width, 2);
+      return uv;
+   }
+
+   /** Android YUV_420_888 chroma (pixel stride 2) to YUV420P. */
+   @Benchmark
+   public byte[] nv12ToYuv420pChroma() {
+      UltAlprSdkPixelConverter.copyChroma(uv, 0, uv, 1, width, 2, width >> 1, height >> 1, u, 0, v, 0, width >> 1, 1);
+      return v;
+   }
+
+   @Benchmark
+   public byte[] downscale2xBgr24() {
+      UltAlprSdkPixelConverter.downscale2x(bgr, 0, width * 3, width, height, 3, half, 0, (width >> 1) * 3);
+      return half;
+   }
+}
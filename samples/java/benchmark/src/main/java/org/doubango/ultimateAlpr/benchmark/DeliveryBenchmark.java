@@ -0,0 +1,91 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkParallelDeliveryCallback;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput (frames per second) in sequential vs parallel delivery mode.
+ * In parallel mode process() only runs the detection and the recognition is delivered later on the callback:
+ * each invocation submits {@link #BATCH_SIZE} frames and waits for all their results to be delivered,
+ * so that the score includes the whole pipeline and the queue is empty between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DeliveryBenchmark {
+   static final int BATCH_SIZE = 16;
+
+   @Param({ "false", "true" })
+   public boolean parallel;
+
+   @Param({ "lic_us_1280x720.jpg", "london_traffic.jpg" })
+   public String image;
+
+   private final Semaphore delivered = new Semaphore(0);
+   private UltAlprSdkParallelDeliveryCallback callback;
+   private UltAlprSdkFrame frame;
+
+   @Setup
+   public void setup() throws IOException {
+      if (parallel) {
+         callback = new UltAlprSdkParallelDeliveryCallback() {
+            @Override
+            public void onNewResult(UltAlprSdkResult newResult) {
+               // Since 3.2 the callback is called for every frame, even without plates
+               delivered.release();
+            }
+         };
+      }
+      BenchmarkEnv.init(callback);
+      final BufferedImage bgr = BenchmarkEnv.readBGR(image);
+      frame = FrameFactory.create(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGR24, BenchmarkEnv.pixels(bgr), bgr.getWidth(), bgr.getHeight());
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      BenchmarkEnv.deInit();
+      if (callback != null) {
+         callback.close();
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(BATCH_SIZE)
+   public void process() throws InterruptedException {
+      for (int i = 0; i < BATCH_SIZE; ++i) {
+         BenchmarkEnv.process(frame).close();
+      }
+      if (parallel) {
+         delivered.acquire(BATCH_SIZE);
+      }
+   }
+}
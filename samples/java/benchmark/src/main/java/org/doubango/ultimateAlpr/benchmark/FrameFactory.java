@@ -0,0 +1,113 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.nio.ByteBuffer;
+
+import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+
+/**
+ * Converts a BGR24 image into any of the ULTALPR_SDK_IMAGE_TYPE layouts accepted by the engine.
+ * Only used to prepare the benchmark inputs: not optimized.
+ */
+final class FrameFactory {
+   private FrameFactory() {
+   }
+
+   static UltAlprSdkFrame create(ULTALPR_SDK_IMAGE_TYPE type, byte[] bgr, int width, int height) {
+      final int numPixels = width * height;
+      switch (type) {
+         case ULTALPR_SDK_IMAGE_TYPE_BGR24:
+            return UltAlprSdkFrame.packed(type, direct(bgr), width, height, width, 1);
+         case ULTALPR_SDK_IMAGE_TYPE_RGB24: {
+            final ByteBuffer rgb = ByteBuffer.allocateDirect(numPixels * 3);
+            for (int i = 0; i < numPixels * 3; i += 3) {
+               rgb.put(bgr[i + 2]).put(bgr[i + 1]).put(bgr[i]);
+            }
+            return UltAlprSdkFrame.packed(type, rgb.flip(), width, height, width, 1);
+         }
+         case ULTALPR_SDK_IMAGE_TYPE_RGBA32:
+         case ULTALPR_SDK_IMAGE_TYPE_BGRA32: {
+            final boolean rgbOrder = (type == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_RGBA32);
+            final ByteBuffer rgba = ByteBuffer.allocateDirect(numPixels << 2);
+            for (int i = 0; i < numPixels * 3; i += 3) {
+               if (rgbOrder) {
+                  rgba.put(bgr[i + 2]).put(bgr[i + 1]).put(bgr[i]);
+               } else {
+                  rgba.put(bgr[i]).put(bgr[i + 1]).put(bgr[i + 2]);
+               }
+               rgba.put((byte) 0xFF);
+            }
+            return UltAlprSdkFrame.packed(type, rgba.flip(), width, height, width, 1);
+         }
+         case ULTALPR_SDK_IMAGE_TYPE_Y: {
+            final ByteBuffer y = ByteBuffer.allocateDirect(numPixels);
+            for (int i = 0; i < numPixels; ++i) {
+               y.put((byte) luma(bgr, i * 3));
+            }
+            return UltAlprSdkFrame.packed(type, y.flip(), width, height, width, 1);
+         }
+         default:
+            return createYUV(type, bgr, width, height);
+      }
+   }
+
+   private static UltAlprSdkFrame createYUV(ULTALPR_SDK_IMAGE_TYPE type, byte[] bgr, int width, int height) {
+      // Chroma subsampling factors
+      final int sx = (type == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV444P) ? 1 : 2;
+      final int sy = (type == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV444P || type == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_YUV422P) ? 1 : 2;
+      final int chromaWidth = (width + sx - 1) / sx;
+      final int chromaHeight = (height + sy - 1) / sy;
+      final byte[] y = new byte[width * height];
+      final byte[] u = new byte[chromaWidth * chromaHeight];
+      final byte[] v = new byte[chromaWidth * chromaHeight];
+      for (int j = 0; j < height; ++j) {
+         for (int i = 0; i < width; ++i) {
+            y[j * width + i] = (byte) luma(bgr, (j * width + i) * 3);
+         }
+      }
+      for (int j = 0; j < chromaHeight; ++j) {
+         for (int i = 0; i < chromaWidth; ++i) {
+            final int p = ((j * sy) * width + (i * sx)) * 3; // Top-left sample of the block
+            final int b = bgr[p] & 0xFF, g = bgr[p + 1] & 0xFF, r = bgr[p + 2] & 0xFF;
+            u[j * chromaWidth + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+            v[j * chromaWidth + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+         }
+      }
+      final ByteBuffer yPlane = direct(y);
+      switch (type) {
+         case ULTALPR_SDK_IMAGE_TYPE_NV12:
+         case ULTALPR_SDK_IMAGE_TYPE_NV21: {
+            final boolean uFirst = (type == ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_NV12);
+            final ByteBuffer uv = ByteBuffer.allocateDirect(u.length << 1);
+            for (int i = 0; i < u.length; ++i) {
+               uv.put(uFirst ? u[i] : v[i]).put(uFirst ? v[i] : u[i]);
+            }
+            uv.flip();
+            final ByteBuffer first = uv.duplicate();
+            final ByteBuffer second = uv.duplicate().position(1).slice();
+            return UltAlprSdkFrame.planar(type, yPlane, uFirst ? first : second, uFirst ? second : first,
+               width, height, width, chromaWidth << 1, chromaWidth << 1, 2, 1);
+         }
+         default: // YUV420P, YVU420P, YUV422P, YUV444P: separate planes
+            return UltAlprSdkFrame.planar(type, yPlane, direct(u), direct(v), width, height, width, chromaWidth, chromaWidth, 1, 1);
+      }
+   }
+
+   private static int luma(byte[] bgr, int p) {
+      final int b = bgr[p] & 0xFF, g = bgr[p + 1] & 0xFF, r = bgr[p + 2] & 0xFF;
+      return ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
+   }
+
+   private static ByteBuffer direct(byte[] data) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+      buffer.put(data);
+      buffer.flip();
+      return buffer;
+   }
+}
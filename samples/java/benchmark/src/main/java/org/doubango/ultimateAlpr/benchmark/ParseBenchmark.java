@@ -0,0 +1,144 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultParser;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Result parsing cost, streaming parser vs org.json (what the samples used before). Both start from the
+ * String returned by {@link UltAlprSdkResult#json()} and read the same fields: text, confidences, boxes, first
+ * country and first car attributes. Run with "-prof gc" to get the allocation rate: the streaming parser is
+ * expected to report ~0 B/op once warmed up, org.json allocates a tree of maps, lists and boxed numbers.
+ * The JSON is a fixture shaped like the engine's output (the same as in AlprUtils), the engine isn't needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+   // One plate as delivered by the engine with the car attributes (VCR, VMMR, VBSR) and the country (LPCI) enabled
+   private static final String PLATE = "{\"car\":{\"color\":[{\"confidence\":59.76562,\"klass\":11,\"name\":\"white\"},{\"confidence\":27.73438,\"klass\":0,\"name\":\"black\"},{\"confidence\":11.32812,\"klass\":9,\"name\":\"silver\"},{\"confidence\":0.390625,\"klass\":4,\"name\":\"gray\"},{\"confidence\":0.390625,\"klass\":5,\"name\":\"green\"}],\"confidence\":89.45312,\"makeModelYear\":[{\"confidence\":5.46875,\"klass\":8072,\"make\":\"nissan\",\"model\":\"nv\",\"year\":2012},{\"confidence\":3.90625,\"klass\":4885,\"make\":\"gmc\",\"model\":\"yukon 1500\",\"year\":2007},{\"confidence\":1.953125,\"klass\":3950,\"make\":\"ford\",\"model\":\"f150\",\"year\":2001},{\"confidence\":1.953125,\"klass\":4401,\"make\":\"ford\",\"model\":\"ranger\",\"year\":2008},{\"confidence\":1.953125,\"klass\":3954,\"make\":\"ford\",\"model\":\"f150\",\"year\":2005}],\"warpedBox\":[37.26704,655.171,253.8487,655.171,253.8487,897.6935,37.26704,897.6935]},\"confidences\":[86.99596,99.60938],\"country\":[{\"code\":\"RUS\",\"confidence\":99.60938,\"klass\":65,\"name\":\"Russian Federation\",\"other\":\"Private vehicle\",\"state\":\"Republic of Karelia\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":88,\"name\":\"United States of America\",\"state\":\"Iowa\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":80,\"name\":\"United States of America\",\"state\":\"Connecticut\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":81,\"name\":\"United States of America\",\"state\":\"Delaware\"},{\"code\":\"USA\",\"confidence\":0.0,\"klass\":82,\"name\":\"United States of America\",\"state\":\"Florida\"}],\"text\":\"K643ET10\",\"warpedBox\":[61.73531,819.796,145.57,819.796,145.57,881.916,61.73531,881.916]}";
+
+   @Param({ "1", "4" })
+   public int numPlates;
+
+   private String json;
+   private final UltAlprSdkResultParser parser = new UltAlprSdkResultParser();
+   private final UltAlprSdkResultParser textParser = new UltAlprSdkResultParser();
+
+   @Setup
+   public void setup() {
+      final StringBuilder builder = new StringBuilder("{\"duration\":21,\"frame_id\":178,\"plates\":[");
+      for (int i = 0; i < numPlates; ++i) {
+         builder.append((i == 0) ? "" : ",").append(PLATE);
+      }
+      json = builder.append("]}").toString();
+      textParser.setFields(UltAlprSdkResultParser.FIELD_TEXT);
+   }
+
+   @Benchmark
+   public int parseAll(Blackhole blackhole) {
+      parser.reset(json);
+      final int count = parser.parsePlates();
+      for (int i = 0; i < count; ++i) {
+         final UltAlprSdkResultParser.Plate plate = parser.getPlate(i);
+         blackhole.consume(plate.getText().length());
+         blackhole.consume(plate.getRecognitionConfidence());
+         blackhole.consume(plate.getWarpedBox()[0]);
+         if (plate.hasCountry()) {
+            blackhole.consume(plate.getCountryCode().length());
+         }
+         if (plate.hasCar()) {
+            final UltAlprSdkResultParser.Car car = plate.getCar();
+            blackhole.consume(car.getConfidence());
+            blackhole.consume(car.getWarpedBox()[0]);
+            blackhole.consume(car.getNumColors());
+            blackhole.consume(car.getNumMakeModelYears());
+            blackhole.consume(car.getNumBodyStyles());
+         }
+      }
+      return count;
+   }
+
+   /** Same fields as {@link #parseAll(Blackhole)}. */
+   @Benchmark
+   public int orgJsonAll(Blackhole blackhole) {
+      final JSONArray plates = new JSONObject(json).optJSONArray("plates");
+      final int count = (plates == null) ? 0 : plates.length();
+      for (int i = 0; i < count; ++i) {
+         final JSONObject plate = plates.getJSONObject(i);
+         blackhole.consume(plate.getString("text").length());
+         blackhole.consume((float) plate.getJSONArray("confidences").getDouble(0));
+         blackhole.consume((float) plate.getJSONArray("warpedBox").getDouble(0));
+         final JSONArray countries = plate.optJSONArray("country");
+         if (countries != null && countries.length() > 0) {
+            blackhole.consume(countries.getJSONObject(0).getString("code").length());
+         }
+         final JSONObject car = plate.optJSONObject("car");
+         if (car != null) {
+            blackhole.consume((float) car.getDouble("confidence"));
+            blackhole.consume((float) car.getJSONArray("warpedBox").getDouble(0));
+            blackhole.consume(Math.min(1, length(car.optJSONArray("color"))));
+            blackhole.consume(Math.min(1, length(car.optJSONArray("makeModelYear"))));
+            blackhole.consume(Math.min(1, length(car.optJSONArray("bodyStyle"))));
+         }
+      }
+      return count;
+   }
+
+   @Benchmark
+   public void parseText(Blackhole blackhole) {
+      textParser.reset(json);
+      UltAlprSdkResultParser.Plate plate;
+      while ((plate = textParser.nextPlate()) != null) {
+         blackhole.consume(plate.getText().length());
+      }
+   }
+
+   @Benchmark
+   public void orgJsonText(Blackhole blackhole) {
+      final JSONArray plates = new JSONObject(json).optJSONArray("plates");
+      for (int i = 0; plates != null && i < plates.length(); ++i) {
+         blackhole.consume(plates.getJSONObject(i).getString("text").length());
+      }
+   }
+
+   @Benchmark
+   public long frameId() {
+      parser.reset(json);
+      return parser.frameId();
+   }
+
+   @Benchmark
+   public long orgJsonFrameId() {
+      return new JSONObject(json).optLong("frame_id", -1);
+   }
+
+   private static int length(JSONArray array) {
+      return (array == null) ? 0 : array.length();
+   }
+}
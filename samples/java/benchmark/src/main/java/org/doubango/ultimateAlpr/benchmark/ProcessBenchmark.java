@@ -0,0 +1,69 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+package org.doubango.ultimateAlpr.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine#process} (sequential mode) for every image type,
+ * using the bundled images converted to the requested layout.
+ * This is the end-to-end latency seen by the caller: detection, recognition and the JSON serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProcessBenchmark {
+
+   @Param
+   public ULTALPR_SDK_IMAGE_TYPE imageType;
+
+   @Param({ "lic_us_1280x720.jpg", "multi.jpg", "london_traffic.jpg", "nyc.jpg" })
+   public String image;
+
+   private UltAlprSdkFrame frame;
+
+   @Setup
+   public void setup() throws IOException {
+      BenchmarkEnv.init(null);
+      final BufferedImage bgr = BenchmarkEnv.readBGR(image);
+      frame = FrameFactory.create(imageType, BenchmarkEnv.pixels(bgr), bgr.getWidth(), bgr.getHeight());
+      BenchmarkEnv.check("Process", BenchmarkEnv.process(frame)); // Fails early on unsupported configurations
+   }
+
+   @TearDown
+   public void tearDown() throws IOException {
+      BenchmarkEnv.deInit();
+   }
+
+   @Benchmark
+   public long process() {
+      try (UltAlprSdkResult result = BenchmarkEnv.process(frame)) {
+         return result.numPlates();
+      }
+   }
+}
@@ -0,0 +1,242 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkBufferPool;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrameRecorder;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultSnapshot;
+
+/**
+ * Batch mode of the {@link Recognizer}: processes all the images of a folder (and its sub-folders) matching a glob pattern.
+ * Decoding runs on a pool of threads, into pooled direct buffers, while the calling thread feeds the engine: decoding the
+ * next images overlaps the inference of the current one. The number of decoded images waiting for the engine is bounded.
+ * Each result is written as one JSON line: {"file": ..., "duration_ms": ..., "result": {...}} or {"file": ..., "error": ...}.
+ * The progress (throughput and ETA) is printed on stderr.
+ */
+final class BatchRecognizer {
+
+   static final String DEFAULT_GLOB = "**.{jpg,jpeg,png,bmp,JPG,JPEG,PNG,BMP}";
+   static final long PROGRESS_INTERVAL_NANOS = 5000000000L;
+
+   private final Path folder;
+   private final PathMatcher matcher;
+   private final int numDecoders;
+   private final int queueCapacity;
+   private final UltAlprSdkBufferPool bufferPool;
+   private final SubsampledDecoder subsampledDecoder;
+   private final UltAlprSdkFrameRecorder recorder;
+
+   /**
+    * @param folder The root folder.
+    * @param glob Glob pattern matched against the paths relative to the root folder, e.g. "**.jpg" or "2022-*&#47;*.jpg".
+    * @param numDecoders Number of decoding threads.
+    * @param queueCapacity Maximum number of images being decoded or waiting for the engine.
+    * @param subsampledDecoder Decoder to Y or NV12, null to decode to BGR24 at full resolution.
+    * @param recorder Records the frames sent to the engine, to replay them later. Optional.
+    */
+   BatchRecognizer(Path folder, String glob, int numDecoders, int queueCapacity, SubsampledDecoder subsampledDecoder, UltAlprSdkFrameRecorder recorder) {
+      this.folder = folder;
+      this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+      this.numDecoders = numDecoders;
+      this.queueCapacity = queueCapacity;
+      this.bufferPool = new UltAlprSdkBufferPool(queueCapacity);
+      this.subsampledDecoder = subsampledDecoder;
+      this.recorder = recorder;
+   }
+
+   /**
+    * Processes all the matching images. The engine must be initialized in sequential mode.
+    * @param out Where to write the JSON lines.
+    * @return The number of images processed successfully.
+    */
+   long run(PrintStream out) throws IOException, InterruptedException {
+      final long total;
+      try (Stream<Path> paths = list()) { // First pass: only to compute the ETA, nothing is kept in memory
+         total = paths.count();
+      }
+      System.err.println(String.format("Batch: %d files matching in %s", total, folder));
+
+      final Semaphore permits = new Semaphore(queueCapacity);
+      final BlockingQueue<Decoded> decoded = new ArrayBlockingQueue<Decoded>(queueCapacity);
+      final ForkJoinPool decoders = new ForkJoinPool(numDecoders);
+      final Thread producer = new Thread(() -> {
+         try (Stream<Path> paths = list()) {
+            final Iterator<Path> it = paths.iterator();
+            while (it.hasNext()) {
+               final Path path = it.next();
+               permits.acquire(); // Released once processed: bounds the decoded images held in memory
+               decoders.execute(() -> decoded.add(decode(path))); // Never blocks: capacity == number of permits
+            }
+         }
+         catch (IOException | InterruptedException e) {
+            System.err.println("Batch: listing stopped: " + e);
+         }
+         finally {
+            permits.acquireUninterruptibly(queueCapacity); // Wait for the last images
+            decoded.add(Decoded.END);
+         }
+      }, "BatchRecognizer-producer");
+      producer.setDaemon(true);
+      producer.start();
+
+      final long startNanos = System.nanoTime();
+      long lastProgressNanos = startNanos;
+      long numProcessed = 0, numFailed = 0;
+      try {
+         for (Decoded image; (image = decoded.take()) != Decoded.END; permits.release()) {
+            try {
+               if (image.error != null) {
+                  out.println(String.format("{\"file\": %s, \"error\": %s}", quote(image.path.toString()), quote(image.error)));
+                  ++numFailed;
+                  continue;
+               }
+               final long processStartNanos = System.nanoTime();
+               try (UltAlprSdkResult result = (recorder != null) ? recorder.process(image.frame, processStartNanos) : UltAlprSdkEngine.process(image.frame)) {
+                  final UltAlprSdkResultSnapshot snapshot = result.snapshot();
+                  if (snapshot.isOK()) {
+                     out.println(String.format("{\"file\": %s, \"duration_ms\": %.3f, %s\"result\": %s}",
+                        quote(image.path.toString()), (System.nanoTime() - processStartNanos) / 1e6, image.transform,
+                        snapshot.hasPlatesOrCars() ? snapshot.json() : result.json())); // The snapshot has no JSON without plates
+                     ++numProcessed;
+                  }
+                  else {
+                     out.println(String.format("{\"file\": %s, \"error\": %s}", quote(image.path.toString()), quote(snapshot.phrase())));
+                     ++numFailed;
+                  }
+               }
+            }
+            finally {
+               if (image.buffer != null) {
+                  image.buffer.releaseRef();
+               }
+            }
+            final long now = System.nanoTime();
+            if (now - lastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+               lastProgressNanos = now;
+               printProgress(numProcessed + numFailed, total, now - startNanos, decoded.size());
+            }
+         }
+      }
+      finally {
+         producer.interrupt();
+         decoders.shutdown();
+         decoders.awaitTermination(1, TimeUnit.MINUTES);
+         out.flush();
+      }
+      printProgress(numProcessed + numFailed, total, System.nanoTime() - startNanos, 0);
+      System.err.println(String.format("Batch: %d processed, %d failed, direct memory: %d bytes (%d allocations, %d reuses)",
+         numProcessed, numFailed, bufferPool.getAllocatedBytes(), bufferPool.getMissCount(), bufferPool.getHitCount()));
+      return numProcessed;
+   }
+
+   private Stream<Path> list() throws IOException {
+      return Files.walk(folder).filter(path -> Files.isRegularFile(path) && matcher.matches(folder.relativize(path)));
+   }
+
+   /**
+    * Decodes an image into a pooled buffer, in its own format (see BufferedImageAdapter) or using the subsampled decoder. Runs on the decoding threads.
+    */
+   private Decoded decode(Path path) {
+      try {
+         final MappedFile mapped = MappedFile.map(path.toFile()); // Shared by the EXIF probe and the decoder: the file is read once
+         if (subsampledDecoder != null) {
+            final SubsampledDecoder.Image image = subsampledDecoder.decode(mapped, bufferPool);
+            // The plates are relative to the decoded region: give the mapping to the source pixels
+            final String transform = String.format("\"region\": [%d, %d, %d, %d], \"subsampling\": %d, ",
+               image.region.x, image.region.y, image.region.width, image.region.height, image.subsampling);
+            return new Decoded(path, image.buffer, image.frame, transform);
+         }
+         final BufferedImage image = ImageIO.read(mapped.newStream());
+         if (image == null) {
+            return new Decoded(path, "Unsupported image format");
+         }
+         // Raster in its own layout (BGR24, RGBA32, Y...), copied as is: no conversion unless the engine can't read it
+         final BufferedImageAdapter.View view = BufferedImageAdapter.adapt(image);
+         final UltAlprSdkBufferPool.Buffer buffer = bufferPool.acquire(view.byteLength());
+         view.copyTo(buffer.getData());
+         buffer.getData().flip();
+         return new Decoded(path, buffer, UltAlprSdkFrame.packed(view.type, buffer.getData(), view.width, view.height, view.stride, mapped.exifOrientation), "");
+      }
+      catch (IOException | RuntimeException e) {
+         return new Decoded(path, e.toString());
+      }
+   }
+
+   private static void printProgress(long done, long total, long elapsedNanos, int queued) {
+      final double fps = (elapsedNanos > 0) ? done / (elapsedNanos / 1e9) : 0.0;
+      final long etaSeconds = (fps > 0) ? (long) ((total - done) / fps) : 0;
+      System.err.println(String.format("Batch: %d/%d (%.1f%%), %.2f images/s, queued: %d, ETA: %02d:%02d:%02d",
+         done, total, (total > 0) ? (done * 100.0) / total : 100.0, fps, queued, etaSeconds / 3600, (etaSeconds / 60) % 60, etaSeconds % 60));
+   }
+
+   static String quote(String value) {
+      final StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+      for (int i = 0; i < value.length(); ++i) {
+         final char c = value.charAt(i);
+         switch (c) {
+            case '"': builder.append("\\\""); break;
+            case '\\': builder.append("\\\\"); break;
+            case '\n': builder.append("\\n"); break;
+            case '\r': builder.append("\\r"); break;
+            case '\t': builder.append("\\t"); break;
+            default:
+               if (c < 0x20) {
+                  builder.append(String.format("\\u%04x", (int) c));
+               }
+               else {
+                  builder.append(c);
+               }
+               break;
+         }
+      }
+      return builder.append('"').toString();
+   }
+
+   private static final class Decoded {
+      static final Decoded END = new Decoded(null, null);
+
+      final Path path;
+      final UltAlprSdkBufferPool.Buffer buffer;
+      final UltAlprSdkFrame frame;
+      final String transform; // JSON fields mapping the frame to the source image, empty if identity
+      final String error;
+
+      Decoded(Path path, UltAlprSdkBufferPool.Buffer buffer, UltAlprSdkFrame frame, String transform) {
+         this.path = path;
+         this.buffer = buffer;
+         this.frame = frame;
+         this.transform = transform;
+         this.error = null;
+      }
+
+      Decoded(Path path, String error) {
+         this.path = path;
+         this.buffer = null;
+         this.frame = null;
+         this.transform = "";
+         this.error = error;
+      }
+   }
+}
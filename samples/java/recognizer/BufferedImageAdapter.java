@@ -0,0 +1,197 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+
+/**
+ * Maps the raster of any BufferedImage to the matching ULTALPR_SDK_IMAGE_TYPE, without repacking the pixels when the layout allows it.
+ * The SampleModel gives the real layout: first sample offset (sub-images share their parent's buffer), scanline stride
+ * (padded rows), pixel stride and band offsets (channel order).
+ * <ul>
+ * <li>Interleaved bytes: 1 band is Y, 3 bands are BGR24 or RGB24, 4 bands are BGRA32 or RGBA32, depending on the band offsets.</li>
+ * <li>Packed ints (TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_INT_BGR...): in little-endian order the 0xAARRGGBB ints are B, G, R, A bytes
+ * (BGRA32) and the 0x00BBGGRR ints are R, G, B, X bytes (RGBA32). The ints are passed as is.</li>
+ * <li>Anything else (ABGR bytes, indexed colors, 16-bit samples, banded rasters...) is converted to BGR24.</li>
+ * </ul>
+ */
+final class BufferedImageAdapter {
+
+   private BufferedImageAdapter() {
+   }
+
+   /**
+    * A view of an image's pixels as the engine expects them: either a byte[] or an int[] range.
+    */
+   static final class View {
+      final ULTALPR_SDK_IMAGE_TYPE type;
+      final byte[] bytes; // null for int-packed rasters
+      final int[] ints; // null for byte rasters
+      /** Offset of the first pixel, in array elements. */
+      final int offset;
+      /** Number of array elements from the offset to the end of the last pixel. */
+      final int length;
+      final int width;
+      final int height;
+      /** The stride, in pixels. */
+      final int stride;
+      /** Whether the pixels were converted (copy of the image) instead of viewed in place. */
+      final boolean converted;
+
+      View(ULTALPR_SDK_IMAGE_TYPE type, byte[] bytes, int[] ints, int offset, int length, int width, int height, int stride, boolean converted) {
+         this.type = type;
+         this.bytes = bytes;
+         this.ints = ints;
+         this.offset = offset;
+         this.length = length;
+         this.width = width;
+         this.height = height;
+         this.stride = stride;
+         this.converted = converted;
+      }
+
+      /** Size of the pixels once copied into a direct buffer, in bytes. */
+      int byteLength() {
+         return (ints != null) ? (length << 2) : length;
+      }
+
+      /**
+       * Copies the pixels into a direct buffer (at its position). The ints are written in little-endian order, like the int[] process function.
+       */
+      void copyTo(ByteBuffer buffer) {
+         if (ints != null) {
+            buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(ints, offset, length);
+            buffer.position(buffer.position() + (length << 2));
+         }
+         else {
+            buffer.put(bytes, offset, length);
+         }
+      }
+
+      UltAlprSdkResult process(int exifOrientation) {
+         return (ints != null)
+            ? UltAlprSdkEngine.process(type, ints, offset, length, width, height, stride, exifOrientation)
+            : UltAlprSdkEngine.process(type, bytes, offset, length, width, height, stride, exifOrientation);
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%s %dx%d, stride: %d, offset: %d%s", type, width, height, stride, offset, converted ? " (converted)" : "");
+      }
+   }
+
+   /**
+    * Gets a view of the image's pixels, converting them only if the layout isn't supported by the engine.
+    */
+   static View adapt(BufferedImage image) {
+      final Raster raster = image.getRaster();
+      final SampleModel sampleModel = raster.getSampleModel();
+      final DataBuffer dataBuffer = raster.getDataBuffer();
+      // Position of the raster's first pixel in the sample model (non-zero for sub-images)
+      final int x = raster.getMinX() - raster.getSampleModelTranslateX();
+      final int y = raster.getMinY() - raster.getSampleModelTranslateY();
+      final int width = raster.getWidth(), height = raster.getHeight();
+      View view = null;
+      final ColorModel colorModel = image.getColorModel();
+      final int colorSpaceType = colorModel.getColorSpace().getType();
+      if (dataBuffer instanceof DataBufferByte && dataBuffer.getNumBanks() == 1 && sampleModel instanceof ComponentSampleModel
+            && colorModel instanceof ComponentColorModel // Not indexed colors
+            && (colorSpaceType == ColorSpace.TYPE_RGB || (colorSpaceType == ColorSpace.TYPE_GRAY && sampleModel.getNumBands() == 1))) {
+         view = adaptBytes((ComponentSampleModel) sampleModel, ((DataBufferByte) dataBuffer).getData(), dataBuffer.getOffset(), x, y, width, height);
+      }
+      else if (dataBuffer instanceof DataBufferInt && dataBuffer.getNumBanks() == 1 && sampleModel instanceof SinglePixelPackedSampleModel
+            && colorModel instanceof DirectColorModel && colorSpaceType == ColorSpace.TYPE_RGB) {
+         view = adaptInts((SinglePixelPackedSampleModel) sampleModel, ((DataBufferInt) dataBuffer).getData(), dataBuffer.getOffset(), x, y, width, height);
+      }
+      return (view != null) ? view : convert(image);
+   }
+
+   private static View adaptBytes(ComponentSampleModel sampleModel, byte[] data, int bufferOffset, int x, int y, int width, int height) {
+      final int pixelStride = sampleModel.getPixelStride();
+      final int scanlineStride = sampleModel.getScanlineStride();
+      final int[] bandOffsets = sampleModel.getBandOffsets();
+      final int[] bankIndices = sampleModel.getBankIndices();
+      if (bandOffsets.length != pixelStride || (scanlineStride % pixelStride) != 0) {
+         return null; // Skipped or banded samples, or rows not aligned on pixels
+      }
+      for (int bankIndex : bankIndices) {
+         if (bankIndex != 0) {
+            return null;
+         }
+      }
+      final ULTALPR_SDK_IMAGE_TYPE type;
+      if (pixelStride == 1) { // Gray color space checked by the caller
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_Y;
+      }
+      else if (pixelStride == 3 && Arrays.equals(bandOffsets, new int[] { 2, 1, 0 })) {
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGR24; // TYPE_3BYTE_BGR: R, G, B bands at offsets 2, 1, 0
+      }
+      else if (pixelStride == 3 && Arrays.equals(bandOffsets, new int[] { 0, 1, 2 })) {
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_RGB24;
+      }
+      else if (pixelStride == 4 && Arrays.equals(bandOffsets, new int[] { 2, 1, 0, 3 })) {
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGRA32;
+      }
+      else if (pixelStride == 4 && Arrays.equals(bandOffsets, new int[] { 0, 1, 2, 3 })) {
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_RGBA32;
+      }
+      else {
+         return null; // E.g. TYPE_4BYTE_ABGR (A, B, G, R bytes): no matching type
+      }
+      final int offset = bufferOffset + y * scanlineStride + x * pixelStride;
+      final int length = (height - 1) * scanlineStride + width * pixelStride;
+      return new View(type, data, null, offset, length, width, height, scanlineStride / pixelStride, false);
+   }
+
+   private static View adaptInts(SinglePixelPackedSampleModel sampleModel, int[] data, int bufferOffset, int x, int y, int width, int height) {
+      final int[] masks = sampleModel.getBitMasks();
+      if (masks.length < 3 || masks.length > 4) {
+         return null;
+      }
+      final ULTALPR_SDK_IMAGE_TYPE type;
+      if (masks[0] == 0x00FF0000 && masks[1] == 0x0000FF00 && masks[2] == 0x000000FF) {
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGRA32; // TYPE_INT_RGB, TYPE_INT_ARGB(_PRE)
+      }
+      else if (masks[0] == 0x000000FF && masks[1] == 0x0000FF00 && masks[2] == 0x00FF0000) {
+         type = ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_RGBA32; // TYPE_INT_BGR
+      }
+      else {
+         return null; // E.g. TYPE_USHORT_565_RGB
+      }
+      final int scanlineStride = sampleModel.getScanlineStride();
+      final int offset = bufferOffset + y * scanlineStride + x;
+      final int length = (height - 1) * scanlineStride + width;
+      return new View(type, null, data, offset, length, width, height, scanlineStride, false);
+   }
+
+   private static View convert(BufferedImage image) {
+      final BufferedImage bgr = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+      final Graphics2D graphics = bgr.createGraphics();
+      graphics.drawImage(image, 0, 0, null);
+      graphics.dispose();
+      final byte[] data = ((DataBufferByte) bgr.getRaster().getDataBuffer()).getData();
+      return new View(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGR24, data, null, 0, data.length, image.getWidth(), image.getHeight(), image.getWidth(), true);
+   }
+}
@@ -0,0 +1,91 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkExif;
+
+/**
+ * An image file mapped in memory once, shared by the EXIF orientation probe and the decoder.
+ * Mapping is lazy: the probe only loads the pages holding the JPEG headers and the decoder then reads the rest
+ * from the page cache, without a second read of the file nor any intermediate copy.
+ * The channel is closed as soon as the file is mapped: the mapping stays valid until the buffer is garbage collected.
+ */
+final class MappedFile {
+   final File file;
+   final MappedByteBuffer data;
+   /** The EXIF orientation [1, 8], 1 if the file isn't a JPEG or has no orientation tag. */
+   final int exifOrientation;
+
+   private MappedFile(File file, MappedByteBuffer data) {
+      this.file = file;
+      this.data = data;
+      this.exifOrientation = UltAlprSdkExif.orientation(data);
+   }
+
+   static MappedFile map(File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         final long size = channel.size();
+         if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large: " + file);
+         }
+         return new MappedFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      }
+   }
+
+   /**
+    * A new stream over the mapped content, for ImageIO. Seekable, no cache: ImageIO.createImageInputStream() on a file
+    * would open it again, and on an InputStream would copy it to a cache.
+    */
+   ImageInputStream newStream() {
+      return new Stream(data.duplicate());
+   }
+
+   private static final class Stream extends ImageInputStreamImpl {
+      private final ByteBuffer data;
+
+      Stream(ByteBuffer data) {
+         this.data = data;
+      }
+
+      @Override
+      public int read() throws IOException {
+         checkClosed();
+         bitOffset = 0;
+         if (streamPos >= data.limit()) {
+            return -1;
+         }
+         return data.get((int) streamPos++) & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         checkClosed();
+         bitOffset = 0;
+         if (streamPos >= data.limit()) {
+            return -1;
+         }
+         final int count = (int) Math.min(len, data.limit() - streamPos);
+         data.position((int) streamPos);
+         data.get(b, off, count);
+         streamPos += count;
+         return count;
+      }
+
+      @Override
+      public long length() {
+         return data.limit();
+      }
+   }
+}
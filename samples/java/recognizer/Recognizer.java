@@ -4,10 +4,12 @@
 * Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
 * WebSite: https://www.doubango.org/webapps/alpr/
 */
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Hashtable;
 import java.util.IllegalFormatException;
 import java.util.List;
@@ -15,18 +17,23 @@ import java.util.Arrays;
 import java.util.stream.Collectors;
 import java.lang.IllegalArgumentException;
 
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.DataBufferByte;
 import javax.imageio.ImageIO;
 
-import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkBufferPool;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkEngine;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrameRecorder;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrameReplayer;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkMotionGate;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkPlateTracker;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkRawFrameFile;
 import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResult;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultParser;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkResultSnapshot;
 
 public class Recognizer {
 
@@ -345,11 +352,11 @@ public class Recognizer {
       // Parse arguments
       final Hashtable<String, String> parameters = ParseArgs(args);
 
-      // Make sur the image is provided using args
-      if (!parameters.containsKey("--image"))
+      // Make sur the image (or the folder in batch mode, or the raw capture file) is provided using args
+      if (!parameters.containsKey("--image") && !parameters.containsKey("--dir") && !parameters.containsKey("--raw") && !parameters.containsKey("--replay"))
       {
-         System.err.println("--image required");
-         throw new IllegalArgumentException("--image required");
+         System.err.println("--image, --dir, --raw or --replay required");
+         throw new IllegalArgumentException("--image, --dir, --raw or --replay required");
       }
       // Extract assets folder
       // https://www.doubango.org/SDKs/anpr/docs/Configuration_options.html#assets-folder
@@ -366,6 +373,17 @@ public class Recognizer {
       String charsetAkaAlphabet = parameters.containsKey("--charset")
             ? parameters.get("--charset") : CONFIG_CHARSET;
 
+      // Decoding - Optional: "bgr" (default), "y" or "nv12" (luma-only/subsampled decode, see SubsampledDecoder)
+      final String decode = parameters.containsKey("--decode")
+            ? parameters.get("--decode") : "bgr";
+      final SubsampledDecoder subsampledDecoder = decode.equalsIgnoreCase("bgr") ? null : new SubsampledDecoder(
+            SubsampledDecoder.Format.valueOf(decode.toUpperCase()),
+            parameters.containsKey("--decode_size") ? Integer.parseInt(parameters.get("--decode_size")) : 0,
+            CONFIG_DETECT_ROI
+      );
+      // The subsampled decoder only decodes the region of interest: the engine must process the whole frame
+      final List<Float> detectRoi = (subsampledDecoder != null) ? Arrays.asList(0.f, 0.f, 0.f, 0.f) : CONFIG_DETECT_ROI;
+
       //!\\ This is a quick and dirty way to load the library. You should not use it:
       // create a static block outside the main function and load the library from there.
       // In the next version we'll make sure the library has the same name regardless the platform/OS.
@@ -375,7 +393,98 @@ public class Recognizer {
       // Make sure de disable VS hosting process to see logs from native code: https://social.msdn.microsoft.com/Forums/en-US/5da6cdb2-bc2b-4fff-8adf-752b32143dae/printf-from-dll-in-console-app-in-visual-studio-c-2010-express-does-not-output-to-console-window?forum=Vsexpressvcs
       // This function should be called once.
       // https://www.doubango.org/SDKs/anpr/docs/cpp-api.html#_CPPv4N14ultimateAlprSdk15UltAlprSdkEngine4initEPKc
-      UltAlprSdkResult result = CheckResult("Init", UltAlprSdkEngine.init(BuildJSON(charsetAkaAlphabet, assetsFolder, tokenDataBase64)));
+      // The results hold native memory: close them as soon as you're done (try-with-resources).
+      CheckResult("Init", UltAlprSdkEngine.init(BuildJSON(charsetAkaAlphabet, assetsFolder, tokenDataBase64, detectRoi))).close();
+
+      // Replay mode: frames recorded using --record, fed back at the recorded pace (or faster)
+      if (parameters.containsKey("--replay"))
+      {
+         final String speed = parameters.containsKey("--replay_speed") ? parameters.get("--replay_speed") : "1";
+         final UltAlprSdkFrameReplayer replayer = UltAlprSdkFrameReplayer.open(Paths.get(parameters.get("--replay")));
+         // Motion gate - Optional: "off" (default), "on" (skip the static frames) or "evaluate" (process all, count the missed plates)
+         final String motionGate = parameters.containsKey("--motion_gate") ? parameters.get("--motion_gate") : "off";
+         if (!motionGate.equalsIgnoreCase("off"))
+         {
+            replayer.setMotionGate(new UltAlprSdkMotionGate().setRegion(CONFIG_DETECT_ROI.get(0), CONFIG_DETECT_ROI.get(1), CONFIG_DETECT_ROI.get(2), CONFIG_DETECT_ROI.get(3)),
+               motionGate.equalsIgnoreCase("evaluate"));
+         }
+         // Tracking - Optional: one enter/update/exit event per vehicle instead of one result per frame
+         final UltAlprSdkPlateTracker tracker = (parameters.containsKey("--track") && Boolean.parseBoolean(parameters.get("--track")))
+            ? new UltAlprSdkPlateTracker(Recognizer::PrintTrackEvent) : null;
+         final UltAlprSdkResultParser parser = new UltAlprSdkResultParser();
+         final UltAlprSdkFrameReplayer.Report report = replayer.replay(
+            speed.equalsIgnoreCase("max") ? UltAlprSdkFrameReplayer.AS_FAST_AS_POSSIBLE : Double.parseDouble(speed),
+            (tracker == null) ? null : (result, frameIndex) -> {
+               final UltAlprSdkResultSnapshot snapshot = result.snapshot();
+               if (snapshot.hasPlatesOrCars())
+               {
+                  parser.reset(snapshot.json());
+               }
+               tracker.update(snapshot.hasPlatesOrCars() ? parser : null);
+            });
+         System.out.println("Replay: " + report + System.lineSeparator());
+         if (tracker != null)
+         {
+            tracker.flush();
+            System.out.println(String.format("Tracking: %d plates, %d events", tracker.getObservations(), tracker.getEvents()));
+         }
+         CheckResult("DeInit", UltAlprSdkEngine.deInit()).close();
+         return;
+      }
+
+      // Recording - Optional: frames sent to the engine in batch and raw modes, for --replay
+      final UltAlprSdkFrameRecorder recorder = parameters.containsKey("--record")
+         ? new UltAlprSdkFrameRecorder(Paths.get(parameters.get("--record"))) : null;
+
+      // Batch mode: all the images in a folder, results written as JSON Lines
+      if (parameters.containsKey("--dir"))
+      {
+         final BatchRecognizer batch = new BatchRecognizer(
+            Paths.get(parameters.get("--dir")),
+            parameters.containsKey("--glob") ? parameters.get("--glob") : BatchRecognizer.DEFAULT_GLOB,
+            parameters.containsKey("--decoders") ? Integer.parseInt(parameters.get("--decoders")) : Runtime.getRuntime().availableProcessors(),
+            parameters.containsKey("--queue") ? Integer.parseInt(parameters.get("--queue")) : 16,
+            subsampledDecoder,
+            recorder
+         );
+         final PrintStream out = parameters.containsKey("--output")
+            ? new PrintStream(new BufferedOutputStream(new FileOutputStream(parameters.get("--output"))), false, "UTF-8")
+            : System.out;
+         try {
+            batch.run(out);
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         finally {
+            if (out != System.out) {
+               out.close();
+            }
+            if (recorder != null) {
+               recorder.close();
+            }
+         }
+         CheckResult("DeInit", UltAlprSdkEngine.deInit()).close();
+         return;
+      }
+
+      // Raw mode: replay the frames of a capture file (no decoding)
+      if (parameters.containsKey("--raw"))
+      {
+         try
+         {
+            ProcessRaw(Paths.get(parameters.get("--raw")), parameters.get("--raw_format"), parameters.get("--raw_size"), recorder);
+         }
+         finally
+         {
+            if (recorder != null)
+            {
+               recorder.close();
+            }
+         }
+         CheckResult("DeInit", UltAlprSdkEngine.deInit()).close();
+         return;
+      }
 
       // Decode the JPEG/PNG/BMP file
       final File file = new File(parameters.get("--image"));
@@ -383,37 +492,14 @@ public class Recognizer {
       {
           throw new FileNotFoundException("File not found: " + file.getAbsolutePath());
       }
-      final BufferedImage image = ImageIO.read(file);
-      final int bytesPerPixel = image.getColorModel().getPixelSize() >> 3;
-      if (bytesPerPixel != 1 && bytesPerPixel != 3 && bytesPerPixel != 4)
+      if (subsampledDecoder != null)
       {
-         throw new IOException("Invalid BPP: " + bytesPerPixel);
+         ProcessSubsampled(subsampledDecoder, file);
       }
-      System.out.println("bytesPerPixel: " + bytesPerPixel + System.lineSeparator());
-
-      // Write data to native/direct ByteBuffer
-      final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
-      if (!(dataBuffer instanceof DataBufferByte)) {
-         throw new IOException("Image must contains 1-byte samples");
+      else
+      {
+         ProcessFullColor(file);
       }
-      final ByteBuffer nativeBuffer = ByteBuffer.allocateDirect(image.getWidth() * image.getHeight() * bytesPerPixel);
-      final byte[] pixelData = ((DataBufferByte) dataBuffer).getData();
-      nativeBuffer.put(pixelData);
-      nativeBuffer.rewind();
-      
-      // Processing
-      // For packed formats (RGB-family): https://www.doubango.org/SDKs/anpr/docs/cpp-api.html#_CPPv4N15ultimateAlprSdk16UltAlprSdkEngine7processEK22ULTALPR_SDK_IMAGE_TYPEPKvK6size_tK6size_tK6size_tKi
-      // For YUV formats (data from camera): https://www.doubango.org/SDKs/anpr/docs/cpp-api.html#_CPPv4N15ultimateAlprSdk16UltAlprSdkEngine7processEK22ULTALPR_SDK_IMAGE_TYPEPKvPKvPKvK6size_tK6size_tK6size_tK6size_tK6size_tK6size_tKi
-      result = CheckResult("Process", UltAlprSdkEngine.process(
-            (bytesPerPixel == 1) ? ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_Y : (bytesPerPixel == 4 ? ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGRA32 : ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_BGR24),
-            nativeBuffer,
-            image.getWidth(),
-            image.getHeight(),
-            image.getWidth(), // stride
-            getExifOrientation(file)
-         ));
-      // Print result to console
-      System.out.println("Result: " + result.json() + System.lineSeparator());
 
        // Wait until user press a key
        System.out.println("Press any key to terminate !!" + System.lineSeparator());
@@ -424,36 +510,106 @@ public class Recognizer {
        }
 
        // Now that you're done, deInit the engine before exiting
-       CheckResult("DeInit", UltAlprSdkEngine.deInit());
+       CheckResult("DeInit", UltAlprSdkEngine.deInit()).close();
    }
 
-   static int getExifOrientation(File file) throws IOException 
+   // Decodes at full resolution, in the image's own format
+   static void ProcessFullColor(File file) throws IOException
    {
-      FileInputStream fin= new FileInputStream(file);
-      FileChannel channel = fin.getChannel();
+      // Mapped once: the EXIF probe only touches the headers and the decoder reads the same pages
+      final MappedFile mapped = MappedFile.map(file);
+      final BufferedImage image = ImageIO.read(mapped.newStream());
+      if (image == null)
+      {
+         throw new IOException("Unsupported image format: " + file.getAbsolutePath());
+      }
+
+      // View of the raster matching its real layout (sub-images, padded rows, int-packed pixels): no repacking
+      // The heap array is copied into a direct staging buffer reused by the SDK, no direct allocation per image
+      final BufferedImageAdapter.View view = BufferedImageAdapter.adapt(image);
+      System.out.println("Image: " + view + System.lineSeparator());
 
-      // Check if it's JPEG
-      final MappedByteBuffer codeBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 2); // read 2 first bytes
-      if (codeBuffer.asShortBuffer().get() != -40) { // -40 = 0xFFD8 in Short
-         return 1;
+      // Processing
+      // For packed formats (RGB-family): https://www.doubango.org/SDKs/anpr/docs/cpp-api.html#_CPPv4N15ultimateAlprSdk16UltAlprSdkEngine7processEK22ULTALPR_SDK_IMAGE_TYPEPKvK6size_tK6size_tK6size_tKi
+      // For YUV formats (data from camera): https://www.doubango.org/SDKs/anpr/docs/cpp-api.html#_CPPv4N15ultimateAlprSdk16UltAlprSdkEngine7processEK22ULTALPR_SDK_IMAGE_TYPEPKvPKvPKvK6size_tK6size_tK6size_tK6size_tK6size_tK6size_tKi
+      try (final UltAlprSdkResult result = CheckResult("Process", view.process(mapped.exifOrientation))) {
+         // Print result to console
+         System.out.println("Result: " + result.json() + System.lineSeparator());
+      }
+   }
+
+   // Decodes to Y or NV12, only the region of interest and subsampled
+   static void ProcessSubsampled(SubsampledDecoder subsampledDecoder, File file) throws IOException
+   {
+      final SubsampledDecoder.Image image = subsampledDecoder.decode(MappedFile.map(file), new UltAlprSdkBufferPool(1));
+      try (final UltAlprSdkResult result = CheckResult("Process", UltAlprSdkEngine.process(image.frame))) {
+         // Print result to console: the coordinates are relative to the decoded region
+         System.out.println(String.format("Decoded region: %s, subsampling: %d", image.region, image.subsampling));
+         System.out.println("Result: " + result.json() + System.lineSeparator());
+      }
+      finally {
+         image.release();
       }
-      
-      // Read raw data and extract EXIF info
-      final long fileSize = channel.size();
-      final ByteBuffer buffer = ByteBuffer.allocateDirect((int) fileSize);
-      channel.read(buffer);
-      buffer.flip();
-
-      channel.close();
-      fin.close();
-
-	  final int orientation = UltAlprSdkEngine.exifOrientation(buffer, buffer.remaining());
-      if (orientation < 1 || orientation > 8) {
-         System.err.println(String.format("Invalid EXIF orientation value: %d", orientation));
-         return 1;
+   }
+
+   // Replays the frames of a raw capture file: the planes are slices of the mapped file, passed to the engine without any copy
+   static void ProcessRaw(Path path, String format, String size, UltAlprSdkFrameRecorder recorder) throws IOException
+   {
+      final UltAlprSdkRawFrameFile capture;
+      if (format == null)
+      {
+         capture = UltAlprSdkRawFrameFile.open(path); // Layout from the header
       }
-      return orientation;
-    }
+      else
+      {
+         // Header-less dump: the layout is given using args (tightly packed planes)
+         if (size == null || !size.matches("\\d+x\\d+"))
+         {
+            throw new IllegalArgumentException("--raw_size <width>x<height> required with --raw_format");
+         }
+         final int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+         final int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+         switch (format.toLowerCase())
+         {
+            case "nv12": capture = UltAlprSdkRawFrameFile.open(path, UltAlprSdkRawFrameFile.Format.nv12(width, height)); break;
+            case "nv21": capture = UltAlprSdkRawFrameFile.open(path, UltAlprSdkRawFrameFile.Format.nv21(width, height)); break;
+            case "yuv420p": capture = UltAlprSdkRawFrameFile.open(path, UltAlprSdkRawFrameFile.Format.yuv420p(width, height)); break;
+            case "y": capture = UltAlprSdkRawFrameFile.open(path, UltAlprSdkRawFrameFile.Format.y(width, height)); break;
+            default: throw new IllegalArgumentException("Invalid raw format: " + format + " (nv12, nv21, yuv420p or y)");
+         }
+      }
+      try
+      {
+         System.out.println(String.format("Raw capture: %s, %d frames", capture.getFormat(), capture.getFrameCount()) + System.lineSeparator());
+         final long startNanos = System.nanoTime();
+         for (int i = 0; i < capture.getFrameCount(); ++i)
+         {
+            final long processStartNanos = System.nanoTime();
+            final UltAlprSdkFrame frame = capture.frame(i);
+            try (final UltAlprSdkResult result = CheckResult("Process", (recorder != null) ? recorder.process(frame, processStartNanos) : UltAlprSdkEngine.process(frame))) {
+               // Only the frames with plates are printed (JSON Lines)
+               if (result.numPlates() > 0)
+               {
+                  System.out.println(String.format("{\"frame\": %d, \"duration_ms\": %.3f, \"result\": %s}", i, (System.nanoTime() - processStartNanos) / 1e6, result.json()));
+               }
+            }
+         }
+         final double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+         System.err.println(String.format("Raw capture: %d frames in %.2f s, %.2f frames/s, %.1f MB/s",
+            capture.getFrameCount(), seconds, capture.getFrameCount() / seconds, (capture.getFrameCount() * (double) capture.getFormat().getFrameSize()) / (seconds * 1e6)));
+      }
+      finally
+      {
+         capture.close();
+      }
+   }
+
+   static void PrintTrackEvent(int event, UltAlprSdkPlateTracker.Track track)
+   {
+      final String name = (event == UltAlprSdkPlateTracker.EVENT_ENTER) ? "enter" : ((event == UltAlprSdkPlateTracker.EVENT_UPDATE) ? "update" : "exit");
+      System.out.println(String.format("Track #%d %s: %s (%.2f%%, %d frames)",
+         track.getId(), name, track.hasText() ? track.getText() : "<car>", track.getRecognitionConfidence(), track.getHits()));
+   }
 
    static Hashtable<String, String> ParseArgs(String[] args) throws IllegalArgumentException
    {
@@ -484,9 +640,11 @@ public class Recognizer {
 
    static UltAlprSdkResult CheckResult(String functionName, UltAlprSdkResult result) throws IOException
    {
-      if (!result.isOK())
+      final UltAlprSdkResultSnapshot snapshot = result.snapshot(); // Single fetch for all fields
+      if (!snapshot.isOK())
       {
-            String errMessage = String.format("%s: Execution failed: %s", functionName, result.json());
+            String errMessage = String.format("%s: Execution failed: %s", functionName, snapshot.json());
+            result.close();
             System.err.println(errMessage);
             throw new IOException(errMessage);
       }
@@ -494,7 +652,7 @@ public class Recognizer {
    }
 
    // https://www.doubango.org/SDKs/anpr/docs/Configuration_options.html
-   static String BuildJSON(String charsetAkaAlphabet, String assetsFolder, String tokenDataBase64)
+   static String BuildJSON(String charsetAkaAlphabet, String assetsFolder, String tokenDataBase64, List<Float> detectRoi)
    {
       return String.format(
          "{" +
@@ -546,7 +704,7 @@ public class Recognizer {
          CONFIG_OPENVINO_ENABLED ? "true" : "false",
          CONFIG_OPENVINO_DEVICE,
 
-         CONFIG_DETECT_ROI.stream().map(String::valueOf).collect(Collectors.joining(",")),
+         detectRoi.stream().map(String::valueOf).collect(Collectors.joining(",")),
          CONFIG_DETECT_MINSCORE,
 
          CONFIG_CAR_NOPLATE_DETECT_ENABLED ? "true" : "false",
@@ -0,0 +1,258 @@
+/* Copyright (C) 2011-2022 Doubango Telecom <https://www.doubango.org>
+* File author: Mamadou DIOP (Doubango Telecom, France).
+* License: For non commercial use only.
+* Source code: https://github.com/DoubangoTelecom/ultimateALPR-SDK
+* WebSite: https://www.doubango.org/webapps/alpr/
+*/
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Node;
+
+import org.doubango.ultimateAlpr.Sdk.ULTALPR_SDK_IMAGE_TYPE;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkBufferPool;
+import org.doubango.ultimateAlpr.Sdk.UltAlprSdkFrame;
+
+/**
+ * Decodes straight to a grayscale (Y) or NV12 frame, at a reduced resolution and limited to the detection region of interest.
+ * The engine works on luma: decoding to BGR24 then converting back to luma wastes the color conversion and 3x the memory.
+ * <p>
+ * The reader only decodes the region of interest ("detect_roi") and skips pixels (ImageReadParam source subsampling) to reach
+ * the target size. YCbCr JPEGs are read as raw rasters: the Y and CbCr samples are used as is, without color conversion.
+ * Other images (PNG, BMP, RGB or CMYK JPEGs) are decoded as usual then converted (BT.601 full range, like JFIF).
+ * </p>
+ * The returned frame covers the decoded region only: the plate coordinates in the result are relative to it and must be mapped
+ * back using {@link Image#toSourceX(double)} and {@link Image#toSourceY(double)}. The engine's "detect_roi" must then be disabled.
+ */
+final class SubsampledDecoder {
+
+   enum Format { Y, NV12 }
+
+   private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+   private final Format format;
+   private final int maxSize;
+   private final List<Float> roi;
+
+   /**
+    * @param format The output format.
+    * @param maxSize The maximum width or height of the decoded region, in pixels. 0 to keep the source resolution.
+    * @param roi The region to decode [left, right, top, bottom], in pixels, as "detect_roi". All zeros for the whole image.
+    */
+   SubsampledDecoder(Format format, int maxSize, List<Float> roi) {
+      this.format = format;
+      this.maxSize = maxSize;
+      this.roi = roi;
+   }
+
+   /**
+    * A decoded frame, in a pooled buffer.
+    */
+   static final class Image {
+      final UltAlprSdkFrame frame;
+      final UltAlprSdkBufferPool.Buffer buffer;
+      /** The decoded region, in source pixels. */
+      final Rectangle region;
+      /** One decoded pixel every {@code subsampling} source pixels, in both directions. */
+      final int subsampling;
+
+      Image(UltAlprSdkFrame frame, UltAlprSdkBufferPool.Buffer buffer, Rectangle region, int subsampling) {
+         this.frame = frame;
+         this.buffer = buffer;
+         this.region = region;
+         this.subsampling = subsampling;
+      }
+
+      double toSourceX(double x) { return region.x + x * subsampling; }
+      double toSourceY(double y) { return region.y + y * subsampling; }
+
+      void release() {
+         buffer.releaseRef();
+      }
+   }
+
+   /**
+    * Decodes an image. Its EXIF orientation is passed through to the frame: the region of interest is in stored (not rotated) pixels.
+    */
+   Image decode(MappedFile file, UltAlprSdkBufferPool pool) throws IOException {
+      final int exifOrientation = file.exifOrientation;
+      try (ImageInputStream stream = file.newStream()) {
+         final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+         if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + file.file);
+         }
+         final ImageReader reader = readers.next();
+         try {
+            reader.setInput(stream, true, false);
+            final Rectangle region = region(reader.getWidth(0), reader.getHeight(0));
+            final int subsampling = (maxSize > 0) ? Math.max(1, (Math.max(region.width, region.height) + maxSize - 1) / maxSize) : 1;
+            final ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(region);
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            final Raster raster;
+            final boolean ycbcr;
+            if (reader.canReadRaster() && isYCbCrJpeg(reader)) {
+               raster = reader.readRaster(0, param); // No color conversion
+               ycbcr = true;
+            }
+            else {
+               final BufferedImage image = reader.read(0, param);
+               raster = (image.getType() == BufferedImage.TYPE_BYTE_GRAY) ? image.getRaster() : toRgb(image).getRaster();
+               ycbcr = false;
+            }
+            final UltAlprSdkBufferPool.Buffer buffer = pool.acquire(frameSize(raster.getWidth(), raster.getHeight()));
+            try {
+               return new Image(toFrame(raster, ycbcr, buffer, exifOrientation), buffer, region, subsampling);
+            }
+            catch (RuntimeException e) {
+               buffer.releaseRef();
+               throw e;
+            }
+         }
+         finally {
+            reader.dispose();
+         }
+      }
+   }
+
+   private int frameSize(int width, int height) {
+      final int ySize = width * height;
+      return (format == Format.Y) ? ySize : ySize + ((((width + 1) >> 1) * ((height + 1) >> 1)) << 1);
+   }
+
+   private Rectangle region(int width, int height) {
+      final Rectangle full = new Rectangle(0, 0, width, height);
+      final float left = roi.get(0), right = roi.get(1), top = roi.get(2), bottom = roi.get(3);
+      if (right <= left || bottom <= top) {
+         return full; // Disabled
+      }
+      final Rectangle region = new Rectangle((int) left, (int) top, (int) Math.ceil(right - left), (int) Math.ceil(bottom - top)).intersection(full);
+      return region.isEmpty() ? full : region;
+   }
+
+   /**
+    * Converts the raster (gray, RGB or YCbCr) to a Y or NV12 frame in a pooled buffer.
+    */
+   private UltAlprSdkFrame toFrame(Raster raster, boolean ycbcr, UltAlprSdkBufferPool.Buffer buffer, int exifOrientation) {
+      final int width = raster.getWidth(), height = raster.getHeight();
+      final int bands = raster.getNumBands();
+      final int chromaWidth = (width + 1) >> 1, chromaHeight = (height + 1) >> 1;
+      final int ySize = width * height;
+      final ByteBuffer data = buffer.getData();
+      final int[] row = new int[width * bands];
+      final int[] uvSums = (format == Format.NV12) ? new int[chromaWidth << 1] : null;
+      for (int y = 0; y < height; ++y) {
+         raster.getPixels(raster.getMinX(), raster.getMinY() + y, width, 1, row);
+         for (int x = 0, i = 0; x < width; ++x, i += bands) {
+            final int luma;
+            if (bands == 1 || ycbcr) {
+               luma = row[i];
+            }
+            else {
+               luma = (77 * row[i] + 150 * row[i + 1] + 29 * row[i + 2] + 128) >> 8;
+            }
+            data.put(y * width + x, (byte) luma);
+            if (uvSums != null) {
+               final int cb, cr;
+               if (bands == 1) {
+                  cb = cr = 128;
+               }
+               else if (ycbcr) {
+                  cb = row[i + 1];
+                  cr = row[i + 2];
+               }
+               else {
+                  cb = 128 + ((-43 * row[i] - 85 * row[i + 1] + 128 * row[i + 2] + 128) >> 8);
+                  cr = 128 + ((128 * row[i] - 107 * row[i + 1] - 21 * row[i + 2] + 128) >> 8);
+               }
+               uvSums[(x >> 1) << 1] += cb;
+               uvSums[((x >> 1) << 1) + 1] += cr;
+            }
+         }
+         if (uvSums != null && ((y & 1) == 1 || y == height - 1)) {
+            // Average of the 2x2 block (fewer samples on the odd right column or bottom row)
+            final int rows = ((y & 1) == 1) ? 2 : 1;
+            final int uvOffset = ySize + (y >> 1) * (chromaWidth << 1);
+            for (int cx = 0; cx < chromaWidth; ++cx) {
+               final int count = rows * ((((cx << 1) + 1) < width) ? 2 : 1);
+               data.put(uvOffset + (cx << 1), (byte) Math.min(255, Math.max(0, uvSums[cx << 1] / count)));
+               data.put(uvOffset + (cx << 1) + 1, (byte) Math.min(255, Math.max(0, uvSums[(cx << 1) + 1] / count)));
+            }
+            Arrays.fill(uvSums, 0);
+         }
+      }
+      final ByteBuffer yPlane = slice(data, 0, ySize);
+      if (format == Format.Y) {
+         return UltAlprSdkFrame.packed(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_Y, yPlane, width, height, width, exifOrientation);
+      }
+      final int uvSize = (chromaWidth * chromaHeight) << 1;
+      return UltAlprSdkFrame.planar(ULTALPR_SDK_IMAGE_TYPE.ULTALPR_SDK_IMAGE_TYPE_NV12, yPlane, slice(data, ySize, uvSize), slice(data, ySize + 1, uvSize - 1),
+         width, height, width, chromaWidth << 1, chromaWidth << 1, 2, exifOrientation);
+   }
+
+   private static ByteBuffer slice(ByteBuffer data, int offset, int size) {
+      final ByteBuffer duplicate = data.duplicate();
+      duplicate.limit(offset + size).position(offset);
+      return duplicate.slice(); // The engine uses the buffer's address, not its position
+   }
+
+   private static BufferedImage toRgb(BufferedImage image) {
+      if (image.getType() == BufferedImage.TYPE_3BYTE_BGR || image.getType() == BufferedImage.TYPE_INT_RGB) {
+         return image; // getPixels() returns R, G, B
+      }
+      final BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+      rgb.createGraphics().drawImage(image, 0, 0, null);
+      return rgb;
+   }
+
+   /**
+    * Whether the reader's current image is a 3-component YCbCr JPEG (JFIF, Adobe transform 1 or no color marker).
+    */
+   private static boolean isYCbCrJpeg(ImageReader reader) throws IOException {
+      final IIOMetadata metadata = reader.getImageMetadata(0);
+      if (metadata == null || !JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+         return false;
+      }
+      final Node root = metadata.getAsTree(JPEG_METADATA_FORMAT);
+      boolean jfif = false;
+      int adobeTransform = -1;
+      int numComponents = 0;
+      for (Node node : children(root)) {
+         if ("JPEGvariety".equals(node.getNodeName())) {
+            jfif |= node.getFirstChild() != null && "app0JFIF".equals(node.getFirstChild().getNodeName());
+         }
+         else if ("markerSequence".equals(node.getNodeName())) {
+            for (Node marker : children(node)) {
+               if ("app14Adobe".equals(marker.getNodeName())) {
+                  adobeTransform = Integer.parseInt(marker.getAttributes().getNamedItem("transform").getNodeValue());
+               }
+               else if ("sof".equals(marker.getNodeName())) {
+                  numComponents = Integer.parseInt(marker.getAttributes().getNamedItem("numFrameComponents").getNodeValue());
+               }
+            }
+         }
+      }
+      return numComponents == 3 && (jfif || adobeTransform == 1 || adobeTransform == -1);
+   }
+
+   private static Iterable<Node> children(Node node) {
+      final List<Node> children = new ArrayList<Node>();
+      for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+         children.add(child);
+      }
+      return children;
+   }
+}